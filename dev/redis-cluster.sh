@@ -0,0 +1,30 @@
+#!/usr/bin/env bash
+# starts a local redis cluster of three masters on ports 7000-7002 for trying the sharded key layout,
+# stop it again with: dev/redis-cluster.sh stop
+set -euo pipefail
+
+PORTS=(7000 7001 7002)
+DIR="${TMPDIR:-/tmp}/chatapp-redis-cluster"
+
+if [[ "${1:-start}" == "stop" ]]; then
+  for port in "${PORTS[@]}"; do
+    redis-cli -p "$port" shutdown nosave >/dev/null 2>&1 || true
+  done
+  rm -rf "$DIR"
+  exit 0
+fi
+
+mkdir -p "$DIR"
+nodes=()
+for port in "${PORTS[@]}"; do
+  mkdir -p "$DIR/$port"
+  redis-server --port "$port" --cluster-enabled yes --cluster-config-file "$DIR/$port/nodes.conf" \
+    --dir "$DIR/$port" --appendonly no --save "" --daemonize yes
+  nodes+=("127.0.0.1:$port")
+done
+
+until redis-cli -p "${PORTS[-1]}" ping >/dev/null 2>&1; do sleep 0.1; done
+redis-cli --cluster create "${nodes[@]}" --cluster-replicas 0 --cluster-yes
+
+echo "cluster is up, run the app with:"
+echo "  --spring.data.redis.cluster.nodes=$(IFS=,; echo "${nodes[*]}") --chatapp.pubsub.mode=sharded"
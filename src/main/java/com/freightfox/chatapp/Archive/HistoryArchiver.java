@@ -0,0 +1,144 @@
+package com.freightfox.chatapp.Archive;
+
+import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import com.freightfox.chatapp.Repository.MessageEncoding;
+import com.freightfox.chatapp.Repository.RawMessage;
+import com.freightfox.chatapp.Repository.RoomKeys;
+import com.freightfox.chatapp.Repository.RoomMeta;
+import com.freightfox.chatapp.config.ArchiveProperties;
+import com.freightfox.chatapp.config.RetentionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//walks the room keyspace one SCAN page per tick and moves history older than chatapp.archive.after out of redis
+//into the room's archive; every step can be repeated: a chunk is appended and forced to disk before redis lets
+//go of it, and a pass resumes after the newest archived id, so a crash at any point at worst leaves one chunk
+//in both places until the next pass trims it
+@Slf4j
+@Component
+public class HistoryArchiver {
+    //upper bound on chunks per room and tick so one huge backlog cannot starve the others
+    private static final int MAX_CHUNKS_PER_ROOM = 10;
+
+    private final ChatRoomRepository repo;
+    private final MessageArchive archive;
+    private final ArchiveProperties properties;
+    private final RetentionProperties retention;
+    private final Counter archivedMessages;
+    private final Counter writtenBytes;
+    private final Counter reclaimedBytes;
+    //lock value of this node, so a lock that expired and was taken over is not released by mistake
+    private final String owner = UUID.randomUUID().toString();
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("history-archiver-"));
+    private String cursor = "0";
+
+    public HistoryArchiver(ChatRoomRepository repo, MessageArchive archive, ArchiveProperties properties,
+                           RetentionProperties retention, MeterRegistry registry) {
+        this.repo = repo;
+        this.archive = archive;
+        this.properties = properties;
+        this.retention = retention;
+        this.archivedMessages = Counter.builder("chat.archive.messages")
+                .description("Messages moved from redis to the archive")
+                .register(registry);
+        this.writtenBytes = Counter.builder("chat.archive.written")
+                .description("Compressed bytes appended to archive segments")
+                .baseUnit("bytes")
+                .register(registry);
+        this.reclaimedBytes = ChatRoomRepository.reclaimedCounter(registry, "archived");
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) return;
+        long interval = properties.getInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::archiveSafely, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    //this will archive the rooms of the next SCAN page, the cursor carries over to the next tick
+    public void archiveNextPage() {
+        ChatRoomRepository.ScanPage page = repo.scanKeys(cursor, RoomKeys.META_PATTERN, retention.getScanCount());
+        long now = System.currentTimeMillis();
+        for (String key : page.keys()) {
+            String roomId = RoomKeys.roomIdOfMeta(key);
+            if (roomId == null) continue;
+            try {
+                archiveRoom(roomId, now);
+            } catch (RuntimeException e) {
+                log.warn("Could not archive room {}, retrying next pass", roomId, e);
+            }
+        }
+        cursor = page.cursor();
+    }
+
+    //this will move the room's cold head into its archive under the room's archive lock
+    //returns the number of messages moved
+    public long archiveRoom(String roomId, long nowMillis) {
+        RoomMeta meta = repo.roomMeta(roomId).orElse(null);
+        if (meta == null || !repo.lockArchive(roomId, owner, properties.getLockTimeout())) return 0;
+        try (RoomArchive room = archive.room(roomId, MessageArchive.generation(meta))) {
+            room.recover();
+            long archived = room.lastId();
+            //a pass that died between append and trim left its last chunk in both places
+            if (archived > 0) reclaimedBytes.increment(repo.trimArchived(roomId, archived)[1]);
+            long newestAllowed = repo.newestId(roomId) - properties.getKeepRecent();
+            long cutoffNanos = (nowMillis - properties.getAfter().toMillis()) * 1_000_000;
+            long moved = 0;
+            for (int chunk = 0; chunk < MAX_CHUNKS_PER_ROOM; chunk++) {
+                List<RawMessage> page = repo.readForArchive(roomId, archived, properties.getChunk());
+                int cold = 0;
+                while (cold < page.size() && isCold(page.get(cold), newestAllowed, cutoffNanos)) cold++;
+                if (cold == 0) break;
+                writtenBytes.increment(room.append(page.subList(0, cold), properties.getBlockSize(),
+                        properties.getSegmentSize()));
+                archived = page.get(cold - 1).id();
+                reclaimedBytes.increment(repo.trimArchived(roomId, archived)[1]);
+                moved += cold;
+                if (cold < properties.getChunk()) break;
+            }
+            archivedMessages.increment(moved);
+            //the room's max age applies to archived history too, whole segments at a time
+            long maxAge = meta.maxAgeMs() != null ? meta.maxAgeMs() : retention.getMaxAge().toMillis();
+            if (maxAge > 0) room.dropOlderThan(nowMillis - maxAge);
+            return moved;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the archive of room " + roomId, e);
+        } finally {
+            repo.unlockArchive(roomId, owner);
+        }
+    }
+
+    //messages without a readable timestamp are never archived, like the retention trim never expires them
+    private static boolean isCold(RawMessage message, long newestAllowed, long cutoffNanos) {
+        if (message.id() > newestAllowed) return false;
+        long timestamp = MessageEncoding.timestampNanos(message.json());
+        return timestamp >= 0 && timestamp < cutoffNanos;
+    }
+
+    private void archiveSafely() {
+        try {
+            archiveNextPage();
+        } catch (RuntimeException e) {
+            log.warn("Archive pass failed, retrying next tick", e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.freightfox.chatapp.Archive;
+
+import com.freightfox.chatapp.Repository.RawMessage;
+import com.freightfox.chatapp.Repository.RoomMeta;
+import com.freightfox.chatapp.config.ArchiveProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+//archived history on disk: {directory}/{hex room id}/{createdAt}/ per room, so a room created again under the same
+//name starts with an empty archive while the old one is deleted in the background; read by every node,
+//written by whichever node holds the room's archive lock (see HistoryArchiver)
+@Slf4j
+@Component
+public class MessageArchive {
+    private final ArchiveProperties properties;
+    private final Path root;
+    private final Map<Path, RoomArchive> open;
+    private final ExecutorService cleaner =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("archive-cleaner-"));
+
+    public MessageArchive(ArchiveProperties properties) {
+        this.properties = properties;
+        this.root = Path.of(properties.getDirectory());
+        this.open = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, RoomArchive> eldest) {
+                if (size() <= properties.getOpenRooms()) return false;
+                //only gives back the cache's reference, a request still reading the room closes it when done
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    //the archive directory name of a room generation, rooms created before createdAt existed use 0
+    public static long generation(RoomMeta meta) {
+        return meta.createdAt() == null ? 0 : meta.createdAt();
+    }
+
+    //the caller closes the returned archive when done with it
+    public RoomArchive room(String roomId, long generation) {
+        Path directory = directory(roomId, generation);
+        synchronized (open) {
+            RoomArchive archive = open.computeIfAbsent(directory, RoomArchive::new);
+            archive.retain();
+            return archive;
+        }
+    }
+
+    //up to limit archived messages with an id lower than beforeId, oldest first
+    public List<RawMessage> before(String roomId, long generation, long beforeId, int limit) {
+        try (RoomArchive room = room(roomId, generation)) {
+            return room.before(beforeId, limit);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the archive of room " + roomId, e);
+        }
+    }
+
+    //up to limit archived messages with an id higher than afterId, oldest first
+    public List<RawMessage> after(String roomId, long generation, long afterId, int limit) {
+        try (RoomArchive room = room(roomId, generation)) {
+            return room.after(afterId, limit);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the archive of room " + roomId, e);
+        }
+    }
+
+    public long lastId(String roomId, long generation) {
+        try (RoomArchive room = room(roomId, generation)) {
+            return room.lastId();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the archive of room " + roomId, e);
+        }
+    }
+
+    //this will delete the archive of a deleted room in the background; a request still reading it keeps what it
+    //mapped, the mappings stay valid after the files are unlinked
+    public void drop(String roomId, long generation) {
+        Path directory = directory(roomId, generation);
+        RoomArchive archive;
+        synchronized (open) {
+            archive = open.remove(directory);
+        }
+        cleaner.execute(() -> {
+            if (archive != null) closeQuietly(archive);
+            try {
+                deleteRecursively(directory);
+                //the room's parent directory goes once its last generation is gone
+                try (Stream<Path> generations = Files.list(directory.getParent())) {
+                    if (generations.findAny().isEmpty()) Files.deleteIfExists(directory.getParent());
+                }
+            } catch (IOException e) {
+                log.warn("Could not delete the archive {}, its files stay until removed by hand", directory, e);
+            }
+        });
+    }
+
+    private Path directory(String roomId, long generation) {
+        //room ids may hold any character, hex keeps them to a safe file name
+        return root.resolve(HexFormat.of().formatHex(roomId.getBytes(StandardCharsets.UTF_8)))
+                .resolve(String.valueOf(generation));
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) return;
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static void closeQuietly(RoomArchive archive) {
+        try {
+            archive.close();
+        } catch (IOException e) {
+            log.warn("Could not close an archive segment", e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        cleaner.shutdown();
+        synchronized (open) {
+            open.values().forEach(MessageArchive::closeQuietly);
+            open.clear();
+        }
+    }
+}
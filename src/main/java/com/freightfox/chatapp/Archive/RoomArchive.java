@@ -0,0 +1,196 @@
+package com.freightfox.chatapp.Archive;
+
+import com.freightfox.chatapp.Repository.MessageEncoding;
+import com.freightfox.chatapp.Repository.RawMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+//the archive of one room: a directory of segment files named by the first id they hold, oldest first;
+//only the last segment is written to, the ones before it are sealed.
+//every MessageArchive.room call takes a reference that close gives back, the open archives cache holds one more
+//while the archive is in it; the files are closed when the last one goes, never under a reader or the archiver
+public class RoomArchive implements AutoCloseable {
+    //a segment is mapped as one buffer
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private final Path directory;
+    private volatile List<SegmentFile> segments = List.of();
+    //modification time of the directory when it was last listed, it changes when a segment is added or removed
+    private FileTime listed;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    RoomArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    //id of the newest archived message, 0 when nothing is archived
+    public long lastId() throws IOException {
+        List<SegmentFile> current = segments();
+        for (int i = current.size() - 1; i >= 0; i--) {
+            long lastId = current.get(i).lastId();
+            if (lastId > 0) return lastId;
+        }
+        return 0;
+    }
+
+    //up to limit messages with an id lower than beforeId, oldest first
+    public List<RawMessage> before(long beforeId, int limit) throws IOException {
+        List<SegmentFile> current = segments();
+        List<RawMessage> newestFirst = new ArrayList<>();
+        for (int i = current.size() - 1; i >= 0 && newestFirst.size() < limit; i--) {
+            if (current.get(i).firstId() < beforeId) current.get(i).collectBefore(beforeId, limit, newestFirst);
+        }
+        Collections.reverse(newestFirst);
+        return newestFirst;
+    }
+
+    //up to limit messages with an id higher than afterId, oldest first
+    public List<RawMessage> after(long afterId, int limit) throws IOException {
+        List<SegmentFile> current = segments();
+        List<RawMessage> oldestFirst = new ArrayList<>();
+        for (int i = 0; i < current.size() && oldestFirst.size() < limit; i++) {
+            //a segment followed by one starting at or below afterId + 1 holds nothing newer than afterId
+            if (i + 1 < current.size() && current.get(i + 1).firstId() <= afterId + 1) continue;
+            current.get(i).collectAfter(afterId, limit, oldestFirst);
+        }
+        return oldestFirst;
+    }
+
+    //this will drop whatever a crashed writer left past the last complete block, called before appending again
+    public void recover() throws IOException {
+        List<SegmentFile> current = segments();
+        if (!current.isEmpty()) current.get(current.size() - 1).recover();
+    }
+
+    //this will append messages newer than lastId() as compressed blocks of about blockSize raw bytes,
+    //starting a new segment once the last one is past segmentSize; returns the compressed bytes written
+    public long append(List<RawMessage> messages, int blockSize, long segmentSize) throws IOException {
+        Files.createDirectories(directory);
+        long written = 0;
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(blockSize + 1024);
+        DataOutputStream out = new DataOutputStream(raw);
+        int blockStart = 0;
+        long newestMillis = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            RawMessage message = messages.get(i);
+            out.writeLong(message.id());
+            out.writeInt(message.json().length);
+            out.write(message.json());
+            newestMillis = Math.max(newestMillis, MessageEncoding.timestampNanos(message.json()) / 1_000_000);
+            if (raw.size() >= blockSize || i == messages.size() - 1) {
+                written += writeBlock(messages.get(blockStart).id(), message.id(), raw.toByteArray(), newestMillis,
+                        Math.min(segmentSize, MAX_SEGMENT_BYTES));
+                raw.reset();
+                blockStart = i + 1;
+                newestMillis = 0;
+            }
+        }
+        return written;
+    }
+
+    private long writeBlock(long firstId, long lastId, byte[] raw, long newestMillis, long segmentSize)
+            throws IOException {
+        Deflater deflater = new Deflater();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+        List<SegmentFile> current = segments();
+        SegmentFile last = current.isEmpty() ? null : current.get(current.size() - 1);
+        if (last == null || last.size() >= segmentSize) {
+            if (last != null) last.seal();
+            last = new SegmentFile(directory, firstId);
+        }
+        last.append(firstId, lastId, compressed.toByteArray(), compressed.size(), raw.length, newestMillis);
+        adopt(last);
+        return compressed.size();
+    }
+
+    //this will delete sealed segments whose newest message is older than cutoffMillis, oldest first;
+    //the last segment is kept so the archive never loses track of how far it got
+    public int dropOlderThan(long cutoffMillis) throws IOException {
+        List<SegmentFile> current = segments();
+        int dropped = 0;
+        while (dropped < current.size() - 1 && current.get(dropped).newestMillis() < cutoffMillis) {
+            current.get(dropped++).delete();
+        }
+        if (dropped > 0) segments = new ArrayList<>(current.subList(dropped, current.size()));
+        return dropped;
+    }
+
+    void retain() {
+        references.incrementAndGet();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (references.decrementAndGet() > 0) return;
+        for (SegmentFile segment : segments) {
+            segment.closeWriters();
+        }
+    }
+
+    //the segment being written stays the instance in the list, it is the one holding the open files
+    private synchronized void adopt(SegmentFile written) {
+        List<SegmentFile> current = new ArrayList<>(segments);
+        current.removeIf(segment -> segment.firstId() == written.firstId());
+        current.add(written);
+        segments = current;
+    }
+
+    //this will list the directory again when segments were added or removed since the last listing,
+    //by this node or another one sharing it; segments already known are kept with their mappings
+    private synchronized List<SegmentFile> segments() throws IOException {
+        FileTime modified;
+        try {
+            modified = Files.getLastModifiedTime(directory);
+        } catch (NoSuchFileException e) {
+            segments = List.of();
+            listed = null;
+            return segments;
+        }
+        if (modified.equals(listed)) return segments;
+        Map<Long, SegmentFile> known = new HashMap<>();
+        for (SegmentFile segment : segments) {
+            known.put(segment.firstId(), segment);
+        }
+        List<Long> firstIds = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SegmentFile.INDEX_SUFFIX))
+                    .forEach(name -> firstIds.add(Long.parseLong(
+                            name.substring(0, name.length() - SegmentFile.INDEX_SUFFIX.length()))));
+        }
+        Collections.sort(firstIds);
+        List<SegmentFile> current = new ArrayList<>(firstIds.size());
+        for (int i = 0; i < firstIds.size(); i++) {
+            SegmentFile segment = known.computeIfAbsent(firstIds.get(i), id -> new SegmentFile(directory, id));
+            if (i < firstIds.size() - 1) segment.seal();
+            current.add(segment);
+        }
+        segments = current;
+        listed = modified;
+        return current;
+    }
+}
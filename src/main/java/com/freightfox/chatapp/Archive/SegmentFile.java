@@ -0,0 +1,261 @@
+package com.freightfox.chatapp.Archive;
+
+import com.freightfox.chatapp.Repository.RawMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+//one segment of a room archive: {first id}.seg holds deflate compressed blocks of messages back to back and
+//{first id}.idx one fixed size entry per block, a sparse index a read binary searches to find its block;
+//both files are only appended to and a block is forced to disk before its index entry is written,
+//so readers, which only go through the index, never see a torn block
+class SegmentFile {
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String INDEX_SUFFIX = ".idx";
+    //first id, last id, offset, compressed length, raw length, newest timestamp in epoch millis
+    static final int ENTRY_BYTES = 40;
+    private static final int FIRST_ID = 0;
+    private static final int LAST_ID = 8;
+    private static final int OFFSET = 16;
+    private static final int LENGTH = 24;
+    private static final int RAW_LENGTH = 28;
+    private static final int NEWEST = 32;
+
+    private final long firstId;
+    private final Path segment;
+    private final Path index;
+    private volatile Mapping mapping = Mapping.EMPTY;
+    //sealed segments never grow again, so their mapping is not checked against the file size on every read
+    private volatile boolean sealed;
+    private FileChannel segmentWriter;
+    private FileChannel indexWriter;
+
+    //the part of both files covered by whole index entries whose block is fully on disk
+    private record Mapping(int entries, ByteBuffer index, ByteBuffer segment) {
+        static final Mapping EMPTY = new Mapping(0, ByteBuffer.allocate(0), ByteBuffer.allocate(0));
+
+        long firstId(int entry) {
+            return index.getLong(entry * ENTRY_BYTES + FIRST_ID);
+        }
+
+        long lastId(int entry) {
+            return index.getLong(entry * ENTRY_BYTES + LAST_ID);
+        }
+
+        long end(int entry) {
+            return index.getLong(entry * ENTRY_BYTES + OFFSET) + index.getInt(entry * ENTRY_BYTES + LENGTH);
+        }
+    }
+
+    SegmentFile(Path directory, long firstId) {
+        this.firstId = firstId;
+        String name = String.format("%020d", firstId);
+        this.segment = directory.resolve(name + SEGMENT_SUFFIX);
+        this.index = directory.resolve(name + INDEX_SUFFIX);
+    }
+
+    long firstId() {
+        return firstId;
+    }
+
+    long size() throws IOException {
+        return Files.exists(segment) ? Files.size(segment) : 0;
+    }
+
+    void seal() throws IOException {
+        sealed = true;
+        closeWriters();
+    }
+
+    //id of the newest message in the segment, 0 while it is empty
+    long lastId() throws IOException {
+        Mapping current = current();
+        return current.entries == 0 ? 0 : current.lastId(current.entries - 1);
+    }
+
+    //newest timestamp of any message in the segment, 0 while it is empty
+    long newestMillis() throws IOException {
+        Mapping current = current();
+        long newest = 0;
+        for (int entry = 0; entry < current.entries; entry++) {
+            newest = Math.max(newest, current.index.getLong(entry * ENTRY_BYTES + NEWEST));
+        }
+        return newest;
+    }
+
+    //this will add messages with an id lower than beforeId to newestFirst, newest first, until it holds limit
+    void collectBefore(long beforeId, int limit, List<RawMessage> newestFirst) throws IOException {
+        Mapping current = current();
+        //last block starting below beforeId
+        int low = 0, high = current.entries - 1, entry = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (current.firstId(middle) < beforeId) {
+                entry = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        for (; entry >= 0 && newestFirst.size() < limit; entry--) {
+            List<RawMessage> block = block(current, entry);
+            for (int i = block.size() - 1; i >= 0 && newestFirst.size() < limit; i--) {
+                if (block.get(i).id() < beforeId) newestFirst.add(block.get(i));
+            }
+        }
+    }
+
+    //this will add messages with an id higher than afterId to oldestFirst, oldest first, until it holds limit
+    void collectAfter(long afterId, int limit, List<RawMessage> oldestFirst) throws IOException {
+        Mapping current = current();
+        //first block ending above afterId
+        int low = 0, high = current.entries - 1, entry = current.entries;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (current.lastId(middle) > afterId) {
+                entry = middle;
+                high = middle - 1;
+            } else {
+                low = middle + 1;
+            }
+        }
+        for (; entry < current.entries && oldestFirst.size() < limit; entry++) {
+            for (RawMessage message : block(current, entry)) {
+                if (message.id() > afterId && oldestFirst.size() < limit) oldestFirst.add(message);
+            }
+        }
+    }
+
+    //this will write one compressed block and then its index entry, each forced to disk before going on;
+    //returns the segment size afterwards
+    long append(long blockFirstId, long blockLastId, byte[] compressed, int length, int rawLength,
+                long newestMillis) throws IOException {
+        openWriters();
+        long offset = segmentWriter.size();
+        ByteBuffer block = ByteBuffer.wrap(compressed, 0, length);
+        while (block.hasRemaining()) {
+            segmentWriter.write(block, offset + block.position());
+        }
+        segmentWriter.force(false);
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_BYTES)
+                .putLong(blockFirstId).putLong(blockLastId).putLong(offset)
+                .putInt(length).putInt(rawLength).putLong(newestMillis)
+                .flip();
+        long entryOffset = indexWriter.size();
+        while (entry.hasRemaining()) {
+            indexWriter.write(entry, entryOffset + entry.position());
+        }
+        indexWriter.force(false);
+        return offset + length;
+    }
+
+    //this will cut what a crashed writer left past the last whole index entry: a partial entry, or a block
+    //that never got its entry; only bytes no reader maps are removed, so it is safe while others read
+    void recover() throws IOException {
+        closeWriters();
+        if (!Files.exists(index)) return;
+        try (FileChannel indexChannel = FileChannel.open(index, StandardOpenOption.WRITE);
+             FileChannel segmentChannel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            Mapping valid = map(indexChannel.size(), segmentChannel.size());
+            indexChannel.truncate((long) valid.entries * ENTRY_BYTES);
+            segmentChannel.truncate(valid.entries == 0 ? 0 : valid.end(valid.entries - 1));
+        }
+    }
+
+    void delete() throws IOException {
+        closeWriters();
+        Files.deleteIfExists(index);
+        Files.deleteIfExists(segment);
+    }
+
+    void closeWriters() throws IOException {
+        if (segmentWriter != null) segmentWriter.close();
+        if (indexWriter != null) indexWriter.close();
+        segmentWriter = null;
+        indexWriter = null;
+    }
+
+    private void openWriters() throws IOException {
+        if (segmentWriter != null) return;
+        segmentWriter = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        indexWriter = FileChannel.open(index, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    //the segment may have grown since it was mapped, unless it is sealed; another node may be the writer,
+    //so the file sizes are the only reliable sign
+    private Mapping current() throws IOException {
+        Mapping current = mapping;
+        if (sealed && current != Mapping.EMPTY) return current;
+        long indexBytes, segmentBytes;
+        try {
+            indexBytes = Files.size(index);
+            segmentBytes = Files.size(segment);
+        } catch (NoSuchFileException e) {
+            return Mapping.EMPTY;
+        }
+        if (indexBytes / ENTRY_BYTES == current.entries) return current;
+        Mapping remapped = map(indexBytes, segmentBytes);
+        mapping = remapped;
+        return remapped;
+    }
+
+    //whole index entries whose block ends within the segment, with both files mapped up to there
+    private Mapping map(long indexBytes, long segmentBytes) throws IOException {
+        int entries = (int) (indexBytes / ENTRY_BYTES);
+        if (entries == 0) return Mapping.EMPTY;
+        ByteBuffer indexBuffer;
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.READ)) {
+            indexBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) entries * ENTRY_BYTES);
+        }
+        Mapping valid = new Mapping(entries, indexBuffer, Mapping.EMPTY.segment);
+        while (entries > 0 && valid.end(entries - 1) > segmentBytes) {
+            entries--;
+        }
+        if (entries == 0) return Mapping.EMPTY;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            return new Mapping(entries, indexBuffer,
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, valid.end(entries - 1)));
+        }
+    }
+
+    //this will inflate one block: {id, json length, json} per message
+    private List<RawMessage> block(Mapping current, int entry) {
+        int base = entry * ENTRY_BYTES;
+        int offset = (int) current.index.getLong(base + OFFSET);
+        int length = current.index.getInt(base + LENGTH);
+        byte[] raw = new byte[current.index.getInt(base + RAW_LENGTH)];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(current.segment.slice(offset, length));
+            int inflated = 0;
+            while (inflated < raw.length) {
+                int read = inflater.inflate(raw, inflated, raw.length - inflated);
+                if (read == 0 && (inflater.needsInput() || inflater.finished())) break;
+                inflated += read;
+            }
+            if (inflated != raw.length) throw new DataFormatException("block ends after " + inflated + " bytes");
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Archive block at " + offset + " of " + segment + " is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(raw);
+        List<RawMessage> messages = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            long id = buffer.getLong();
+            byte[] json = new byte[buffer.getInt()];
+            buffer.get(json);
+            messages.add(new RawMessage(id, json));
+        }
+        return messages;
+    }
+}
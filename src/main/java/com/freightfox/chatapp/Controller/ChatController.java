@@ -1,14 +1,33 @@
 package com.freightfox.chatapp.Controller;
 
+import com.freightfox.chatapp.DTO.BulkCreateRoomsRequest;
+import com.freightfox.chatapp.DTO.BulkJoinRequest;
 import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.Delivery.RoomSessionRegistry;
 import com.freightfox.chatapp.DTO.CreateRoomRequest;
 import com.freightfox.chatapp.DTO.JoinRoomRequest;
-import com.freightfox.chatapp.RedisMessage.RedisMessagePublisher;
+import com.freightfox.chatapp.DTO.JoinRoomsRequest;
+import com.freightfox.chatapp.DTO.MarkReadRequest;
+import com.freightfox.chatapp.DTO.RetentionRequest;
+import com.freightfox.chatapp.Outbox.MessageOutbox;
+import com.freightfox.chatapp.RateLimit.LoadShedder;
+import com.freightfox.chatapp.RateLimit.SendRateLimiter;
+import com.freightfox.chatapp.Repository.BulkResult;
 import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import com.freightfox.chatapp.Repository.MessageBatcher;
+import com.freightfox.chatapp.Repository.MessageEncoding;
+import com.freightfox.chatapp.Repository.RawMessage;
+import com.freightfox.chatapp.Repository.RoomKeys;
+import com.freightfox.chatapp.Repository.SearchIndex;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -16,11 +35,22 @@ import java.util.Map;
 @RequestMapping("/api/chatapp/chatrooms")
 public class ChatController {
     private final ChatRoomRepository repo;
-    private final RedisMessagePublisher publisher;
+    private final MessageBatcher batcher;
+    private final MessageOutbox outbox;
+    private final RoomSessionRegistry sessions;
+    private final SendRateLimiter rateLimiter;
+    private final LoadShedder loadShedder;
+    private final SearchIndex searchIndex;
 
-    public ChatController(ChatRoomRepository repo, RedisMessagePublisher publisher) {
+    public ChatController(ChatRoomRepository repo, MessageBatcher batcher, MessageOutbox outbox, RoomSessionRegistry sessions,
+                          SendRateLimiter rateLimiter, LoadShedder loadShedder, SearchIndex searchIndex) {
         this.repo = repo;
-        this.publisher = publisher;
+        this.batcher = batcher;
+        this.outbox = outbox;
+        this.sessions = sessions;
+        this.rateLimiter = rateLimiter;
+        this.loadShedder = loadShedder;
+        this.searchIndex = searchIndex;
     }
 
     //endpoint to create a new chatroom
@@ -29,6 +59,10 @@ public class ChatController {
         if (request.getRoomName() == null || request.getRoomName().isBlank()) {
             throw new IllegalArgumentException("Room name is required");
         }
+        //the room name is the hash tag of all its redis keys, see RoomKeys
+        if (!RoomKeys.isValidRoomId(request.getRoomName())) {
+            throw new IllegalArgumentException("Room name must not contain { or }");
+        }
         //will throw error if the same chatroom name exists
         if (!repo.createRoom(request.getRoomName())) {
             return ResponseEntity.badRequest().body(Map.of("error", "Room already exists"));
@@ -40,6 +74,25 @@ public class ChatController {
         ));
     }
 
+    //endpoint to create many chatrooms at once, every room gets its own result and invalid names do not fail the rest
+    @PostMapping("/bulk")
+    public ResponseEntity<?> createRooms(@RequestBody BulkCreateRoomsRequest request) {
+        if (request.getRoomNames() == null || request.getRoomNames().isEmpty()) {
+            throw new IllegalArgumentException("Room names are required");
+        }
+        Map<String, String> results = new LinkedHashMap<>();
+        List<String> valid = new ArrayList<>();
+        for (String roomName : request.getRoomNames()) {
+            if (roomName == null || roomName.isBlank() || !RoomKeys.isValidRoomId(roomName)) {
+                results.put(String.valueOf(roomName), result(BulkResult.INVALID));
+            } else {
+                valid.add(roomName);
+            }
+        }
+        repo.createRooms(valid).forEach((roomId, created) -> results.put(roomId, result(created)));
+        return ResponseEntity.ok(Map.of("results", results, "status", "success"));
+    }
+
     //endpoint to join the specific chatroom
     @PostMapping("/{roomId}/join")
     public ResponseEntity<?> joinRoom(@PathVariable String roomId,@RequestBody JoinRoomRequest req) {
@@ -57,6 +110,106 @@ public class ChatController {
         ));
     }
 
+    //endpoint to leave the specific chatroom
+    @PostMapping("/{roomId}/leave")
+    public ResponseEntity<?> leaveRoom(@PathVariable String roomId, @RequestBody JoinRoomRequest req) {
+        if (req.getParticipant() == null || req.getParticipant().isBlank()) {
+            throw new IllegalArgumentException("Participant is required");
+        }
+        if (!repo.roomExists(roomId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Room does not exist"));
+        }
+        if (!repo.removeParticipant(roomId, req.getParticipant())) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Participant has not joined the room"));
+        }
+        return ResponseEntity.ok(Map.of(
+                "message", "User '" + req.getParticipant() + "' left chat room '" + roomId + "'.",
+                "status", "success"
+        ));
+    }
+
+    //endpoint to mark a chatroom read up to a message id, or up to the newest message when none is given;
+    //the read cursor only moves forward, so a late request from another device cannot move it back
+    @PostMapping("/{roomId}/read")
+    public ResponseEntity<?> markRead(@PathVariable String roomId, @RequestBody MarkReadRequest req) {
+        if (req.getParticipant() == null || req.getParticipant().isBlank()) {
+            throw new IllegalArgumentException("Participant is required");
+        }
+        if (req.getMessageId() != null && req.getMessageId() < 0) {
+            throw new IllegalArgumentException("Message id must not be negative");
+        }
+        long[] cursor = repo.markRead(roomId, req.getParticipant(), req.getMessageId());
+        if (cursor == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Room does not exist"));
+        }
+        return ResponseEntity.ok(Map.of(
+                "lastReadId", cursor[0],
+                "unread", cursor[1] - cursor[0],
+                "status", "success"
+        ));
+    }
+
+    //endpoint to list the participants of a chatroom page by page, start with cursor 0
+    //and pass the returned cursor back until it is 0 again
+    @GetMapping("/{roomId}/participants")
+    public ResponseEntity<?> getParticipants(@PathVariable String roomId,
+                                             @RequestParam(defaultValue = "0") String cursor,
+                                             @RequestParam(defaultValue = "100") int count) {
+        if (count < 1 || count > 1000) {
+            throw new IllegalArgumentException("Count must be between 1 and 1000");
+        }
+        if (!cursor.chars().allMatch(Character::isDigit) || cursor.isEmpty()) {
+            throw new IllegalArgumentException("Cursor must be a number returned by a previous page");
+        }
+        if (!repo.roomExists(roomId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Room does not exist"));
+        }
+        ChatRoomRepository.ParticipantPage page = repo.getParticipants(roomId, cursor, count);
+        return ResponseEntity.ok(Map.of("participants", page.participants(), "cursor", page.cursor()));
+    }
+
+    //endpoint to join many participants to one chatroom
+    @PostMapping("/{roomId}/join/bulk")
+    public ResponseEntity<?> joinRoomBulk(@PathVariable String roomId, @RequestBody BulkJoinRequest req) {
+        if (req.getParticipants() == null || req.getParticipants().isEmpty()) {
+            throw new IllegalArgumentException("Participants are required");
+        }
+        Map<String, String> results = new LinkedHashMap<>();
+        List<String> valid = new ArrayList<>();
+        for (String participant : req.getParticipants()) {
+            if (participant == null || participant.isBlank()) {
+                results.put(String.valueOf(participant), result(BulkResult.INVALID));
+            } else {
+                valid.add(participant);
+            }
+        }
+        Map<String, BulkResult> joined = valid.isEmpty() ? Map.of() : repo.addParticipants(roomId, valid);
+        //nobody joined because the room is not there, a room deleted part way still reports the joins made before
+        if (!joined.isEmpty() && joined.values().stream().allMatch(outcome -> outcome == BulkResult.ROOM_NOT_FOUND)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Room does not exist"));
+        }
+        joined.forEach((participant, outcome) -> results.put(participant, result(outcome)));
+        return ResponseEntity.ok(Map.of("results", results, "status", "success"));
+    }
+
+    //endpoint to join one participant to many chatrooms, rooms that do not exist are reported per room
+    @PostMapping("/join/bulk")
+    public ResponseEntity<?> joinRooms(@RequestBody JoinRoomsRequest req) {
+        if (req.getParticipant() == null || req.getParticipant().isBlank()) {
+            throw new IllegalArgumentException("Participant is required");
+        }
+        if (req.getRoomIds() == null || req.getRoomIds().isEmpty()) {
+            throw new IllegalArgumentException("Room ids are required");
+        }
+        Map<String, String> results = new LinkedHashMap<>();
+        repo.joinRooms(req.getParticipant(), req.getRoomIds()).forEach((roomId, outcome) -> results.put(roomId, result(outcome)));
+        return ResponseEntity.ok(Map.of("results", results, "status", "success"));
+    }
+
+    private static String result(BulkResult outcome) {
+        return outcome.name().toLowerCase();
+    }
+
     //endpoint to send the message to particular room
     @PostMapping("/{roomId}/messages")
     public ResponseEntity<?> sendMessage(@PathVariable String roomId,@RequestBody ChatMessage message) {
@@ -68,28 +221,121 @@ public class ChatController {
         if (message.getMessage() == null || message.getMessage().isBlank()) {
             throw new IllegalArgumentException("Message text is required");
         }
+        //ids are handed out by redis, never taken from the client
+        message.setId(null);
+        //so is the timestamp: retention trims and the delivery lag metric read it, a client clock must not steer them
+        message.setTimestamp(Instant.now());
+        //admission is decided on this node without redis: 503 while it sheds load, 429 over the room or sender limit;
+        //a slow redis does not shed sends that go to the outbox, they only wait for this node's disk
+        loadShedder.admit(outbox.isEnabled());
+        rateLimiter.acquire(roomId, message.getParticipant());
 
-        //will check if the room exists
-        if (!repo.roomExists(roomId)) {
+        //with the outbox on the message is acknowledged once it is on this node's disk and reaches redis right after,
+        //202 tells the client it is accepted but not stored yet
+        if (outbox.isEnabled()) {
+            if (!outbox.send(roomId, message)) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Room does not exist"));
+            }
+            return ResponseEntity.accepted().body(Map.of(
+                    "message", "Message accepted.",
+                    "status", "accepted"
+            ));
+        }
+        //room check, history append and publish happen in a single redis round trip,
+        //with batching on the write is shared with other requests arriving at the same time
+        boolean sent = batcher.isEnabled() ? batcher.send(roomId, message) : repo.sendMessage(roomId, message);
+        if (!sent) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Room does not exist"));
         }
-        repo.saveMessage(roomId, message);
-        publisher.publish(roomId, message);
         return ResponseEntity.ok(Map.of(
                 "message", "Message sent successfully.",
                 "status", "success"
         ));
     }
 
-    //endpoint to retrieve message from a chatroom with default limit 10
+    //endpoint to retrieve message from a chatroom with default limit 10,
+    //before/after page through older or newer messages relative to a message id
     @GetMapping("/{roomId}/messages")
     public ResponseEntity<?> getMessages(@PathVariable String roomId,
-                                         @RequestParam(defaultValue = "10") int limit) {
+                                         @RequestParam(defaultValue = "10") int limit,
+                                         @RequestParam(required = false) Long before,
+                                         @RequestParam(required = false) Long after) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1");
+        }
+        if (before != null && after != null) {
+            throw new IllegalArgumentException("Use either before or after, not both");
+        }
         if (!repo.roomExists(roomId)) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Room does not exist"));
         }
-        List<ChatMessage> messages = repo.getLastMessages(roomId, limit);
-        return ResponseEntity.ok(Map.of("messages", messages));
+        List<RawMessage> messages;
+        if (before != null) {
+            messages = repo.getMessagesBefore(roomId, before, limit);
+        } else if (after != null) {
+            messages = repo.getMessagesAfter(roomId, after, limit);
+        } else {
+            messages = repo.getLastMessages(roomId, limit);
+        }
+        //the stored json of every message is copied into the response, nothing is decoded or re-encoded
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(MessageEncoding.messagesBody(messages));
+    }
+
+    //endpoint to search a chatroom's history by words and/or participant, newest first; every word has to occur,
+    //from/to narrow it to when the messages were stored and before pages back with the cursor of the last page
+    @GetMapping("/{roomId}/messages/search")
+    public ResponseEntity<?> searchMessages(@PathVariable String roomId,
+                                            @RequestParam(required = false) String q,
+                                            @RequestParam(required = false) String participant,
+                                            @RequestParam(required = false) Instant from,
+                                            @RequestParam(required = false) Instant to,
+                                            @RequestParam(defaultValue = "0") long before,
+                                            @RequestParam(defaultValue = "20") int limit) {
+        if (!searchIndex.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Search is not enabled"));
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1");
+        }
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException("From must not be after to");
+        }
+        if (!repo.roomExists(roomId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Room does not exist"));
+        }
+        ChatRoomRepository.SearchPage page = repo.searchMessages(roomId, q, participant,
+                from == null ? null : from.toEpochMilli(), to == null ? null : to.toEpochMilli(), before, limit);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                .body(MessageEncoding.searchBody(page.messages(), page.cursor()));
+    }
+
+    //endpoint to override how much history the room keeps
+    @PutMapping("/{roomId}/retention")
+    public ResponseEntity<?> updateRetention(@PathVariable String roomId, @RequestBody RetentionRequest req) {
+        if ((req.getMaxMessages() != null && req.getMaxMessages() < 0)
+                || (req.getMaxAgeSeconds() != null && req.getMaxAgeSeconds() < 0)) {
+            throw new IllegalArgumentException("Retention limits must not be negative");
+        }
+        if (!repo.roomExists(roomId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Room does not exist"));
+        }
+        Long maxAgeMs = req.getMaxAgeSeconds() == null ? null : req.getMaxAgeSeconds() * 1000;
+        repo.updateRetention(roomId, req.getMaxMessages(), maxAgeMs);
+        return ResponseEntity.ok(Map.of(
+                "message", "Retention of chat room '" + roomId + "' updated.",
+                "status", "success"
+        ));
+    }
+
+    //endpoint to receive new messages of a chatroom as server-sent events instead of polling,
+    //a reconnecting client sends the id of the last event it saw and first gets everything it missed
+    @GetMapping("/{roomId}/stream")
+    public ResponseEntity<SseEmitter> streamMessages(@PathVariable String roomId,
+                                                     @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        if (!repo.roomExists(roomId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        return ResponseEntity.ok(sessions.open(roomId, lastEventId));
     }
 
     //endpoint to delete the specific room
@@ -0,0 +1,32 @@
+package com.freightfox.chatapp.Controller;
+
+import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/chatapp/participants")
+public class ParticipantController {
+    private final ChatRoomRepository repo;
+
+    public ParticipantController(ChatRoomRepository repo) {
+        this.repo = repo;
+    }
+
+    //endpoint for a client's room list: every room the participant is in with its newest message, unread count
+    //and metadata, most recently active first, in two redis round trips however many rooms there are
+    @GetMapping("/{participant}/rooms/summary")
+    public ResponseEntity<?> getRoomSummaries(@PathVariable String participant) {
+        if (participant.isBlank()) {
+            throw new IllegalArgumentException("Participant is required");
+        }
+        List<ChatRoomRepository.RoomSummary> rooms = repo.getRoomSummaries(participant);
+        return ResponseEntity.ok(Map.of("participant", participant, "rooms", rooms));
+    }
+}
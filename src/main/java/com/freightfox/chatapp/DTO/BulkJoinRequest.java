@@ -0,0 +1,12 @@
+package com.freightfox.chatapp.DTO;
+
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BulkJoinRequest {
+    @NotEmpty(message = "Participants are required")
+    private List<String> participants;
+}
@@ -1,11 +1,17 @@
 package com.freightfox.chatapp.DTO;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import jakarta.validation.constraints.NotBlank;
 import lombok.Data;
 import java.time.Instant;
 
 @Data
+@JsonPropertyOrder({"id", "participant", "message", "timestamp"})
 public class ChatMessage {
+    //assigned by redis when the message is stored, increases by one per message in a room
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long id;
     @NotBlank(message = "Participant is required")
     private String participant;
     @NotBlank(message = "Message is required")
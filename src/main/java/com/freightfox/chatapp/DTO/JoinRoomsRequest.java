@@ -0,0 +1,15 @@
+package com.freightfox.chatapp.DTO;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class JoinRoomsRequest {
+    @NotBlank(message = "Participant is required")
+    private String participant;
+    @NotEmpty(message = "Room ids are required")
+    private List<String> roomIds;
+}
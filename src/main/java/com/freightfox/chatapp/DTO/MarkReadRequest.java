@@ -0,0 +1,12 @@
+package com.freightfox.chatapp.DTO;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+
+@Data
+public class MarkReadRequest {
+    @NotBlank(message = "Participant is required")
+    private String participant;
+    //id of the newest message the participant has seen, null marks everything sent so far as read
+    private Long messageId;
+}
@@ -0,0 +1,13 @@
+package com.freightfox.chatapp.DTO;
+
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.Data;
+
+@Data
+public class RetentionRequest {
+    //0 keeps every message, null leaves the current limit
+    @PositiveOrZero(message = "maxMessages must not be negative")
+    private Long maxMessages;
+    @PositiveOrZero(message = "maxAgeSeconds must not be negative")
+    private Long maxAgeSeconds;
+}
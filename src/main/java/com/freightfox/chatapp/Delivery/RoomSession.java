@@ -0,0 +1,113 @@
+package com.freightfox.chatapp.Delivery;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+//one connected client: a bounded frame buffer drained by at most one writer at a time
+class RoomSession {
+    private final String roomId;
+    private final SseEmitter emitter;
+    private final BlockingQueue<Frame> buffer;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    //id of the last message written to the client, only touched by the writer holding the draining flag
+    private volatile long lastId;
+    //the thread writing to the client and since when, so a write stuck on a stalled socket can be cut off
+    private Thread writer;
+    private long writeStartedAt;
+    private boolean interrupted;
+    private boolean replaced;
+
+    RoomSession(String roomId, SseEmitter emitter, int bufferSize) {
+        this.roomId = roomId;
+        this.emitter = emitter;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+    }
+
+    String roomId() {
+        return roomId;
+    }
+
+    SseEmitter emitter() {
+        return emitter;
+    }
+
+    //false when the buffer is full, the caller decides what to drop
+    boolean offer(Frame frame) {
+        return buffer.offer(frame);
+    }
+
+    //makes room for one frame by discarding the oldest one
+    void dropOldest() {
+        buffer.poll();
+    }
+
+    Frame poll() {
+        return buffer.poll();
+    }
+
+    boolean hasPending() {
+        return !buffer.isEmpty();
+    }
+
+    //true for the caller that gets to start the writer
+    boolean tryStartDraining() {
+        return draining.compareAndSet(false, true);
+    }
+
+    void stopDraining() {
+        draining.set(false);
+    }
+
+    long lastId() {
+        return lastId;
+    }
+
+    void advanceTo(long id) {
+        if (id > lastId) lastId = id;
+    }
+
+    synchronized void beginWrite() {
+        writer = Thread.currentThread();
+        writeStartedAt = System.nanoTime();
+    }
+
+    //true when the write was cut off and its writer had been replaced; the interrupt meant for it is cleared
+    //here so it cannot hit the writer's next task
+    synchronized boolean endWrite() {
+        writer = null;
+        if (!interrupted) return false;
+        interrupted = false;
+        Thread.interrupted();
+        boolean wasReplaced = replaced;
+        replaced = false;
+        return wasReplaced;
+    }
+
+    //interrupts a write running for longer than timeoutNanos, replace is asked whether a stand-in writer was started
+    synchronized boolean interruptIfStalled(long now, long timeoutNanos, BooleanSupplier replace) {
+        if (writer == null || interrupted || now - writeStartedAt < timeoutNanos) return false;
+        interrupted = true;
+        replaced = replace.getAsBoolean();
+        writer.interrupt();
+        return true;
+    }
+
+    //true only for the first caller, so cleanup runs once
+    boolean markClosed() {
+        buffer.clear();
+        return closed.compareAndSet(false, true);
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    //an encoded event plus the message id it carries, 0 when the payload has none
+    record Frame(long id, byte[] bytes) {
+    }
+}
@@ -0,0 +1,252 @@
+package com.freightfox.chatapp.Delivery;
+
+import com.freightfox.chatapp.RedisMessage.RoomSubscriptionManager;
+import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import com.freightfox.chatapp.Repository.MessageEncoding;
+import com.freightfox.chatapp.Repository.RawMessage;
+import com.freightfox.chatapp.config.DeliveryProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//per node index of room -> connected clients, every pub/sub message is framed once
+//and handed to each local client's buffer so a stalled socket never holds up the others,
+//events carry the message id so a reconnecting client can resume with Last-Event-ID.
+//a write blocked past sendTimeout evicts its client: the write is interrupted and, while the writer stays stuck
+//in the socket, a stand-in writer keeps the other clients going
+@Slf4j
+@Component
+public class RoomSessionRegistry {
+    private static final byte[] DATA_PREFIX = "data:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FRAME_SUFFIX = "\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final int REPLAY_PAGE_SIZE = 100;
+
+    private final DeliveryProperties properties;
+    private final RoomSubscriptionManager subscriptions;
+    private final ChatRoomRepository repo;
+    private final ConcurrentHashMap<String, Set<RoomSession>> sessionsByRoom = new ConcurrentHashMap<>();
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private final ThreadPoolExecutor writers;
+    private final ScheduledExecutorService sendTimeouts =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("sse-send-timeout-"));
+    //stand-in writers started for writes cut off by the send timeout, at most writerThreads of them
+    private int standInWriters;
+    private final Counter droppedFrames;
+    private final Counter disconnectedSessions;
+    private final Counter evictedSessions;
+
+    public RoomSessionRegistry(DeliveryProperties properties, RoomSubscriptionManager subscriptions,
+                               ChatRoomRepository repo, MeterRegistry registry) {
+        this.properties = properties;
+        this.subscriptions = subscriptions;
+        this.repo = repo;
+        this.writers = new ThreadPoolExecutor(properties.getWriterThreads(), properties.getWriterThreads(),
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new CustomizableThreadFactory("sse-writer-"));
+        this.droppedFrames = registry.counter("chat.delivery.dropped");
+        this.disconnectedSessions = registry.counter("chat.delivery.disconnected");
+        this.evictedSessions = registry.counter("chat.delivery.evicted");
+        long check = Math.max(1, properties.getSendTimeout().toMillis() / 2);
+        sendTimeouts.scheduleWithFixedDelay(this::evictStalled, check, check, TimeUnit.MILLISECONDS);
+        registry.gauge("chat.delivery.sessions", Tags.empty(), sessionCount, AtomicInteger::get);
+    }
+
+    //this will register a new client for the room and return its event stream,
+    //with lastEventId the client first gets every stored message newer than that id
+    public SseEmitter open(String roomId, Long lastEventId) {
+        return open(roomId, new SseEmitter(properties.getSessionTimeout().toMillis()), lastEventId);
+    }
+
+    public SseEmitter open(String roomId, SseEmitter emitter, Long lastEventId) {
+        RoomSession session = new RoomSession(roomId, emitter, properties.getBufferSize());
+        boolean replay = lastEventId != null;
+        if (replay) {
+            //the replaying writer owns the session until history is caught up, live frames wait in the buffer
+            session.advanceTo(lastEventId);
+            session.tryStartDraining();
+        }
+        emitter.onCompletion(() -> close(session));
+        emitter.onTimeout(() -> close(session));
+        emitter.onError(error -> close(session));
+        sessionsByRoom.compute(roomId, (room, sessions) -> {
+            Set<RoomSession> roomSessions = sessions != null ? sessions : ConcurrentHashMap.newKeySet();
+            roomSessions.add(session);
+            return roomSessions;
+        });
+        sessionCount.incrementAndGet();
+        subscriptions.acquire(roomId);
+        if (replay) {
+            writers.execute(() -> replay(session));
+        }
+        return emitter;
+    }
+
+    public boolean hasSessions(String roomId) {
+        Set<RoomSession> sessions = sessionsByRoom.get(roomId);
+        return sessions != null && !sessions.isEmpty();
+    }
+
+    //this will frame the json payload once and queue the same bytes for every local client of the room
+    public void deliver(String roomId, byte[] payload) {
+        Set<RoomSession> sessions = sessionsByRoom.get(roomId);
+        if (sessions == null || sessions.isEmpty()) return;
+        RoomSession.Frame frame = frame(MessageEncoding.idOf(payload), payload);
+        for (RoomSession session : sessions) {
+            enqueue(session, frame);
+        }
+    }
+
+    private void enqueue(RoomSession session, RoomSession.Frame frame) {
+        if (!session.offer(frame)) {
+            if (properties.getSlowConsumerPolicy() == DeliveryProperties.SlowConsumerPolicy.DISCONNECT) {
+                //the emitter lock may be held by a stalled write, so the writer completes it, never this thread
+                disconnectedSessions.increment();
+                close(session);
+                if (session.tryStartDraining()) {
+                    writers.execute(() -> drain(session));
+                }
+                return;
+            }
+            session.dropOldest();
+            droppedFrames.increment();
+            if (!session.offer(frame)) {
+                droppedFrames.increment();
+            }
+        }
+        if (session.tryStartDraining()) {
+            writers.execute(() -> drain(session));
+        }
+    }
+
+    //this will page through the history the client missed, then hand over to the live buffer
+    private void replay(RoomSession session) {
+        try {
+            List<RawMessage> page;
+            do {
+                page = repo.getMessagesAfter(session.roomId(), session.lastId(), REPLAY_PAGE_SIZE);
+                for (RawMessage message : page) {
+                    if (session.isClosed()) break;
+                    write(session, frame(message.id(), message.json()));
+                }
+            } while (!page.isEmpty() && !session.isClosed());
+        } catch (IOException | RuntimeException e) {
+            log.debug("Dropping event stream for room {} during replay: {}", session.roomId(), e.getMessage());
+            close(session);
+            return;
+        }
+        drain(session);
+    }
+
+    //whatever way it ends, the session is no longer marked as being drained, so it never waits for a writer
+    //that is not coming
+    private void drain(RoomSession session) {
+        do {
+            try {
+                RoomSession.Frame frame;
+                while (!session.isClosed() && (frame = session.poll()) != null) {
+                    write(session, frame);
+                }
+                if (session.isClosed()) {
+                    session.emitter().complete();
+                    return;
+                }
+            } catch (IOException | RuntimeException e) {
+                //the container already tears the request down after a failed write
+                log.debug("Dropping event stream for room {}: {}", session.roomId(), e.getMessage());
+                close(session);
+                return;
+            } finally {
+                session.stopDraining();
+            }
+            //a frame queued after the inner loop ended but before stopDraining needs a writer too
+        } while (session.hasPending() && session.tryStartDraining());
+    }
+
+    //frames already covered by the replay, or tailed twice after a reconnect, are skipped by id
+    private void write(RoomSession session, RoomSession.Frame frame) throws IOException {
+        if (frame.id() > 0 && frame.id() <= session.lastId()) return;
+        session.beginWrite();
+        try {
+            session.emitter().send(Set.of(new ResponseBodyEmitter.DataWithMediaType(frame.bytes(), MediaType.TEXT_EVENT_STREAM)));
+        } finally {
+            if (session.endWrite()) resizeWriters(-1);
+        }
+        session.advanceTo(frame.id());
+    }
+
+    //this will evict every client whose current write has been blocked for longer than the send timeout,
+    //the writer that gets unstuck by the interrupt then completes the emitter like for any closed session
+    private void evictStalled() {
+        long now = System.nanoTime();
+        long timeout = properties.getSendTimeout().toNanos();
+        for (Set<RoomSession> sessions : sessionsByRoom.values()) {
+            for (RoomSession session : sessions) {
+                if (session.interruptIfStalled(now, timeout, () -> resizeWriters(1))) {
+                    log.debug("Evicting a client of room {}, a write was blocked for over {}", session.roomId(),
+                            properties.getSendTimeout());
+                    evictedSessions.increment();
+                    close(session);
+                }
+            }
+        }
+    }
+
+    //true when the pool changed, a socket that ignores the interrupt keeps its writer until the container times it out
+    private synchronized boolean resizeWriters(int delta) {
+        if (delta > 0 && standInWriters >= properties.getWriterThreads()) return false;
+        standInWriters += delta;
+        int size = properties.getWriterThreads() + standInWriters;
+        if (delta > 0) {
+            writers.setMaximumPoolSize(size);
+            writers.setCorePoolSize(size);
+        } else {
+            writers.setCorePoolSize(size);
+            writers.setMaximumPoolSize(size);
+        }
+        return true;
+    }
+
+    private void close(RoomSession session) {
+        if (!session.markClosed()) return;
+        sessionCount.decrementAndGet();
+        subscriptions.release(session.roomId());
+        sessionsByRoom.computeIfPresent(session.roomId(), (room, sessions) -> {
+            sessions.remove(session);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+
+    private static RoomSession.Frame frame(long id, byte[] payload) {
+        byte[] prefix = id > 0 ? ("id:" + id + "\ndata:").getBytes(StandardCharsets.UTF_8) : DATA_PREFIX;
+        byte[] frame = new byte[prefix.length + payload.length + FRAME_SUFFIX.length];
+        System.arraycopy(prefix, 0, frame, 0, prefix.length);
+        System.arraycopy(payload, 0, frame, prefix.length, payload.length);
+        System.arraycopy(FRAME_SUFFIX, 0, frame, prefix.length + payload.length, FRAME_SUFFIX.length);
+        return new RoomSession.Frame(id, frame);
+    }
+
+    //open streams are closed by the servlet container on shutdown
+    @PreDestroy
+    public void shutdown() {
+        sendTimeouts.shutdownNow();
+        writers.shutdownNow();
+    }
+}
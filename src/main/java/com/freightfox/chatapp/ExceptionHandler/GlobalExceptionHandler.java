@@ -1,10 +1,12 @@
 package com.freightfox.chatapp.ExceptionHandler;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import java.time.Duration;
 import java.util.Map;
 
 @RestControllerAdvice
@@ -15,6 +17,34 @@ public class GlobalExceptionHandler {
         return ResponseEntity.badRequest().body(Map.of("error", ex.getMessage()));
     }
 
+    //this will tell the client to back off when the node is overloaded
+    @ExceptionHandler(ServiceBusyException.class)
+    public ResponseEntity<?> handleBusy(ServiceBusyException ex) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE);
+        if (ex.getRetryAfter() != null) response.header(HttpHeaders.RETRY_AFTER, retryAfterSeconds(ex.getRetryAfter()));
+        return response.body(Map.of("error", ex.getMessage()));
+    }
+
+    //this will tell the client when its room or participant may send again
+    @ExceptionHandler(RateLimitedException.class)
+    public ResponseEntity<?> handleRateLimited(RateLimitedException ex) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds(ex.getRetryAfter()))
+                .body(Map.of("error", ex.getMessage()));
+    }
+
+    //Retry-After only takes whole seconds, rounded up so a client that honours it is admitted
+    private static String retryAfterSeconds(Duration wait) {
+        long millis = Math.max(1, wait.toMillis());
+        return String.valueOf((millis + 999) / 1000);
+    }
+
+    //this will refuse messages from senders who did not join the room
+    @ExceptionHandler(NotRoomMemberException.class)
+    public ResponseEntity<?> handleNotMember(NotRoomMemberException ex) {
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", ex.getMessage()));
+    }
+
     //this will handle other errors which are not defined
     @ExceptionHandler(Exception.class)
     public ResponseEntity<?> handleGeneral(Exception ex) {
@@ -0,0 +1,8 @@
+package com.freightfox.chatapp.ExceptionHandler;
+
+//thrown when membership is enforced and the sender has not joined the room, mapped to 403
+public class NotRoomMemberException extends RuntimeException {
+    public NotRoomMemberException(String message) {
+        super(message);
+    }
+}
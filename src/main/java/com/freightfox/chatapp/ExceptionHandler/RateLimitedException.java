@@ -0,0 +1,17 @@
+package com.freightfox.chatapp.ExceptionHandler;
+
+import java.time.Duration;
+
+//thrown when a room or a participant sends faster than its limit, mapped to 429 with Retry-After
+public class RateLimitedException extends RuntimeException {
+    private final Duration retryAfter;
+
+    public RateLimitedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
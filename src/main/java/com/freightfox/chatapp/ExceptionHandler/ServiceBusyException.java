@@ -0,0 +1,22 @@
+package com.freightfox.chatapp.ExceptionHandler;
+
+import java.time.Duration;
+
+//thrown when the node cannot take more work right now, mapped to 503
+public class ServiceBusyException extends RuntimeException {
+    //sent as Retry-After when known
+    private final Duration retryAfter;
+
+    public ServiceBusyException(String message) {
+        this(message, null);
+    }
+
+    public ServiceBusyException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
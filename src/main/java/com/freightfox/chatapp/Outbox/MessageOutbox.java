@@ -0,0 +1,199 @@
+package com.freightfox.chatapp.Outbox;
+
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.ExceptionHandler.ServiceBusyException;
+import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import com.freightfox.chatapp.config.OutboxProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//write-ahead outbox in front of redis: a send is appended to this node's OutboxLog and acknowledged once a
+//group-commit force put it on disk, without waiting for redis; a drain thread writes the log to redis in order,
+//one pipeline per batch, and moves the checkpoint once redis answered. after a crash, a reconnect or a lost reply
+//the same records are sent again and the send scripts skip what they already stored, so replay is idempotent
+@Slf4j
+@Component
+public class MessageOutbox {
+    private final ChatRoomRepository repo;
+    private final OutboxProperties properties;
+    private final MeterRegistry registry;
+    private final Counter drained;
+    private final Timer drainLatency;
+    private final Timer syncLatency;
+    private final Counter droppedMissingRoom;
+    private final Counter droppedNotMember;
+    private volatile boolean running;
+    private volatile OutboxLog outboxLog;
+    private Thread syncer;
+    private Thread drainer;
+
+    public MessageOutbox(ChatRoomRepository repo, OutboxProperties properties, MeterRegistry registry) {
+        this.repo = repo;
+        this.properties = properties;
+        this.registry = registry;
+        this.drained = Counter.builder("chat.outbox.drained")
+                .description("Messages written from the outbox to redis")
+                .register(registry);
+        this.drainLatency = Timer.builder("chat.outbox.drain")
+                .description("Time spent writing one outbox batch to redis")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.syncLatency = Timer.builder("chat.outbox.sync")
+                .description("Time spent forcing appended outbox records to disk")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.droppedMissingRoom = droppedCounter(registry, "missing-room");
+        this.droppedNotMember = droppedCounter(registry, "not-member");
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!isEnabled()) return;
+        outboxLog = OutboxLog.open(Path.of(properties.getDirectory()), properties.getSegmentSize());
+        registry.gauge("chat.outbox.depth", Tags.empty(), outboxLog, OutboxLog::depth);
+        running = true;
+        syncer = new Thread(this::syncLoop, "outbox-sync");
+        syncer.setDaemon(true);
+        syncer.start();
+        drainer = new Thread(this::drainLoop, "outbox-drain");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    //whatever is still in the log is sent on the next start
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        if (outboxLog == null) return;
+        running = false;
+        drainer.interrupt();
+        drainer.join(TimeUnit.SECONDS.toMillis(5));
+        syncer.join(TimeUnit.SECONDS.toMillis(5));
+        outboxLog.sync(0);
+        outboxLog.close();
+    }
+
+    //this will put the message in the outbox and return once it is on disk, false means the room is known not to exist;
+    //a room that is not in the room cache is only checked when the message reaches redis
+    public boolean send(String roomId, ChatMessage message) {
+        if (repo.isKnownMissing(roomId)) return false;
+        repo.checkMembership(roomId, message.getParticipant());
+        if (outboxLog.depth() >= properties.getMaxDepth()) {
+            throw new ServiceBusyException("Too many messages waiting for redis, try again later");
+        }
+        long seq = outboxLog.append(roomId, message);
+        try {
+            //the message may still be delivered after this, it is in the log already
+            if (!outboxLog.awaitSynced(seq, properties.getSyncTimeout().toNanos())) {
+                throw new ServiceBusyException("Timed out writing the message to the outbox");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceBusyException("Interrupted while writing the message to the outbox");
+        }
+        return true;
+    }
+
+    //messages accepted but not in redis yet
+    public long depth() {
+        return outboxLog == null ? 0 : outboxLog.depth();
+    }
+
+    private void syncLoop() {
+        while (running) {
+            try {
+                long start = System.nanoTime();
+                if (outboxLog.sync(100) > 0) syncLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                if (!running) return;
+            } catch (RuntimeException e) {
+                //senders waiting for this force time out with 503 meanwhile
+                log.warn("Failed to force the outbox to disk", e);
+                pause(properties.getRetryDelay());
+            }
+        }
+    }
+
+    private void drainLoop() {
+        while (running) {
+            try {
+                List<OutboxEntry> batch = outboxLog.read(properties.getDrainBatchSize(), 100);
+                if (batch.isEmpty()) continue;
+                drain(batch);
+                outboxLog.commit(batch.get(batch.size() - 1).seq());
+            } catch (InterruptedException e) {
+                if (!running) return;
+            } catch (ServiceBusyException e) {
+                //the circuit breaker is open, redis is not tried again before it lets a trial call through
+                pause(e.getRetryAfter() != null ? e.getRetryAfter() : properties.getRetryDelay());
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to drain the outbox, {} messages waiting", depth(), e);
+                pause(properties.getRetryDelay());
+            }
+        }
+    }
+
+    //one script call per room with its messages in log order; a room where one of the senders is not a participant
+    //stores nothing, its messages go again one by one so only that sender's are dropped
+    private void drain(List<OutboxEntry> batch) {
+        long start = System.nanoTime();
+        Map<String, List<OutboxEntry>> byRoom = new LinkedHashMap<>();
+        for (OutboxEntry entry : batch) {
+            byRoom.computeIfAbsent(entry.roomId(), room -> new ArrayList<>()).add(entry);
+        }
+        List<List<OutboxEntry>> rooms = new ArrayList<>(byRoom.values());
+        List<Long> answers = repo.sendFromOutbox(outboxLog.producer(), rooms);
+        List<List<OutboxEntry>> single = new ArrayList<>();
+        for (int i = 0; i < rooms.size(); i++) {
+            if (answers.get(i) == -1) {
+                droppedMissingRoom.increment(rooms.get(i).size());
+            } else if (answers.get(i) == -2) {
+                for (OutboxEntry entry : rooms.get(i)) {
+                    single.add(List.of(entry));
+                }
+            }
+        }
+        if (!single.isEmpty()) {
+            List<Long> singleAnswers = repo.sendFromOutbox(outboxLog.producer(), single);
+            for (Long answer : singleAnswers) {
+                if (answer == -1) droppedMissingRoom.increment();
+                if (answer == -2) droppedNotMember.increment();
+            }
+        }
+        drained.increment(batch.size());
+        drainLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void pause(Duration wait) {
+        try {
+            Thread.sleep(Math.max(1, wait.toMillis()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Counter droppedCounter(MeterRegistry registry, String reason) {
+        return Counter.builder("chat.outbox.dropped")
+                .description("Outbox messages redis refused, for a room that no longer exists or a sender who is not a participant")
+                .tag("reason", reason)
+                .register(registry);
+    }
+}
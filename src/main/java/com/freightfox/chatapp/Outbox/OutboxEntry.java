@@ -0,0 +1,7 @@
+package com.freightfox.chatapp.Outbox;
+
+import com.freightfox.chatapp.DTO.ChatMessage;
+
+//a message accepted into the outbox, seq is its position in this node's log and only ever grows
+public record OutboxEntry(long seq, String roomId, ChatMessage message) {
+}
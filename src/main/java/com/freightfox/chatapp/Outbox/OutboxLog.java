@@ -0,0 +1,417 @@
+package com.freightfox.chatapp.Outbox;
+
+import com.freightfox.chatapp.DTO.ChatMessage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+//append-only log of accepted messages in memory-mapped segment files named after the sequence of their first record;
+//a record is [int payload length][int crc32c of seq and payload][long seq][payload] and the rest of a segment is zeros.
+//an append only copies into the mapping, sync() forces everything appended since the previous force at once
+//(group commit) and readers only see forced records; the sequence of the last record that reached redis is kept
+//in a checkpoint file and segments entirely before it are deleted
+public class OutboxLog implements Closeable {
+    private static final int HEADER = 16;
+    private static final String SUFFIX = ".log";
+    private static final String CHECKPOINT = "drained";
+    private static final String PRODUCER = "producer";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final String producer;
+    private final FileChannel checkpoint;
+    private final ReentrantLock lock = new ReentrantLock();
+    //signalled on every append, the syncer waits on it
+    private final Condition appended = lock.newCondition();
+    //signalled after every force, senders and the drainer wait on it
+    private final Condition synced = lock.newCondition();
+    //oldest first, the last one is written to
+    private final List<Segment> segments = new ArrayList<>();
+    private volatile long lastSeq;
+    private volatile long syncedSeq;
+    private volatile long drainedSeq;
+    //first record not drained yet
+    private Segment readSegment;
+    private int readOffset;
+    private boolean closed;
+
+    private static final class Segment {
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        int writeOffset;
+        int syncedOffset;
+
+        Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+
+        //sequence of the record at offset, 0 when there is none
+        long seqAt(int offset) {
+            return offset < writeOffset ? buffer.getLong(offset + 8) : 0;
+        }
+
+        int next(int offset) {
+            return offset + HEADER + buffer.getInt(offset);
+        }
+    }
+
+    private OutboxLog(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        this.producer = producer(directory.resolve(PRODUCER));
+        this.checkpoint = FileChannel.open(directory.resolve(CHECKPOINT),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer drained = ByteBuffer.allocate(8);
+        if (checkpoint.read(drained, 0) == 8) drainedSeq = drained.getLong(0);
+    }
+
+    //this will open the log in directory, cutting off a record torn by a crash, and position the reader
+    //after the checkpoint; sequences continue after both the newest record and the checkpoint
+    public static OutboxLog open(Path directory, long segmentSize) throws IOException {
+        if (segmentSize < 4096 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Outbox segment size must be between 4KB and 2GB");
+        }
+        OutboxLog log = new OutboxLog(directory, (int) segmentSize);
+        try {
+            log.recover();
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+        return log;
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listed = Files.list(directory)) {
+            files = listed.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+        long last = drainedSeq;
+        long writerLast = 0;
+        for (Path file : files) {
+            long first = Long.parseLong(file.getFileName().toString().replace(SUFFIX, ""));
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+            writerLast = scan(segment, first - 1);
+            segments.add(segment);
+            last = Math.max(last, writerLast);
+        }
+        lastSeq = last;
+        syncedSeq = last;
+        //records have to follow each other without gaps within a segment, a checkpoint past the newest record
+        //(its segment was deleted by hand) starts a new one
+        if (segments.isEmpty() || writerLast != last) {
+            segments.add(createSegment(last + 1));
+        } else {
+            //whatever a crash left past the last whole record is zeroed, so the next append is followed by zeros again
+            Segment writer = segments.get(segments.size() - 1);
+            zeroTail(writer);
+            writer.buffer.force();
+        }
+        readSegment = segments.get(0);
+        readOffset = 0;
+        skipDrained();
+        deleteDrainedSegments();
+    }
+
+    //walks the whole records of segment, returns the sequence of the last one
+    private static long scan(Segment segment, long previous) {
+        ByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while (offset + HEADER <= segment.capacity) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER + length > segment.capacity) break;
+            long seq = buffer.getLong(offset + 8);
+            if (seq != previous + 1 || buffer.getInt(offset + 4) != crc(buffer, offset, length)) break;
+            previous = seq;
+            offset += HEADER + length;
+        }
+        segment.writeOffset = offset;
+        segment.syncedOffset = offset;
+        return previous;
+    }
+
+    private static void zeroTail(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        int dirty = -1;
+        for (int i = segment.writeOffset; i < segment.capacity; i++) {
+            if (buffer.get(i) != 0) {
+                dirty = i;
+                break;
+            }
+        }
+        if (dirty < 0) return;
+        byte[] zeros = new byte[64 * 1024];
+        for (int at = dirty; at < segment.capacity; at += zeros.length) {
+            buffer.put(at, zeros, 0, Math.min(zeros.length, segment.capacity - at));
+        }
+    }
+
+    //this will append the message and return its sequence, it is durable once awaitSynced says so
+    public long append(String roomId, ChatMessage message) {
+        byte[] payload = encode(roomId, message);
+        if (HEADER + payload.length > segmentSize) {
+            throw new IllegalArgumentException("Message is too large for the outbox");
+        }
+        lock.lock();
+        try {
+            if (closed) throw new IllegalStateException("Outbox is closed");
+            Segment segment = segments.get(segments.size() - 1);
+            if (segment.writeOffset + HEADER + payload.length > segment.capacity) {
+                segment = createSegment(lastSeq + 1);
+                segments.add(segment);
+            }
+            long seq = lastSeq + 1;
+            int at = segment.writeOffset;
+            MappedByteBuffer buffer = segment.buffer;
+            buffer.putLong(at + 8, seq);
+            buffer.put(at + HEADER, payload);
+            buffer.putInt(at + 4, crc(buffer, at, payload.length));
+            //the length goes in last, a reader never meets a record whose length is set and the rest is not
+            buffer.putInt(at, payload.length);
+            segment.writeOffset = at + HEADER + payload.length;
+            lastSeq = seq;
+            appended.signal();
+            return seq;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start a new outbox segment", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //this will force every record appended so far to disk, waiting up to maxWaitMillis for the first one;
+    //everything appended while a force runs goes to disk together with the next one
+    //returns the number of records made durable
+    public long sync(long maxWaitMillis) throws InterruptedException {
+        List<Segment> dirty = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        long target;
+        lock.lock();
+        try {
+            if (lastSeq == syncedSeq && !closed) appended.await(maxWaitMillis, TimeUnit.MILLISECONDS);
+            if (lastSeq == syncedSeq || closed) return 0;
+            target = lastSeq;
+            for (Segment segment : segments) {
+                if (segment.syncedOffset < segment.writeOffset) {
+                    dirty.add(segment);
+                    ends.add(segment.writeOffset);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (int i = 0; i < dirty.size(); i++) {
+            Segment segment = dirty.get(i);
+            segment.buffer.force(segment.syncedOffset, ends.get(i) - segment.syncedOffset);
+        }
+        lock.lock();
+        try {
+            for (int i = 0; i < dirty.size(); i++) {
+                dirty.get(i).syncedOffset = ends.get(i);
+            }
+            long made = target - syncedSeq;
+            syncedSeq = target;
+            synced.signalAll();
+            return made;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //this will wait until the record with seq is on disk, false when that took longer than timeoutNanos
+    public boolean awaitSynced(long seq, long timeoutNanos) throws InterruptedException {
+        if (syncedSeq >= seq) return true;
+        lock.lock();
+        try {
+            long remaining = timeoutNanos;
+            while (syncedSeq < seq) {
+                if (remaining <= 0 || closed) return false;
+                remaining = synced.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //this will return up to max forced records after the checkpoint in log order, waiting up to maxWaitMillis
+    //for one; they stay in the log until commit, so the same records come back until then
+    public List<OutboxEntry> read(int max, long maxWaitMillis) throws InterruptedException {
+        List<OutboxEntry> entries = new ArrayList<>();
+        lock.lock();
+        try {
+            if (syncedSeq == drainedSeq && !closed) synced.await(maxWaitMillis, TimeUnit.MILLISECONDS);
+            if (closed) return entries;
+            int segmentIndex = segments.indexOf(readSegment);
+            Segment segment = readSegment;
+            int offset = readOffset;
+            while (entries.size() < max) {
+                long seq = segment.seqAt(offset);
+                if (seq == 0) {
+                    if (++segmentIndex >= segments.size()) break;
+                    segment = segments.get(segmentIndex);
+                    offset = 0;
+                    continue;
+                }
+                if (seq > syncedSeq) break;
+                byte[] payload = new byte[segment.buffer.getInt(offset)];
+                segment.buffer.get(offset + HEADER, payload);
+                entries.add(decode(seq, payload));
+                offset = segment.next(offset);
+            }
+            return entries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //this will mark every record up to seq as written to redis and delete the segments that holds only such records;
+    //the checkpoint is forced before a segment goes, so sequences never start over below what redis has seen
+    public void commit(long seq) throws IOException {
+        lock.lock();
+        try {
+            if (closed || seq <= drainedSeq) return;
+            drainedSeq = Math.min(seq, syncedSeq);
+            skipDrained();
+            checkpoint.write(ByteBuffer.allocate(8).putLong(0, drainedSeq), 0);
+            deleteDrainedSegments();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void skipDrained() {
+        int segmentIndex = segments.indexOf(readSegment);
+        while (true) {
+            long seq = readSegment.seqAt(readOffset);
+            if (seq == 0 && segmentIndex + 1 < segments.size()) {
+                readSegment = segments.get(++segmentIndex);
+                readOffset = 0;
+            } else if (seq != 0 && seq <= drainedSeq) {
+                readOffset = readSegment.next(readOffset);
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void deleteDrainedSegments() throws IOException {
+        int drained = segments.indexOf(readSegment);
+        if (drained <= 0) return;
+        checkpoint.force(false);
+        for (Segment segment : new ArrayList<>(segments.subList(0, drained))) {
+            segment.channel.close();
+            Files.delete(segment.path);
+            segments.remove(segment);
+        }
+    }
+
+    private Segment createSegment(long firstSeq) throws IOException {
+        Path path = directory.resolve(String.format("%020d", firstSeq) + SUFFIX);
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        channel.force(true);
+        return segment;
+    }
+
+    public String producer() {
+        return producer;
+    }
+
+    //messages accepted but not written to redis yet
+    public long depth() {
+        return lastSeq - drainedSeq;
+    }
+
+    public long drainedSeq() {
+        return drainedSeq;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            appended.signalAll();
+            synced.signalAll();
+            for (Segment segment : segments) {
+                segment.channel.close();
+            }
+            checkpoint.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //the producer id names this node's log in redis, it stays with the directory so a restarted node is the same producer
+    private static String producer(Path file) throws IOException {
+        if (Files.exists(file)) return Files.readString(file).trim();
+        String producer = UUID.randomUUID().toString();
+        Files.writeString(file, producer, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+        return producer;
+    }
+
+    private static int crc(ByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset + 8, 8 + length));
+        return (int) crc.getValue();
+    }
+
+    //room id, participant and text as length prefixed utf-8, then the timestamp, Long.MIN_VALUE seconds when there is none
+    private static byte[] encode(String roomId, ChatMessage message) {
+        byte[] room = roomId.getBytes(StandardCharsets.UTF_8);
+        byte[] participant = message.getParticipant().getBytes(StandardCharsets.UTF_8);
+        byte[] text = message.getMessage().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(12 + room.length + participant.length + text.length + 12);
+        payload.putInt(room.length).put(room)
+                .putInt(participant.length).put(participant)
+                .putInt(text.length).put(text);
+        Instant timestamp = message.getTimestamp();
+        payload.putLong(timestamp == null ? Long.MIN_VALUE : timestamp.getEpochSecond())
+                .putInt(timestamp == null ? 0 : timestamp.getNano());
+        return payload.array();
+    }
+
+    private static OutboxEntry decode(long seq, byte[] bytes) {
+        ByteBuffer payload = ByteBuffer.wrap(bytes);
+        String roomId = string(payload);
+        ChatMessage message = new ChatMessage();
+        message.setParticipant(string(payload));
+        message.setMessage(string(payload));
+        long seconds = payload.getLong();
+        int nanos = payload.getInt();
+        message.setTimestamp(seconds == Long.MIN_VALUE ? null : Instant.ofEpochSecond(seconds, nanos));
+        return new OutboxEntry(seq, roomId, message);
+    }
+
+    private static String string(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getInt()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,59 @@
+package com.freightfox.chatapp.RateLimit;
+
+//state of one circuit breaker, times are System.nanoTime() values passed in;
+//closed lets every call through and counts failures in a row, open refuses all calls for a while,
+//then half open lets a single trial call through whose outcome closes or opens it again.
+//the closed path only reads a volatile field, the lock is taken when the state is about to change
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private volatile State state = State.CLOSED;
+    private volatile int failures;
+    private long openedAt;
+
+    public CircuitBreaker(int failureThreshold, long openNanos) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = openNanos;
+    }
+
+    //returns 0 when the call may go ahead, otherwise the nanos until a trial call will be let through
+    public long tryAcquire(long now) {
+        if (state == State.CLOSED) return 0;
+        synchronized (this) {
+            if (state == State.CLOSED) return 0;
+            if (state == State.HALF_OPEN) return openNanos;
+            long wait = openedAt + openNanos - now;
+            if (wait > 0) return wait;
+            state = State.HALF_OPEN;
+            return 0;
+        }
+    }
+
+    //returns true when this success closed the breaker
+    public boolean onSuccess() {
+        if (state == State.CLOSED && failures == 0) return false;
+        synchronized (this) {
+            failures = 0;
+            //a call admitted before the breaker opened says nothing about redis now, only the trial call does
+            if (state != State.HALF_OPEN) return false;
+            state = State.CLOSED;
+            return true;
+        }
+    }
+
+    //returns true when this failure opened the breaker
+    public synchronized boolean onFailure(long now) {
+        if (state == State.OPEN) return false;
+        if (state == State.CLOSED && ++failures < failureThreshold) return false;
+        state = State.OPEN;
+        openedAt = now;
+        failures = 0;
+        return true;
+    }
+
+    public State state() {
+        return state;
+    }
+}
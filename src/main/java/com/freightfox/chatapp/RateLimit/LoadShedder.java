@@ -0,0 +1,93 @@
+package com.freightfox.chatapp.RateLimit;
+
+import com.freightfox.chatapp.ExceptionHandler.ServiceBusyException;
+import com.freightfox.chatapp.config.LoadSheddingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//refuses every send with 503 while redis is slow or the pub/sub listener is behind, so a struggling node
+//stops adding writes and fan-out until it caught up; the decision is taken once per check interval
+//from the chat.redis.operation timers and the listener queue, a request only reads a flag.
+//sends going to the outbox only wait for the local disk, a slow redis is what the outbox rides out,
+//so they are refused for the listener queue alone
+@Slf4j
+@Component
+public class LoadShedder {
+    private final LoadSheddingProperties properties;
+    private final MeterRegistry registry;
+    private final ThreadPoolTaskExecutor listenerExecutor;
+    private final Counter rejected;
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("load-shedder-"));
+    private volatile boolean slowRedis;
+    private volatile boolean listenerBehind;
+    private long lastCount;
+    private double lastTotalNanos;
+
+    public LoadShedder(LoadSheddingProperties properties, MeterRegistry registry,
+                       ThreadPoolTaskExecutor redisListenerExecutor) {
+        this.properties = properties;
+        this.registry = registry;
+        this.listenerExecutor = redisListenerExecutor;
+        this.rejected = registry.counter("chat.loadshed.rejected");
+        registry.gauge("chat.loadshed.active", Tags.empty(), this, shedder -> shedder.slowRedis || shedder.listenerBehind ? 1 : 0);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) return;
+        long interval = properties.getCheckInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::check, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    //this will refuse the send while the node is shedding load, outboxed tells a send that goes to the outbox
+    public void admit(boolean outboxed) {
+        if (!listenerBehind && (outboxed || !slowRedis)) return;
+        rejected.increment();
+        throw new ServiceBusyException("Server is overloaded, try again later", properties.getCheckInterval());
+    }
+
+    //mean latency of the redis calls made since the last check, across every operation
+    void check() {
+        long count = 0;
+        double totalNanos = 0;
+        for (Timer timer : registry.find("chat.redis.operation").timers()) {
+            count += timer.count();
+            totalNanos += timer.totalTime(TimeUnit.NANOSECONDS);
+        }
+        long calls = count - lastCount;
+        double meanNanos = calls > 0 ? (totalNanos - lastTotalNanos) / calls : 0;
+        lastCount = count;
+        lastTotalNanos = totalNanos;
+        int queued = listenerExecutor.getQueueSize();
+
+        long latencyLimit = properties.getRedisLatency().toNanos();
+        boolean slow = latencyLimit > 0 && meanNanos > latencyLimit;
+        boolean behind = properties.getListenerQueue() > 0 && queued > properties.getListenerQueue();
+        boolean shed = slow || behind;
+        if (shed != (slowRedis || listenerBehind)) {
+            log.warn(shed ? "Shedding sends, mean redis latency {} ms, {} messages waiting for the listener"
+                            : "Accepting sends again, mean redis latency {} ms, {} messages waiting for the listener",
+                    Math.round(meanNanos / 1_000_000), queued);
+        }
+        slowRedis = slow;
+        listenerBehind = behind;
+    }
+}
@@ -0,0 +1,136 @@
+package com.freightfox.chatapp.RateLimit;
+
+import com.freightfox.chatapp.ExceptionHandler.ServiceBusyException;
+import com.freightfox.chatapp.config.CircuitBreakerProperties;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisConnectionException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+//circuit breaker around the repository's redis calls: once failureThreshold calls in a row failed to reach redis
+//or took longer than slowCall, every call is refused with 503 for openFor instead of tying up a request thread
+//until the client timeout; calls still waiting for their reply are looked at too, so a hanging redis opens the
+//breaker after slowCall rather than after spring.data.redis.timeout
+@Slf4j
+@Component
+public class RedisCircuitBreaker {
+    private final CircuitBreakerProperties properties;
+    private final CircuitBreaker breaker;
+    private final long slowNanos;
+    private final Counter rejected;
+    //start time of every call waiting for redis, a call past slowCall is taken out and counted as failed
+    private final Map<Long, Long> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong calls = new AtomicLong();
+    //set while this thread is inside a call; the calls it makes from there are part of that call and are neither
+    //refused nor counted on their own, otherwise a trial call that nests one would be refused by its own half open
+    private final ThreadLocal<Boolean> inCall = ThreadLocal.withInitial(() -> false);
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("redis-circuit-"));
+
+    public RedisCircuitBreaker(CircuitBreakerProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        this.breaker = new CircuitBreaker(properties.getFailureThreshold(), properties.getOpenFor().toNanos());
+        this.slowNanos = properties.getSlowCall().toNanos();
+        this.rejected = Counter.builder("chat.redis.circuit.rejected")
+                .description("Redis calls refused while the circuit breaker was open")
+                .register(registry);
+        registry.gauge("chat.redis.circuit.state", Tags.empty(), breaker, state -> state.state().ordinal());
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) return;
+        long interval = Math.max(10, properties.getSlowCall().toMillis() / 4);
+        scheduler.scheduleWithFixedDelay(this::checkInFlight, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    //this will run the redis call timed by timer, or refuse it while the breaker is open
+    public <T> T call(Timer timer, Supplier<T> redisCall) {
+        if (!properties.isEnabled() || inCall.get()) return timer.record(redisCall);
+        long start = System.nanoTime();
+        long wait = breaker.tryAcquire(start);
+        if (wait > 0) {
+            rejected.increment();
+            throw new ServiceBusyException("Redis is unavailable, try again later", Duration.ofNanos(wait));
+        }
+        long id = calls.incrementAndGet();
+        inFlight.put(id, start);
+        boolean failed = false;
+        inCall.set(true);
+        try {
+            return redisCall.get();
+        } catch (RuntimeException e) {
+            failed = isRedisFailure(e);
+            throw e;
+        } finally {
+            inCall.set(false);
+            long end = System.nanoTime();
+            timer.record(end - start, TimeUnit.NANOSECONDS);
+            //a call already counted as slow by checkInFlight is not counted again
+            if (inFlight.remove(id) != null) record(failed || end - start > slowNanos, end);
+        }
+    }
+
+    public void run(Timer timer, Runnable redisCall) {
+        call(timer, () -> {
+            redisCall.run();
+            return null;
+        });
+    }
+
+    public CircuitBreaker.State state() {
+        return breaker.state();
+    }
+
+    void checkInFlight() {
+        long now = System.nanoTime();
+        for (Map.Entry<Long, Long> call : inFlight.entrySet()) {
+            if (now - call.getValue() > slowNanos && inFlight.remove(call.getKey()) != null) record(true, now);
+        }
+    }
+
+    private void record(boolean failed, long now) {
+        if (failed) {
+            if (breaker.onFailure(now)) {
+                log.warn("Redis circuit breaker opened, refusing redis calls for {}", properties.getOpenFor());
+            }
+        } else if (breaker.onSuccess()) {
+            log.warn("Redis circuit breaker closed, redis answers again");
+        }
+    }
+
+    //connection problems and timeouts say redis is not there, errors redis answered with (a script error,
+    //a wrong type) say nothing about its health; pipelines may hand back lettuce's own exceptions untranslated
+    private static boolean isRedisFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DataAccessResourceFailureException || cause instanceof QueryTimeoutException
+                    || cause instanceof RedisConnectionException || cause instanceof RedisCommandTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
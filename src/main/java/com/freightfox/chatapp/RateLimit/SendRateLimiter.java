@@ -0,0 +1,141 @@
+package com.freightfox.chatapp.RateLimit;
+
+import com.freightfox.chatapp.ExceptionHandler.RateLimitedException;
+import com.freightfox.chatapp.config.RateLimitProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//admission for sends: one token bucket per room and one per participant, taken locally on the request thread.
+//every node enforces the cluster wide rate in its own buckets and once per sync interval adds what it admitted
+//to a shared counter per bucket in redis (one pipeline for all buckets), charging its buckets with what
+//the other nodes admitted since the last sync, so the limits hold across nodes without a redis call per send
+@Slf4j
+@Component
+public class SendRateLimiter {
+    static final String ROOM_PREFIX = "chatapp:ratelimit:room:";
+    static final String PARTICIPANT_PREFIX = "chatapp:ratelimit:participant:";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RateLimitProperties properties;
+    private final Map<String, SyncedBucket> buckets = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("rate-limit-sync-"));
+    private final Counter roomRejected;
+    private final Counter participantRejected;
+
+    public SendRateLimiter(RedisTemplate<String, Object> redisTemplate, RateLimitProperties properties,
+                           MeterRegistry registry) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.roomRejected = registry.counter("chat.ratelimit.rejected", "scope", "room");
+        this.participantRejected = registry.counter("chat.ratelimit.rejected", "scope", "participant");
+        registry.gaugeMapSize("chat.ratelimit.buckets", Tags.empty(), buckets);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) return;
+        long interval = properties.getSyncInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::sync, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    //this will take a token from the room's and the participant's bucket or throw with the time until both have one
+    public void acquire(String roomId, String participant) {
+        if (!properties.isEnabled()) return;
+        long now = System.nanoTime();
+        TokenBucket room = bucket(ROOM_PREFIX + roomId, properties.getRoomRate(), properties.getRoomBurst(), now);
+        long wait = room.tryAcquire(now);
+        if (wait > 0) {
+            roomRejected.increment();
+            throw new RateLimitedException("Too many messages in this room, try again later", Duration.ofNanos(wait));
+        }
+        TokenBucket sender = bucket(PARTICIPANT_PREFIX + participant,
+                properties.getParticipantRate(), properties.getParticipantBurst(), now);
+        wait = sender.tryAcquire(now);
+        if (wait > 0) {
+            //the message is not sent, so it must not count against the room
+            room.refund();
+            participantRejected.increment();
+            throw new RateLimitedException("Too many messages from this participant, try again later", Duration.ofNanos(wait));
+        }
+    }
+
+    private TokenBucket bucket(String key, double rate, int burst, long now) {
+        return buckets.computeIfAbsent(key, k -> new SyncedBucket(new TokenBucket(rate, burst, now))).bucket;
+    }
+
+    //adds every bucket's local admissions to its shared counter and charges the bucket with the rest of the increase;
+    //buckets idle for a few intervals are dropped instead, a counter that expired meanwhile just starts over
+    void sync() {
+        long now = System.nanoTime();
+        long idleFor = properties.getSyncInterval().toNanos() * 10;
+        List<String> keys = new ArrayList<>();
+        List<Long> deltas = new ArrayList<>();
+        for (Map.Entry<String, SyncedBucket> entry : buckets.entrySet()) {
+            SyncedBucket synced = entry.getValue();
+            if (synced.bucket.isIdle(now, idleFor)) {
+                buckets.remove(entry.getKey(), synced);
+                continue;
+            }
+            keys.add(entry.getKey());
+            deltas.add(synced.bucket.drainAdmitted());
+        }
+        if (keys.isEmpty()) return;
+        long ttl = properties.getSyncInterval().toMillis() * 10;
+        try {
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i = 0; i < keys.size(); i++) {
+                    byte[] key = RedisSerializer.string().serialize(keys.get(i));
+                    connection.stringCommands().incrBy(key, deltas.get(i));
+                    connection.keyCommands().pExpire(key, ttl);
+                }
+                return null;
+            });
+            for (int i = 0; i < keys.size(); i++) {
+                SyncedBucket synced = buckets.get(keys.get(i));
+                if (synced == null) continue;
+                long total = (Long) results.get(2 * i);
+                //the first sync of a bucket only learns where the counter stands
+                long others = synced.lastTotal < 0 ? 0 : Math.max(0, total - synced.lastTotal - deltas.get(i));
+                synced.lastTotal = total;
+                synced.bucket.charge(others, now);
+            }
+        } catch (RuntimeException e) {
+            //limits stay local until redis is back, the admissions of this round are not shared
+            log.warn("Could not sync {} rate limit buckets", keys.size(), e);
+        }
+    }
+
+    private static class SyncedBucket {
+        private final TokenBucket bucket;
+        //shared counter after this node's last sync, only touched by the sync thread
+        private long lastTotal = -1;
+
+        private SyncedBucket(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+}
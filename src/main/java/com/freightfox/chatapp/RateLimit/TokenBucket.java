@@ -0,0 +1,62 @@
+package com.freightfox.chatapp.RateLimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+//token bucket kept as a single "bucket is full again at" instant (the generic cell rate algorithm),
+//so taking a token is one compare-and-set with no lock and no refill thread;
+//admitted sends are also counted in a striped adder that the sync drains without contending with requests
+public class TokenBucket {
+    private final long interval;
+    private final long capacity;
+    private final AtomicLong fullAt;
+    private final LongAdder admitted = new LongAdder();
+    private volatile long lastUsed;
+
+    //rate in tokens per second, burst is how many can be taken at once from a full bucket
+    public TokenBucket(double rate, int burst, long now) {
+        this.interval = Math.max(1, (long) (1_000_000_000L / rate));
+        this.capacity = interval * Math.max(1, burst);
+        this.fullAt = new AtomicLong(now);
+        this.lastUsed = now;
+    }
+
+    //takes one token, returns 0 when it was available or else the nanos until it will be
+    public long tryAcquire(long now) {
+        lastUsed = now;
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + interval;
+            long overdraft = next - now - capacity;
+            if (overdraft > 0) return overdraft;
+            if (fullAt.compareAndSet(current, next)) {
+                admitted.increment();
+                return 0;
+            }
+        }
+    }
+
+    //gives back a token taken for a send that another bucket refused
+    public void refund() {
+        fullAt.addAndGet(-interval);
+        admitted.decrement();
+    }
+
+    //takes tokens other nodes used, at most down to an empty bucket so a burst elsewhere cannot block this node
+    //for longer than one refill of the whole bucket
+    public void charge(long tokens, long now) {
+        if (tokens <= 0) return;
+        long cost = tokens > capacity / interval ? capacity : tokens * interval;
+        fullAt.accumulateAndGet(now, (current, at) -> Math.min(Math.max(current, at) + cost, at + capacity));
+    }
+
+    //sends admitted since the last call
+    public long drainAdmitted() {
+        return admitted.sumThenReset();
+    }
+
+    //a full bucket that has not been used for that long can be dropped, a new one starts out full as well
+    public boolean isIdle(long now, long idleFor) {
+        return fullAt.get() <= now && now - lastUsed > idleFor;
+    }
+}
@@ -0,0 +1,36 @@
+package com.freightfox.chatapp.RedisMessage;
+
+import com.freightfox.chatapp.Repository.MembershipFilter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+//every node updates its membership filters from the joins and leaves any node announces on chatapp:membership
+@Component
+@RequiredArgsConstructor
+public class MembershipEventListener implements MessageListener {
+    private final MembershipFilter filter;
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    //the body is +{roomId}\n{participant} for a join and -{roomId}\n{participant} for a leave,
+    //the participant in the template's value encoding which never holds a raw newline
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        byte[] body = message.getBody();
+        int newline = body.length - 1;
+        while (newline > 0 && body[newline] != '\n') newline--;
+        if (newline <= 1) return;
+        String roomId = new String(body, 1, newline - 1, StandardCharsets.UTF_8);
+        if (body[0] == '-') {
+            filter.left(roomId);
+            return;
+        }
+        Object participant = redisTemplate.getValueSerializer().deserialize(Arrays.copyOfRange(body, newline + 1, body.length));
+        if (participant != null) filter.joined(roomId, participant.toString());
+    }
+}
@@ -0,0 +1,89 @@
+package com.freightfox.chatapp.RedisMessage;
+
+import com.freightfox.chatapp.Repository.MessageEncoding;
+import com.freightfox.chatapp.config.MetricsProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//delivery lag from the timestamp the accepting node set at send to receipt on this node, and message rates of the busiest rooms;
+//rates come from a fixed size sketch so only topRooms room tags ever reach the registry
+@Component
+public class PubSubMetrics {
+    private final MetricsProperties properties;
+    private final Timer deliveryLag;
+    private final Counter rejected;
+    private final TopRoomsSketch sketch;
+    private final MultiGauge roomRates;
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("room-rates-"));
+
+    public PubSubMetrics(MetricsProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        this.deliveryLag = Timer.builder("chat.pubsub.delivery.lag")
+                .description("Time from the node accepting the message to its receipt on this node")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.rejected = Counter.builder("chat.pubsub.listener.rejected")
+                .description("Received messages dropped because the listener queue was full")
+                .register(registry);
+        this.sketch = new TopRoomsSketch(properties.getTopRoomsCapacity());
+        this.roomRates = MultiGauge.builder("chat.pubsub.room.rate")
+                .description("Messages per second received for the busiest rooms")
+                .baseUnit("messages/s")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        long window = properties.getRateWindow().toMillis();
+        scheduler.scheduleAtFixedRate(this::publishRates, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    //this will record one message of the room as received, json is the stored json with the server set timestamp
+    public void received(String roomId, byte[] json) {
+        sketch.add(roomId);
+        long sentNanos = MessageEncoding.timestampNanos(json);
+        if (sentNanos < 0) return;
+        Instant now = Instant.now();
+        long lag = now.getEpochSecond() * 1_000_000_000L + now.getNano() - sentNanos;
+        //the accepting node's clock may be slightly ahead of ours, that would give a negative lag
+        deliveryLag.record(Math.max(0, lag), TimeUnit.NANOSECONDS);
+    }
+
+    //this will count one received message dropped before it reached the listener
+    public void rejected() {
+        rejected.increment();
+    }
+
+    //this will replace the rate gauges with the counts of the window that just ended
+    private void publishRates() {
+        double seconds = properties.getRateWindow().toMillis() / 1000.0;
+        List<Map.Entry<String, Long>> top = sketch.top(properties.getTopRooms());
+        sketch.clear();
+        List<MultiGauge.Row<?>> rows = new ArrayList<>(top.size());
+        for (Map.Entry<String, Long> room : top) {
+            rows.add(MultiGauge.Row.of(Tags.of("room", room.getKey()), room.getValue() / seconds));
+        }
+        roomRates.register(rows, true);
+    }
+}
@@ -1,15 +1,41 @@
 package com.freightfox.chatapp.RedisMessage;
 
+import com.freightfox.chatapp.Delivery.RoomSessionRegistry;
+import com.freightfox.chatapp.Repository.MessageCodecs;
+import com.freightfox.chatapp.Repository.RecentMessageCache;
+import com.freightfox.chatapp.Repository.RoomKeys;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class RedisMessageSubscriber implements MessageListener {
+    private final RoomSessionRegistry sessions;
+    private final RecentMessageCache recentMessages;
+    private final MessageCodecs codecs;
+    private final PubSubMetrics metrics;
+
+    //this will push the published message to every client of the room connected to this node
     @Override
     public void onMessage(Message message, byte[] pattern ){
-        log.info("Real-time message received: {}",new String (message.getBody()));
+        String roomId = RoomKeys.roomIdOfChannel(new String(message.getChannel(), StandardCharsets.UTF_8));
+        if (roomId == null) return;
+        log.debug("Real-time message received for room {}", roomId);
+        dispatch(roomId, message.getBody());
+    }
+
+    //this will hand a new message of the room to the recent message cache and the local clients,
+    //a binary payload is turned into json once here rather than per client
+    public void dispatch(String roomId, byte[] payload) {
+        byte[] json = codecs.toJson(0, payload).json();
+        metrics.received(roomId, json);
+        recentMessages.append(roomId, json);
+        sessions.deliver(roomId, json);
     }
 }
@@ -0,0 +1,29 @@
+package com.freightfox.chatapp.RedisMessage;
+
+import com.freightfox.chatapp.Repository.RecentMessageCache;
+import com.freightfox.chatapp.Repository.RoomMetadataCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+//every node drops what it cached about a room when any node announces a change on chatapp:control
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RoomCacheInvalidationListener implements MessageListener {
+    private final RoomMetadataCache cache;
+    private final RecentMessageCache recentMessages;
+
+    //the message body is the id of the room that changed
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String roomId = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.debug("Room {} changed, dropping cached metadata and messages", roomId);
+        cache.invalidate(roomId);
+        recentMessages.invalidate(roomId);
+    }
+}
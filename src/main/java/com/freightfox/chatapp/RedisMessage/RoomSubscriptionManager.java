@@ -0,0 +1,156 @@
+package com.freightfox.chatapp.RedisMessage;
+
+import com.freightfox.chatapp.Repository.RoomKeys;
+import com.freightfox.chatapp.config.PubSubProperties;
+import com.freightfox.chatapp.config.StorageProperties;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.adapter.MessageListenerAdapter;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+//reference counts local listeners per room so a node only subscribes to the channels it serves,
+//unsubscribing is delayed so clients reconnecting in a loop do not churn SUBSCRIBE/UNSUBSCRIBE,
+//with the stream engine the same counting decides which room streams StreamTailer reads
+@Component
+public class RoomSubscriptionManager implements SmartInitializingSingleton {
+    private final RedisMessageListenerContainer container;
+    private final ObjectProvider<MessageListenerAdapter> listener;
+    private final PubSubProperties properties;
+    private final StreamTailer tailer;
+    private final ShardedSubscriber sharded;
+    private final boolean streams;
+    private final Map<String, Subscription> subscriptions = new HashMap<>();
+    //not synchronized: acquire subscribes over the network and a virtual thread blocked inside a monitor pins its carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("pubsub-unsubscribe-"));
+
+    //the listener is looked up lazily because it delivers to the components that acquire rooms here
+    public RoomSubscriptionManager(RedisMessageListenerContainer container,
+                                   ObjectProvider<MessageListenerAdapter> listener,
+                                   PubSubProperties properties,
+                                   StreamTailer tailer,
+                                   ShardedSubscriber sharded,
+                                   StorageProperties storage) {
+        this.container = container;
+        this.listener = listener;
+        this.properties = properties;
+        this.tailer = tailer;
+        this.sharded = sharded;
+        this.streams = storage.getEngine() == StorageProperties.Engine.STREAM;
+    }
+
+    //this will subscribe pattern mode to every room channel once, after the context is built so that the
+    //listener and the sessions it delivers to exist
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!streams && properties.getMode() == PubSubProperties.Mode.PATTERN) {
+            container.addMessageListener(listener.getObject(), new PatternTopic("chatroom:*"));
+        }
+    }
+
+    //this will subscribe to the room channel when its first local listener appears
+    public void acquire(String roomId) {
+        if (!perRoom()) return;
+        lock.lock();
+        try {
+            Subscription subscription = subscriptions.get(roomId);
+            if (subscription == null) {
+                if (streams) {
+                    tailer.add(roomId);
+                } else if (shardedMode()) {
+                    sharded.subscribe(roomId);
+                } else {
+                    container.addMessageListener(listener.getObject(), topic(roomId));
+                }
+                subscriptions.put(roomId, new Subscription());
+                return;
+            }
+            subscription.references++;
+            if (subscription.pendingUnsubscribe != null) {
+                subscription.pendingUnsubscribe.cancel(false);
+                subscription.pendingUnsubscribe = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //this will schedule the unsubscribe once the room's last local listener is gone
+    public void release(String roomId) {
+        if (!perRoom()) return;
+        lock.lock();
+        try {
+            Subscription subscription = subscriptions.get(roomId);
+            if (subscription == null || --subscription.references > 0) return;
+            subscription.pendingUnsubscribe = scheduler.schedule(() -> unsubscribe(roomId, subscription),
+                    properties.getUnsubscribeDelay().toMillis(), TimeUnit.MILLISECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Set<String> subscribedRooms() {
+        lock.lock();
+        try {
+            return Set.copyOf(subscriptions.keySet());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void unsubscribe(String roomId, Subscription subscription) {
+        lock.lock();
+        try {
+            //a later acquire may have revived or replaced the subscription in the meantime
+            if (subscriptions.get(roomId) != subscription || subscription.references > 0) return;
+            subscriptions.remove(roomId);
+            if (streams) {
+                tailer.remove(roomId);
+            } else if (shardedMode()) {
+                sharded.unsubscribe(roomId);
+            } else {
+                container.removeMessageListener(listener.getObject(), topic(roomId));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //pattern mode subscribes once to chatroom:* and has nothing to count, streams are always tailed per room
+    private boolean perRoom() {
+        return streams || properties.getMode() != PubSubProperties.Mode.PATTERN;
+    }
+
+    private boolean shardedMode() {
+        return properties.getMode() == PubSubProperties.Mode.SHARDED;
+    }
+
+    private static ChannelTopic topic(String roomId) {
+        return new ChannelTopic(RoomKeys.channel(roomId));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private static class Subscription {
+        private int references = 1;
+        private ScheduledFuture<?> pendingUnsubscribe;
+    }
+}
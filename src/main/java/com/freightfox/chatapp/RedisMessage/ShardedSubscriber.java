@@ -0,0 +1,85 @@
+package com.freightfox.chatapp.RedisMessage;
+
+import com.freightfox.chatapp.Repository.RoomKeys;
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.pubsub.StatefulRedisClusterPubSubConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+//SSUBSCRIBE for the sharded pub/sub mode, the listener container only knows SUBSCRIBE and PSUBSCRIBE
+//so this holds a lettuce pub/sub connection of its own; on a cluster lettuce sends each SSUBSCRIBE
+//to the node owning the channel's slot, which is the node the room's send script SPUBLISHes on
+@Component
+public class ShardedSubscriber {
+    private final RedisConnectionFactory connectionFactory;
+    private final ThreadPoolTaskExecutor listenerExecutor;
+    private final ObjectProvider<RedisMessageSubscriber> subscriber;
+    private StatefulRedisPubSubConnection<byte[], byte[]> connection;
+
+    //the subscriber is looked up lazily because it delivers to the components that acquire rooms here
+    public ShardedSubscriber(RedisConnectionFactory connectionFactory, ThreadPoolTaskExecutor redisListenerExecutor,
+                             ObjectProvider<RedisMessageSubscriber> subscriber) {
+        this.connectionFactory = connectionFactory;
+        this.listenerExecutor = redisListenerExecutor;
+        this.subscriber = subscriber;
+    }
+
+    public void subscribe(String roomId) {
+        connection().async().ssubscribe(channel(roomId));
+    }
+
+    public void unsubscribe(String roomId) {
+        connection().async().sunsubscribe(channel(roomId));
+    }
+
+    //opened on the first subscribe so nodes in the other modes never connect
+    private synchronized StatefulRedisPubSubConnection<byte[], byte[]> connection() {
+        if (connection != null) return connection;
+        if (!(connectionFactory instanceof LettuceConnectionFactory lettuce)) {
+            throw new IllegalStateException("chatapp.pubsub.mode=sharded needs the lettuce driver");
+        }
+        AbstractRedisClient client = lettuce.getRequiredNativeClient();
+        if (client instanceof RedisClusterClient cluster) {
+            StatefulRedisClusterPubSubConnection<byte[], byte[]> clusterConnection = cluster.connectPubSub(ByteArrayCodec.INSTANCE);
+            //shard messages arrive on the per node connections, this surfaces them on the listener below
+            clusterConnection.setNodeMessagePropagation(true);
+            connection = clusterConnection;
+        } else {
+            connection = ((RedisClient) client).connectPubSub(ByteArrayCodec.INSTANCE);
+        }
+        connection.addListener(new RedisPubSubAdapter<>() {
+            @Override
+            public void smessage(byte[] channel, byte[] message) {
+                deliver(channel, message);
+            }
+        });
+        return connection;
+    }
+
+    //handed to the same single listener thread as the container's messages, the lettuce event loop must not block
+    private void deliver(byte[] channel, byte[] message) {
+        String roomId = RoomKeys.roomIdOfChannel(new String(channel, StandardCharsets.UTF_8));
+        if (roomId == null) return;
+        listenerExecutor.execute(() -> subscriber.getObject().dispatch(roomId, message));
+    }
+
+    private static byte[] channel(String roomId) {
+        return RoomKeys.channel(roomId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (connection != null) connection.close();
+    }
+}
@@ -0,0 +1,176 @@
+package com.freightfox.chatapp.RedisMessage;
+
+import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import com.freightfox.chatapp.Repository.MessageCodecs;
+import com.freightfox.chatapp.Repository.MessageStore;
+import com.freightfox.chatapp.config.StorageProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+//live delivery for the stream engine: one thread tails the streams of the rooms this node serves with XREAD BLOCK,
+//the offset of every room is tracked here so nothing published while the read was in flight is skipped
+@Slf4j
+@Component
+public class StreamTailer {
+    private static final byte[] MESSAGE_FIELD = "m".getBytes(StandardCharsets.UTF_8);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final MessageStore store;
+    private final MessageCodecs codecs;
+    private final StorageProperties properties;
+    private final ObjectProvider<RedisMessageSubscriber> subscriber;
+    private final Map<String, String> offsets = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private Thread reader;
+
+    //the subscriber is looked up lazily because its session registry acquires rooms through RoomSubscriptionManager,
+    //which uses this
+    public StreamTailer(RedisTemplate<String, Object> redisTemplate, MessageStore store, MessageCodecs codecs,
+                        StorageProperties properties, ObjectProvider<RedisMessageSubscriber> subscriber) {
+        this.redisTemplate = redisTemplate;
+        this.store = store;
+        this.codecs = codecs;
+        this.properties = properties;
+        this.subscriber = subscriber;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (properties.getEngine() != StorageProperties.Engine.STREAM) return;
+        //one XREAD covers the streams of many rooms, a cluster refuses that once they sit in different slots
+        if (ChatRoomRepository.isCluster(redisTemplate.getConnectionFactory())) {
+            throw new IllegalStateException("chatapp.storage.engine=stream is not supported on a redis cluster, use the list engine");
+        }
+        running = true;
+        reader = new Thread(this::tailLoop, "stream-tailer");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (reader == null) return;
+        running = false;
+        reader.interrupt();
+        reader.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    //this will start tailing the room from the current end of its stream,
+    //the lookup stays outside computeIfAbsent so no map lock is held during the round trip
+    public void add(String roomId) {
+        if (!offsets.containsKey(roomId)) offsets.putIfAbsent(roomId, lastEntryId(roomId));
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    public void remove(String roomId) {
+        offsets.remove(roomId);
+    }
+
+    public Set<String> tailedRooms() {
+        return Set.copyOf(offsets.keySet());
+    }
+
+    private String lastEntryId(String roomId) {
+        List<ByteRecord> last = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xRevRange(key(roomId), Range.unbounded(), Limit.limit().count(1)));
+        return last == null || last.isEmpty() ? "0-0" : last.get(0).getId().getValue();
+    }
+
+    //XREAD BLOCK needs a connection of its own, so one is held for as long as reads succeed
+    private void tailLoop() {
+        while (running) {
+            try {
+                redisTemplate.execute((RedisCallback<Void>) connection -> {
+                    while (running) {
+                        if (offsets.isEmpty()) {
+                            awaitRooms();
+                        } else {
+                            readOnce(connection);
+                        }
+                    }
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                if (!running) break;
+                log.warn("Tailing room streams failed, retrying", e);
+                awaitRooms();
+            }
+        }
+    }
+
+    private synchronized void awaitRooms() {
+        try {
+            wait(properties.getTailBlock().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readOnce(RedisConnection connection) {
+        Map<String, String> snapshot = new HashMap<>(offsets);
+        if (snapshot.isEmpty()) return;
+        Map<String, String> roomsByKey = new HashMap<>();
+        StreamOffset<byte[]>[] streams = new StreamOffset[snapshot.size()];
+        int i = 0;
+        for (Map.Entry<String, String> offset : snapshot.entrySet()) {
+            byte[] key = key(offset.getKey());
+            roomsByKey.put(new String(key, StandardCharsets.UTF_8), offset.getKey());
+            streams[i++] = StreamOffset.create(key, ReadOffset.from(offset.getValue()));
+        }
+        List<ByteRecord> records = connection.streamCommands().xRead(
+                StreamReadOptions.empty().count(properties.getTailBatch()).block(properties.getTailBlock()), streams);
+        if (records == null) return;
+        for (ByteRecord record : records) {
+            String roomId = roomsByKey.get(new String(record.getStream(), StandardCharsets.UTF_8));
+            String id = record.getId().getValue();
+            //a room released while the read was blocked stays released
+            if (roomId == null || offsets.computeIfPresent(roomId, (room, previous) -> id) == null) continue;
+            try {
+                subscriber.getObject().dispatch(roomId, payload(id, record));
+            } catch (IOException e) {
+                log.warn("Skipping unreadable entry {} of room {}", id, roomId, e);
+            }
+        }
+    }
+
+    //entries hold the same bytes PUBLISH sends with the list engine, json ones are passed on as is
+    private byte[] payload(String entryId, ByteRecord record) throws IOException {
+        for (Map.Entry<byte[], byte[]> field : record.getValue().entrySet()) {
+            if (Arrays.equals(field.getKey(), MESSAGE_FIELD)) {
+                long messageId = Long.parseLong(entryId.substring(entryId.indexOf('-') + 1));
+                return codecs.toJson(messageId, field.getValue()).json();
+            }
+        }
+        throw new IOException("entry has no message field");
+    }
+
+    private byte[] key(String roomId) {
+        return store.messagesKey(roomId).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,53 @@
+package com.freightfox.chatapp.RedisMessage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//space-saving heavy hitter sketch: at most capacity rooms are counted, a new room takes over the smallest counter
+//and inherits its count, so any room with more than total / capacity messages is guaranteed to be in it
+//and counts are off by at most the count they inherited
+public class TopRoomsSketch {
+    private final int capacity;
+    //room -> single element count, mutated in place
+    private final Map<String, long[]> counters = new HashMap<>();
+
+    public TopRoomsSketch(int capacity) {
+        this.capacity = capacity;
+    }
+
+    //finding the smallest counter is a scan, fine for a few hundred counters and rare once the top rooms are in
+    public synchronized void add(String roomId) {
+        long[] count = counters.get(roomId);
+        if (count != null) {
+            count[0]++;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(roomId, new long[]{1});
+            return;
+        }
+        Map.Entry<String, long[]> smallest = null;
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            if (smallest == null || entry.getValue()[0] < smallest.getValue()[0]) smallest = entry;
+        }
+        long inherited = smallest.getValue()[0];
+        counters.remove(smallest.getKey());
+        counters.put(roomId, new long[]{inherited + 1});
+    }
+
+    //the k rooms with the highest counts, highest first
+    public synchronized List<Map.Entry<String, Long>> top(int k) {
+        List<Map.Entry<String, Long>> rooms = new ArrayList<>(counters.size());
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            rooms.add(Map.entry(entry.getKey(), entry.getValue()[0]));
+        }
+        rooms.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return rooms.subList(0, Math.min(k, rooms.size()));
+    }
+
+    public synchronized void clear() {
+        counters.clear();
+    }
+}
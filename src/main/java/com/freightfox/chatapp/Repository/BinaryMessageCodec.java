@@ -0,0 +1,195 @@
+package com.freightfox.chatapp.Repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.freightfox.chatapp.DTO.ChatMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+//compact history entries: 0xC1, id, ':', epoch millis, ':', flags, then participant and message
+//as varint length prefixed utf-8; bodies from compressAbove bytes on are deflated when that makes them smaller.
+//id and timestamp are ascii digits so the lua scripts can put the id in and read the age without a decoder,
+//0xC1 never starts json or any utf-8 text so old entries are told apart by their first byte
+public class BinaryMessageCodec implements MessageCodec {
+    static final byte MAGIC = (byte) 0xC1;
+    private static final int DEFLATED = 1;
+
+    private final int compressAbove;
+
+    //compressAbove of 0 or less turns compression off
+    public BinaryMessageCodec(int compressAbove) {
+        this.compressAbove = compressAbove;
+    }
+
+    @Override
+    public byte[] encode(ChatMessage message) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        writeString(body, message.getParticipant());
+        writeString(body, message.getMessage());
+        int flags = 0;
+        byte[] payload = body.toByteArray();
+        if (compressAbove > 0 && payload.length >= compressAbove) {
+            byte[] deflated = deflate(payload);
+            if (deflated.length < payload.length) {
+                payload = deflated;
+                flags |= DEFLATED;
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length + 20);
+        out.write(MAGIC);
+        out.write(':');
+        if (message.getTimestamp() != null) {
+            out.writeBytes(String.valueOf(message.getTimestamp().toEpochMilli()).getBytes(StandardCharsets.US_ASCII));
+        }
+        out.write(':');
+        out.write(flags);
+        out.writeBytes(payload);
+        return out.toByteArray();
+    }
+
+    @Override
+    public boolean canRead(byte[] entry) {
+        return entry.length > 0 && entry[0] == MAGIC;
+    }
+
+    @Override
+    public RawMessage toJson(long id, byte[] entry) {
+        ChatMessage message = decode(entry);
+        if (message.getId() == null && id > 0) message.setId(id);
+        try {
+            byte[] json = MessageEncoding.MAPPER.writeValueAsBytes(message);
+            return new RawMessage(message.getId() != null ? message.getId() : 0, json);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public ChatMessage decode(byte[] entry) {
+        Reader reader = new Reader(entry, 1);
+        long id = reader.digits();
+        reader.expect(':');
+        int timestampStart = reader.position;
+        long timestamp = reader.digits();
+        boolean hasTimestamp = reader.position > timestampStart;
+        reader.expect(':');
+        int flags = reader.next();
+        if ((flags & DEFLATED) != 0) {
+            reader = new Reader(inflate(entry, reader.position), 0);
+        }
+        ChatMessage message = new ChatMessage();
+        message.setId(id > 0 ? id : null);
+        message.setParticipant(reader.string());
+        message.setMessage(reader.string());
+        message.setTimestamp(hasTimestamp ? Instant.ofEpochMilli(timestamp) : null);
+        return message;
+    }
+
+    //length + 1 so that 0 can stand for null
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length + 1);
+        out.writeBytes(bytes);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    //the uncompressed length goes first so inflating needs a single exact allocation
+    private static byte[] deflate(byte[] payload) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(payload);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length);
+            writeVarint(out, payload.length);
+            byte[] buffer = new byte[Math.max(64, payload.length)];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] entry, int offset) {
+        Reader reader = new Reader(entry, offset);
+        byte[] payload = new byte[reader.varint()];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(entry, reader.position, entry.length - reader.position);
+            int length = 0;
+            while (length < payload.length && !inflater.finished()) {
+                int inflated = inflater.inflate(payload, length, payload.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                length += inflated;
+            }
+            if (length != payload.length) throw new IllegalArgumentException("truncated message entry");
+            return payload;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("corrupt message entry", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        private Reader(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        private int next() {
+            if (position >= bytes.length) throw new IllegalArgumentException("truncated message entry");
+            return bytes[position++] & 0xFF;
+        }
+
+        private void expect(char c) {
+            if (next() != c) throw new IllegalArgumentException("malformed message entry");
+        }
+
+        private long digits() {
+            long value = 0;
+            while (position < bytes.length && bytes[position] >= '0' && bytes[position] <= '9') {
+                value = value * 10 + (bytes[position++] - '0');
+            }
+            return value;
+        }
+
+        private int varint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = next();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IllegalArgumentException("malformed message entry");
+        }
+
+        private String string() {
+            int length = varint();
+            if (length == 0) return null;
+            length--;
+            if (length > bytes.length - position) throw new IllegalArgumentException("truncated message entry");
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
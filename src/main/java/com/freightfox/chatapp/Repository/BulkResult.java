@@ -0,0 +1,11 @@
+package com.freightfox.chatapp.Repository;
+
+//outcome of one item of a bulk create or join
+public enum BulkResult {
+    CREATED,
+    EXISTS,
+    JOINED,
+    ALREADY_JOINED,
+    ROOM_NOT_FOUND,
+    INVALID
+}
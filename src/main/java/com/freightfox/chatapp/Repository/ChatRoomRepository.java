@@ -1,68 +1,1038 @@
 package com.freightfox.chatapp.Repository;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import com.freightfox.chatapp.Archive.MessageArchive;
 import com.freightfox.chatapp.DTO.ChatMessage;
-import lombok.RequiredArgsConstructor;
+import com.freightfox.chatapp.ExceptionHandler.NotRoomMemberException;
+import com.freightfox.chatapp.Outbox.OutboxEntry;
+import com.freightfox.chatapp.RateLimit.RedisCircuitBreaker;
+import com.freightfox.chatapp.config.BulkProperties;
+import com.freightfox.chatapp.config.HistoryProperties;
+import com.freightfox.chatapp.config.PubSubProperties;
+import com.freightfox.chatapp.config.RetentionProperties;
+import com.freightfox.chatapp.config.SearchProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Repository;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Repository
-@RequiredArgsConstructor
 public class ChatRoomRepository {
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SCAN_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/scan.lua"), List.class);
+    private static final RedisScript<Long> CREATE_ROOM_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/create_room.lua"), Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> JOIN_ROOM_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/join_room.lua"), List.class);
+    private static final RedisScript<Long> LEAVE_ROOM_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/leave_room.lua"), Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SSCAN_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/sscan.lua"), List.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SEARCH_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/search.lua"), List.class);
+    private static final RedisScript<Long> SEARCH_INDEX_SCRIPT =
+            LuaScripts.of("scripts/search_index.lua", Long.class, LuaScripts.INDEX);
+    private static final RedisScript<Long> SEARCH_PRUNE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/search_prune.lua"), Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> MARK_READ_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/mark_read.lua"), List.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ROOM_SUMMARY_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/room_summary.lua"), List.class);
+    private static final RedisScript<Long> RELEASE_LOCK_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/release_lock.lua"), Long.class);
+    //send script answer for a sender who is not a participant
+    private static final long NOT_A_MEMBER = -2;
+
     private final RedisTemplate<String, Object> redisTemplate;
-    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final MessageStore store;
+    private final MessageCodecs codecs;
+    private final RoomMetadataCache roomCache;
+    private final RecentMessageCache recentMessages;
+    private final MembershipFilter membership;
+    private final SearchIndex search;
+    private final SearchProperties searchProperties;
+    private final MessageArchive archive;
+    private final RetentionProperties retention;
+    private final HistoryProperties history;
+    private final BulkProperties bulk;
+    private final byte[] publishCommand;
+    private final RedisCircuitBreaker breaker;
+    private final MeterRegistry registry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Counter cappedBytes;
+    private final DistributionSummary redisPayload;
+    private final DistributionSummary cachedPayload;
+    private final DistributionSummary archivePayload;
+
+    public ChatRoomRepository(RedisTemplate<String, Object> redisTemplate, MessageStore store, MessageCodecs codecs,
+                              RoomMetadataCache roomCache, RecentMessageCache recentMessages,
+                              MembershipFilter membership, SearchIndex search, SearchProperties searchProperties,
+                              MessageArchive archive, RetentionProperties retention, HistoryProperties history, BulkProperties bulk,
+                              PubSubProperties pubSub, RedisCircuitBreaker breaker, MeterRegistry registry) {
+        this.redisTemplate = redisTemplate;
+        this.store = store;
+        this.codecs = codecs;
+        this.roomCache = roomCache;
+        this.recentMessages = recentMessages;
+        this.membership = membership;
+        this.search = search;
+        this.searchProperties = searchProperties;
+        this.archive = archive;
+        this.retention = retention;
+        this.history = history;
+        this.bulk = bulk;
+        this.publishCommand = RedisSerializer.string().serialize(
+                pubSub.getMode() == PubSubProperties.Mode.SHARDED ? "SPUBLISH" : "PUBLISH");
+        this.breaker = breaker;
+        this.registry = registry;
+        this.cappedBytes = reclaimedCounter(registry, "max-messages");
+        this.redisPayload = historyPayloadSummary(registry, "redis");
+        this.cachedPayload = historyPayloadSummary(registry, "cache");
+        this.archivePayload = historyPayloadSummary(registry, "archive");
+    }
 
-    //this will create the room in redis
+    //this will create the room in redis along with its retention limits, false when it already exists;
+    //check, write and announcement are one script call so concurrent creates of one room cannot both succeed
     public boolean createRoom(String roomId) {
-        String key = "chatroom:meta:" + roomId;
-        if (Boolean.TRUE.equals(redisTemplate.hasKey(key))) return false;
-        redisTemplate.opsForHash().put(key, "createdAt", System.currentTimeMillis());
+        Long created = call("createRoom", () -> redisTemplate.execute(CREATE_ROOM_SCRIPT,
+                RedisSerializer.byteArray(),
+                new GenericToStringSerializer<>(Long.class),
+                List.of(RoomKeys.meta(roomId)),
+                (Object[]) createArgs(roomId)));
+        if (created == null || created == 0) return false;
+        forgetLocally(roomId);
         return true;
     }
 
-    //this will add participant to chatroom when he joins
+    //this will create many rooms with one script call each, batchSize calls per pipeline
+    public Map<String, BulkResult> createRooms(List<String> roomIds) {
+        List<String> rooms = distinct(roomIds);
+        List<Object> results = call("createRooms", () -> pipelineScript(CREATE_ROOM_SCRIPT, ReturnType.INTEGER,
+                rooms, roomId -> List.of(RoomKeys.meta(roomId)), this::createArgs));
+        Map<String, BulkResult> created = new LinkedHashMap<>();
+        for (int i = 0; i < rooms.size(); i++) {
+            boolean isNew = ((Long) results.get(i)) == 1;
+            if (isNew) forgetLocally(rooms.get(i));
+            created.put(rooms.get(i), isNew ? BulkResult.CREATED : BulkResult.EXISTS);
+        }
+        return created;
+    }
+
+    private byte[][] createArgs(String roomId) {
+        return new byte[][]{
+                RedisSerializer.string().serialize(RoomMetadataCache.CONTROL_CHANNEL),
+                RedisSerializer.string().serialize(roomId),
+                RedisSerializer.string().serialize(String.valueOf(System.currentTimeMillis())),
+                RedisSerializer.string().serialize(String.valueOf(retention.getMaxMessages())),
+                RedisSerializer.string().serialize(String.valueOf(retention.getMaxAge().toMillis()))};
+    }
+
+    //this will override the retention limits of one room, null leaves a limit unchanged
+    public void updateRetention(String roomId, Long maxMessages, Long maxAgeMs) {
+        Map<String, Object> fields = new HashMap<>();
+        if (maxMessages != null) fields.put("maxMessages", maxMessages);
+        if (maxAgeMs != null) fields.put("maxAgeMs", maxAgeMs);
+        if (fields.isEmpty()) return;
+        call("updateRetention", () -> {
+            redisTemplate.opsForHash().putAll(RoomKeys.meta(roomId), fields);
+            announceChange(roomId);
+        });
+    }
+
+    //this will add participant to chatroom when he joins, the join is announced for the membership filters
+    @SuppressWarnings({"unchecked", "rawtypes"})
     public void addParticipant(String roomId, String participant) {
-        redisTemplate.opsForSet().add("chatroom:participants:" + roomId, participant);
+        List<?> joined = call("addParticipant", () -> redisTemplate.execute(JOIN_ROOM_SCRIPT,
+                RedisSerializer.byteArray(),
+                (RedisSerializer) RedisSerializer.byteArray(),
+                membershipKeys(roomId),
+                (Object[]) joinArgs(roomId, List.of(participant))));
+        if (joined == null) return;
+        indexRooms(participant, List.of(roomId));
+        //this node's filter learns about it right away, the announcement can arrive after the next send
+        membership.joined(roomId, participant);
+    }
+
+    //this will remove participant from chatroom, false when he was not in it or the room does not exist
+    public boolean removeParticipant(String roomId, String participant) {
+        Long removed = call("removeParticipant", () -> redisTemplate.execute(LEAVE_ROOM_SCRIPT,
+                RedisSerializer.byteArray(),
+                new GenericToStringSerializer<>(Long.class),
+                membershipKeys(roomId),
+                (Object[]) joinArgs(roomId, List.of(participant))));
+        if (removed == null || removed != 1) return false;
+        call("unindexRoom", () -> redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.setCommands().sRem(RedisSerializer.string().serialize(RoomKeys.participantRooms(participant)),
+                        RedisSerializer.string().serialize(roomId))));
+        membership.left(roomId);
+        return true;
+    }
+
+    //this will fetch one SSCAN page of the room's participants, "0" as next cursor means the listing is complete;
+    //a participant present for the whole listing is returned at least once, one that joins or leaves meanwhile may not be
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ParticipantPage getParticipants(String roomId, String cursor, int count) {
+        List<?> result = call("getParticipants", () -> redisTemplate.execute(SSCAN_SCRIPT,
+                RedisSerializer.string(),
+                (RedisSerializer) RedisSerializer.byteArray(),
+                List.of(RoomKeys.participants(roomId)),
+                cursor, String.valueOf(count)));
+        List<String> participants = new ArrayList<>();
+        for (Object member : (List<?>) result.get(1)) {
+            participants.add(String.valueOf(redisTemplate.getValueSerializer().deserialize((byte[]) member)));
+        }
+        return new ParticipantPage(new String((byte[]) result.get(0), StandardCharsets.UTF_8), participants);
+    }
+
+    public record ParticipantPage(String cursor, List<String> participants) {
+    }
+
+    //this will add many participants to one room, batchSize participants per script call; participants of a call
+    //that found no room are reported as ROOM_NOT_FOUND, so a room deleted part way keeps the joins made before
+    public Map<String, BulkResult> addParticipants(String roomId, List<String> participants) {
+        List<List<String>> chunks = chunks(distinct(participants), bulk.getBatchSize());
+        List<Object> results = call("addParticipants", () -> pipelineScript(JOIN_ROOM_SCRIPT, ReturnType.MULTI,
+                chunks, chunk -> membershipKeys(roomId),
+                chunk -> joinArgs(roomId, chunk)));
+        Map<String, BulkResult> joined = new LinkedHashMap<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            if (!(results.get(i) instanceof List<?> added)) {
+                chunks.get(i).forEach(participant -> joined.put(participant, BulkResult.ROOM_NOT_FOUND));
+                continue;
+            }
+            for (int j = 0; j < added.size(); j++) {
+                String participant = chunks.get(i).get(j);
+                joined.put(participant, joinResult((Long) added.get(j)));
+                membership.joined(roomId, participant);
+            }
+        }
+        indexParticipants(roomId, joined.entrySet().stream()
+                .filter(e -> e.getValue() != BulkResult.ROOM_NOT_FOUND).map(Map.Entry::getKey).toList());
+        return joined;
+    }
+
+    //this will add one participant to many rooms with one script call per room
+    public Map<String, BulkResult> joinRooms(String participant, List<String> roomIds) {
+        List<String> rooms = distinct(roomIds);
+        List<String> participants = List.of(participant);
+        List<Object> results = call("joinRooms", () -> pipelineScript(JOIN_ROOM_SCRIPT, ReturnType.MULTI,
+                rooms, this::membershipKeys,
+                roomId -> joinArgs(roomId, participants)));
+        Map<String, BulkResult> joined = new LinkedHashMap<>();
+        for (int i = 0; i < rooms.size(); i++) {
+            if (results.get(i) instanceof List<?> added) {
+                joined.put(rooms.get(i), joinResult((Long) added.get(0)));
+                membership.joined(rooms.get(i), participant);
+            } else {
+                joined.put(rooms.get(i), BulkResult.ROOM_NOT_FOUND);
+            }
+        }
+        indexRooms(participant, joined.entrySet().stream()
+                .filter(entry -> entry.getValue() != BulkResult.ROOM_NOT_FOUND).map(Map.Entry::getKey).toList());
+        return joined;
+    }
+
+    private List<String> membershipKeys(String roomId) {
+        return List.of(RoomKeys.meta(roomId), RoomKeys.participants(roomId), RoomKeys.reads(roomId));
+    }
+
+    //the reverse index is written after the membership scripts succeeded, see RoomKeys.participantRooms;
+    //it can only miss a room when a node dies in between, and the summary drops rooms it no longer belongs to
+    private void indexRooms(String participant, List<String> roomIds) {
+        if (roomIds.isEmpty()) return;
+        byte[][] members = roomIds.stream().map(RedisSerializer.string()::serialize).toArray(byte[][]::new);
+        call("indexRooms", () -> redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.setCommands().sAdd(RedisSerializer.string().serialize(RoomKeys.participantRooms(participant)),
+                        members)));
+    }
+
+    //the same for many participants of one room, one SADD per participant in a single pipeline
+    public void indexParticipants(String roomId, Collection<String> participants) {
+        if (participants.isEmpty()) return;
+        byte[] room = RedisSerializer.string().serialize(roomId);
+        call("indexParticipants", () -> redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String participant : participants) {
+                connection.setCommands().sAdd(RedisSerializer.string().serialize(RoomKeys.participantRooms(participant)),
+                        room);
+            }
+            return null;
+        }));
+    }
+
+    //this will give participants without a read cursor one at the room's newest message, as joining does
+    public void initReadCursors(String roomId, Collection<String> participants) {
+        if (participants.isEmpty()) return;
+        byte[] reads = RedisSerializer.string().serialize(RoomKeys.reads(roomId));
+        byte[] newest = RedisSerializer.string().serialize(String.valueOf(newestId(roomId)));
+        call("initReadCursors", () -> redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String participant : participants) {
+                connection.hashCommands().hSetNX(reads, valueBytes(participant), newest);
+            }
+            return null;
+        }));
+    }
+
+    //events channel and room id for the announcement, then the participants in the template's value encoding,
+    //the bytes every participant set member has always been stored as
+    private byte[][] joinArgs(String roomId, List<String> participants) {
+        byte[][] args = new byte[2 + participants.size()][];
+        args[0] = RedisSerializer.string().serialize(MembershipFilter.EVENTS_CHANNEL);
+        args[1] = RedisSerializer.string().serialize(roomId);
+        for (int i = 0; i < participants.size(); i++) {
+            args[2 + i] = valueBytes(participants.get(i));
+        }
+        return args;
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] valueBytes(Object value) {
+        return ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(value);
+    }
+
+    private static BulkResult joinResult(Long added) {
+        return added == 1 ? BulkResult.JOINED : BulkResult.ALREADY_JOINED;
+    }
+
+    private List<String> distinct(List<String> items) {
+        List<String> unique = items.stream().distinct().toList();
+        if (unique.size() > bulk.getMaxItems()) {
+            throw new IllegalArgumentException("At most " + bulk.getMaxItems() + " items per request");
+        }
+        return unique;
+    }
+
+    private static <T> List<List<T>> chunks(List<T> items, int size) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += size) {
+            chunks.add(items.subList(from, Math.min(items.size(), from + size)));
+        }
+        return chunks;
     }
 
-    //this will save the message in realtime in redis when published
-    public void saveMessage(String roomId, ChatMessage message) {
+    //this will check the room, store the message, publish it and apply the room's message cap in one round trip
+    //returns false when the room does not exist, nothing is written in that case
+    public boolean sendMessage(String roomId, ChatMessage message) {
+        if (roomCache.isKnownMissing(roomId)) return false;
+        checkMembership(roomId, message.getParticipant());
+        byte[][] args = sendArgs(roomId, List.of(message), null, null);
+        Long reclaimed = call("sendMessage", () -> redisTemplate.execute(store.sendScript(),
+                RedisSerializer.byteArray(),
+                new GenericToStringSerializer<>(Long.class),
+                sendKeys(roomId),
+                args));
+        recentMessages.markStale(roomId);
+        if (reclaimed != null && reclaimed == NOT_A_MEMBER) throw notAMember();
+        return recordSend(reclaimed);
+    }
+
+    //when membership is enforced this refuses a sender the local filter knows is not in the room,
+    //without a round trip; senders it cannot rule out are checked again by the send script
+    public void checkMembership(String roomId, String participant) {
+        if (membership.isEnabled() && !membership.mightBeMember(roomId, participant)) throw notAMember();
+    }
+
+    private static NotRoomMemberException notAMember() {
+        return new NotRoomMemberException("Participant has not joined the room");
+    }
+
+    //this will send batches for several rooms as one pipeline, one script call per room
+    //the result tells per room whether it existed and its messages were stored;
+    //a room where one of the senders is not a participant stores nothing and is left out of the result
+    public Map<String, Boolean> sendMessages(Map<String, List<ChatMessage>> messagesByRoom) {
+        Map<String, Boolean> sent = new LinkedHashMap<>();
+        List<String> rooms = new ArrayList<>();
+        for (String roomId : messagesByRoom.keySet()) {
+            if (roomCache.isKnownMissing(roomId)) {
+                sent.put(roomId, false);
+            } else {
+                rooms.add(roomId);
+            }
+        }
+        if (rooms.isEmpty()) return sent;
+        List<Object> results = new ArrayList<>(rooms.size());
         try {
-            String msgJson = objectMapper.writeValueAsString(message);
-            redisTemplate.opsForList().rightPush("chatroom:messages:" + roomId, msgJson);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
+            call("sendMessages", () -> pipelineScript(store.sendScript(), ReturnType.INTEGER,
+                    rooms, this::sendKeys, roomId -> sendArgs(roomId, messagesByRoom.get(roomId), null, null), results));
+        } catch (RuntimeException e) {
+            if (results.isEmpty()) throw e;
+            //the pipelines before the failing one and the calls redis answered in it are stored all the same,
+            //only the rooms left without an answer fail so their senders do not retry what is already stored
+            Set<String> failed = new LinkedHashSet<>();
+            for (int i = 0; i < rooms.size(); i++) {
+                if (i >= results.size() || results.get(i) instanceof Throwable) failed.add(rooms.get(i));
+            }
+            collectSent(rooms, results, sent);
+            throw new PartialSendException(sent, failed, e);
+        }
+        collectSent(rooms, results, sent);
+        return sent;
+    }
+
+    private void collectSent(List<String> rooms, List<Object> results, Map<String, Boolean> sent) {
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) instanceof Throwable) continue;
+            Long reclaimed = (Long) results.get(i);
+            if (reclaimed != null && reclaimed == NOT_A_MEMBER) continue;
+            recentMessages.markStale(rooms.get(i));
+            sent.put(rooms.get(i), recordSend(reclaimed));
+        }
+    }
+
+    //thrown by sendMessages when a pipeline failed after redis already answered for some rooms: sent holds those
+    //as sendMessages would have returned them, failed the rooms whose messages may or may not be stored
+    public static class PartialSendException extends RuntimeException {
+        private final Map<String, Boolean> sent;
+        private final Set<String> failed;
+
+        public PartialSendException(Map<String, Boolean> sent, Set<String> failed, RuntimeException cause) {
+            super(cause.getMessage(), cause);
+            this.sent = sent;
+            this.failed = failed;
+        }
+
+        public Map<String, Boolean> sent() {
+            return sent;
+        }
+
+        public Set<String> failed() {
+            return failed;
+        }
+    }
+
+    //this will write messages taken from a node's outbox, one script call per list, all lists of one room in outbox order;
+    //the scripts remember per room the highest outbox sequence stored from producer and skip anything up to it,
+    //so lists that are sent again after a crash or a lost reply are not stored twice
+    //returns per list what the send script answered: -1 missing room, -2 a sender is not a participant, otherwise stored
+    public List<Long> sendFromOutbox(String producer, List<List<OutboxEntry>> batches) {
+        List<Object> results = call("sendFromOutbox", () -> pipelineScript(store.sendScript(), ReturnType.INTEGER,
+                batches, batch -> sendKeys(batch.get(0).roomId()), batch -> outboxArgs(producer, batch)));
+        List<Long> answers = new ArrayList<>(batches.size());
+        for (int i = 0; i < batches.size(); i++) {
+            Long reclaimed = (Long) results.get(i);
+            String roomId = batches.get(i).get(0).roomId();
+            if (recordSend(reclaimed)) recentMessages.markStale(roomId);
+            answers.add(reclaimed == null ? -1 : reclaimed);
+        }
+        return answers;
+    }
+
+    private byte[][] outboxArgs(String producer, List<OutboxEntry> batch) {
+        List<ChatMessage> messages = new ArrayList<>(batch.size());
+        long[] outboxSeqs = new long[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            messages.add(batch.get(i).message());
+            outboxSeqs[i] = batch.get(i).seq();
         }
+        return sendArgs(batch.get(0).roomId(), messages, producer, outboxSeqs);
+    }
+
+    //true when the room is cached as missing, answered without redis
+    public boolean isKnownMissing(String roomId) {
+        return roomCache.isKnownMissing(roomId);
     }
 
+    //the send script answers -1 for a missing room, -2 for a sender who is not a participant, otherwise the bytes it trimmed off the head
+    private boolean recordSend(Long reclaimed) {
+        if (reclaimed == null || reclaimed < 0) return false;
+        if (reclaimed > 0) cappedBytes.increment(reclaimed);
+        return true;
+    }
+
+    //one script call per item, batchSize calls per pipeline, results in item order
+    private <T> List<Object> pipelineScript(RedisScript<?> script, ReturnType returnType, List<T> items,
+                                            Function<T, List<String>> keys, Function<T, byte[][]> args) {
+        List<Object> results = new ArrayList<>(items.size());
+        pipelineScript(script, returnType, items, keys, args, results);
+        return results;
+    }
 
-    //this will extract history chats as per limit
-    public List<ChatMessage> getLastMessages(String roomId, int limit) {
-        List<Object> list = redisTemplate.opsForList().range("chatroom:messages:" + roomId, -limit, -1);
-        assert list != null;
-        return list.stream().map(obj -> {
+    //adds to results as each pipeline answers; when one fails the answers redis gave in it are added before the
+    //exception is thrown, with the exception in place of every call that failed, and later pipelines are not sent
+    private <T> void pipelineScript(RedisScript<?> script, ReturnType returnType, List<T> items,
+                                    Function<T, List<String>> keys, Function<T, byte[][]> args, List<Object> results) {
+        for (List<T> batch : chunks(items, bulk.getBatchSize())) {
             try {
-                return objectMapper.readValue(obj.toString(), ChatMessage.class);
-            } catch (JsonProcessingException e) {
-                throw new RuntimeException(e);
+                results.addAll(pipelineEvalSha(script, returnType, batch, keys, args));
+            } catch (RedisPipelineException e) {
+                //redis lost the script cache (restart or SCRIPT FLUSH), none of the calls ran, load it and replay once
+                if (!isNoScript(e)) {
+                    if (e.getPipelineResult().size() == batch.size()) results.addAll(e.getPipelineResult());
+                    throw e;
+                }
+                redisTemplate.execute((RedisCallback<String>) connection ->
+                        connection.scriptingCommands().scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8)));
+                results.addAll(pipelineEvalSha(script, returnType, batch, keys, args));
+            }
+        }
+    }
+
+    private <T> List<Object> pipelineEvalSha(RedisScript<?> script, ReturnType returnType, List<T> items,
+                                             Function<T, List<String>> keys, Function<T, byte[][]> args) {
+        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (T item : items) {
+                List<String> itemKeys = keys.apply(item);
+                byte[][] itemArgs = args.apply(item);
+                byte[][] keysAndArgs = new byte[itemKeys.size() + itemArgs.length][];
+                for (int i = 0; i < itemKeys.size(); i++) {
+                    keysAndArgs[i] = RedisSerializer.string().serialize(itemKeys.get(i));
+                }
+                System.arraycopy(itemArgs, 0, keysAndArgs, itemKeys.size(), itemArgs.length);
+                connection.scriptingCommands().evalSha(script.getSha1(), returnType, itemKeys.size(), keysAndArgs);
+            }
+            return null;
+        });
+    }
+
+    private List<String> sendKeys(String roomId) {
+        return List.of(RoomKeys.meta(roomId), store.messagesKey(roomId), RoomKeys.participants(roomId));
+    }
+
+    //channel, publish command and default cap first, then the senders the script must find in the participant set
+    //(none unless membership is enforced), then every message encoded once, the script stores and publishes these bytes;
+    //with search on the index prefix is set and the search doc of every message follows;
+    //messages from an outbox name the room's outbox hash and the producer and end with the outbox sequence of every message
+    private byte[][] sendArgs(String roomId, List<ChatMessage> messages, String producer, long[] outboxSeqs) {
+        List<String> senders = new ArrayList<>();
+        if (membership.isEnabled()) {
+            for (ChatMessage message : messages) {
+                if (!senders.contains(message.getParticipant())) senders.add(message.getParticipant());
+            }
+        }
+        boolean indexed = search.isEnabled();
+        int perMessage = 1 + (indexed ? 1 : 0) + (outboxSeqs != null ? 1 : 0);
+        byte[][] args = new byte[7 + senders.size() + messages.size() * perMessage][];
+        args[0] = RedisSerializer.string().serialize(RoomKeys.channel(roomId));
+        args[1] = publishCommand;
+        args[2] = RedisSerializer.string().serialize(String.valueOf(retention.getMaxMessages()));
+        args[3] = RedisSerializer.string().serialize(String.valueOf(senders.size()));
+        args[4] = RedisSerializer.string().serialize(indexed ? RoomKeys.search(roomId) : "");
+        args[5] = RedisSerializer.string().serialize(outboxSeqs != null ? RoomKeys.outbox(roomId) : "");
+        args[6] = RedisSerializer.string().serialize(outboxSeqs != null ? producer : "");
+        int i = 7;
+        for (String sender : senders) {
+            args[i++] = valueBytes(sender);
+        }
+        for (ChatMessage message : messages) {
+            args[i++] = codecs.encode(message);
+        }
+        if (indexed) {
+            for (ChatMessage message : messages) {
+                args[i++] = search.doc(message.getParticipant(), message.getMessage());
+            }
+        }
+        if (outboxSeqs != null) {
+            for (long outboxSeq : outboxSeqs) {
+                args[i++] = RedisSerializer.string().serialize(String.valueOf(outboxSeq));
+            }
+        }
+        return args;
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) return true;
+        }
+        return false;
+    }
+
+    //this will extract history chats as per limit, small reads are answered by this node's recent message cache
+    public List<RawMessage> getLastMessages(String roomId, int limit) {
+        return call("getLastMessages", () ->
+                withArchivedBefore(roomId, lastMessages(roomId, limit), Long.MAX_VALUE, limit));
+    }
+
+    //the ring never answers more than one history page, the same as redis would
+    private List<RawMessage> lastMessages(String roomId, int limit) {
+        int pageSize = Math.min(limit, history.getMaxPageSize());
+        List<RawMessage> cached = recentMessages.lastMessages(roomId, pageSize, this::currentSeq);
+        if (cached != null) {
+            cachedPayload.record(payloadBytes(cached));
+            return cached;
+        }
+        if (!recentMessages.covers(pageSize)) return readHistory(roomId, "last", 0, limit);
+        long version = recentMessages.version(roomId);
+        int seedSize = Math.min(recentMessages.messagesPerRoom(), history.getMaxPageSize());
+        List<RawMessage> recent = readHistory(roomId, "last", 0, seedSize);
+        recentMessages.seed(roomId, recent, recent.size() < seedSize, maxMessages(roomId), version);
+        return recent.subList(Math.max(0, recent.size() - pageSize), recent.size());
+    }
+
+    //the room's own limit, rooms created before it was stored in meta use the default
+    private long maxMessages(String roomId) {
+        RoomMeta meta = roomMeta(roomId).orElse(null);
+        return meta != null && meta.maxMessages() != null ? meta.maxMessages() : retention.getMaxMessages();
+    }
+
+    //id of the newest message ever sent to the room, null before the first one;
+    //callers run it inside call(), the ring asks for it from within getLastMessages
+    private Long currentSeq(String roomId) {
+        Object seq = redisTemplate.opsForHash().get(RoomKeys.meta(roomId), "seq");
+        return seq instanceof Number number ? number.longValue() : null;
+    }
+
+    //this will page backwards: up to limit messages with an id lower than beforeId
+    public List<RawMessage> getMessagesBefore(String roomId, long beforeId, int limit) {
+        return call("getMessagesBefore", () ->
+                withArchivedBefore(roomId, readHistory(roomId, "before", beforeId, limit), beforeId, limit));
+    }
+
+    //this will page forwards: up to limit messages with an id higher than afterId
+    public List<RawMessage> getMessagesAfter(String roomId, long afterId, int limit) {
+        return call("getMessagesAfter", () -> readAfter(roomId, afterId, limit));
+    }
+
+    //archived history sits below everything redis holds, so a page redis could not fill goes on in the archive
+    private List<RawMessage> withArchivedBefore(String roomId, List<RawMessage> page, long beforeId, int limit) {
+        int pageSize = Math.min(limit, history.getMaxPageSize());
+        if (page.size() >= pageSize || !archive.isEnabled()) return page;
+        RoomMeta meta = roomMeta(roomId).orElse(null);
+        if (meta == null || meta.archived() == null) return page;
+        long below = page.isEmpty() ? beforeId : page.get(0).id();
+        List<RawMessage> older = archive.before(roomId, MessageArchive.generation(meta), below, pageSize - page.size());
+        if (older.isEmpty()) return page;
+        archivePayload.record(payloadBytes(older));
+        List<RawMessage> stitched = new ArrayList<>(older.size() + page.size());
+        stitched.addAll(older);
+        stitched.addAll(page);
+        return stitched;
+    }
+
+    //a cursor below the newest archived id starts in the archive and goes on in redis after its last message;
+    //the archive is written before redis lets go of a message, so nothing falls between the two
+    private List<RawMessage> readAfter(String roomId, long afterId, int limit) {
+        RoomMeta meta = archive.isEnabled() ? roomMeta(roomId).orElse(null) : null;
+        if (meta == null || meta.archived() == null) return readHistory(roomId, "after", afterId, limit);
+        long generation = MessageArchive.generation(meta);
+        if (afterId >= archive.lastId(roomId, generation)) return readHistory(roomId, "after", afterId, limit);
+        int pageSize = Math.min(limit, history.getMaxPageSize());
+        List<RawMessage> archived = archive.after(roomId, generation, afterId, pageSize);
+        archivePayload.record(payloadBytes(archived));
+        if (archived.size() >= pageSize) return archived;
+        long last = archived.isEmpty() ? afterId : archived.get(archived.size() - 1).id();
+        List<RawMessage> stitched = new ArrayList<>(archived);
+        stitched.addAll(readHistory(roomId, "after", last, pageSize - archived.size()));
+        return stitched;
+    }
+
+    private List<RawMessage> readHistory(String roomId, String mode, long cursor, int limit) {
+        return readPage(roomId, mode, cursor, Math.min(limit, history.getMaxPageSize()));
+    }
+
+    //this will read the oldest count messages after afterId for the archiver, unbounded by the history page size
+    public List<RawMessage> readForArchive(String roomId, long afterId, int count) {
+        return call("readForArchive", () -> readPage(roomId, "after", afterId, count));
+    }
+
+    //one range read located from the ids, so the cost depends on the page size and not on how deep the cursor is;
+    //json entries are passed on as stored, binary ones are turned into json here
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<RawMessage> readPage(String roomId, String mode, long cursor, int pageSize) {
+        List<Object> page = redisTemplate.execute(store.readScript(),
+                RedisSerializer.string(),
+                (RedisSerializer) RedisSerializer.byteArray(),
+                List.of(RoomKeys.meta(roomId), store.messagesKey(roomId)),
+                mode, String.valueOf(cursor), String.valueOf(pageSize));
+        long firstId = (Long) page.get(0);
+        List<RawMessage> messages = new ArrayList<>(page.size() - 1);
+        for (int i = 1; i < page.size(); i++) {
+            messages.add(codecs.toJson(firstId + i - 1, (byte[]) page.get(i)));
+        }
+        redisPayload.record(payloadBytes(messages));
+        return messages;
+    }
+
+    //this will find messages holding every word of the query and/or sent by the participant, newest first,
+    //from/to are epoch millis of when the messages were stored (null for open), beforeId pages back (0 for the newest);
+    //a page can come back short with a cursor when the query is too common to finish within maxExamined candidates
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SearchPage searchMessages(String roomId, String query, String participant, Long from, Long to,
+                                     long beforeId, int limit) {
+        List<String> postings = search.postings(query, participant);
+        if (postings.isEmpty()) {
+            throw new IllegalArgumentException("Search needs a word of at least two letters or digits, or a participant");
+        }
+        List<String> args = new ArrayList<>(List.of(RoomKeys.search(roomId),
+                from == null ? "-inf" : String.valueOf(from),
+                to == null ? "+inf" : String.valueOf(to),
+                String.valueOf(beforeId),
+                String.valueOf(Math.min(limit, searchProperties.getMaxPageSize())),
+                String.valueOf(searchProperties.getMaxExamined())));
+        args.addAll(postings);
+        List<Object> result = call("searchMessages", () -> redisTemplate.execute(SEARCH_SCRIPT,
+                RedisSerializer.string(),
+                (RedisSerializer) RedisSerializer.byteArray(),
+                List.of(RoomKeys.meta(roomId), store.messagesKey(roomId)),
+                args.toArray()));
+        List<RawMessage> messages = new ArrayList<>(result.size() / 2);
+        for (int i = 1; i + 1 < result.size(); i += 2) {
+            messages.add(codecs.toJson((Long) result.get(i), (byte[]) result.get(i + 1)));
+        }
+        redisPayload.record(payloadBytes(messages));
+        return new SearchPage(messages, (Long) result.get(0));
+    }
+
+    //cursor is the beforeId of the next page, 0 when there is none
+    public record SearchPage(List<RawMessage> messages, long cursor) {
+    }
+
+    //this will index stored messages by their own timestamp, used to build the index for history written without it;
+    //returns false when the room does not exist
+    public boolean indexMessages(String roomId, Map<Long, ChatMessage> messagesById) {
+        byte[][] args = new byte[1 + 3 * messagesById.size()][];
+        args[0] = RedisSerializer.string().serialize(RoomKeys.search(roomId));
+        int i = 1;
+        for (Map.Entry<Long, ChatMessage> entry : messagesById.entrySet()) {
+            ChatMessage message = entry.getValue();
+            args[i++] = RedisSerializer.string().serialize(String.valueOf(entry.getKey()));
+            args[i++] = RedisSerializer.string().serialize(String.valueOf(message.getTimestamp().toEpochMilli()));
+            args[i++] = search.doc(message.getParticipant(), message.getMessage());
+        }
+        Long indexed = call("indexMessages", () -> redisTemplate.execute(SEARCH_INDEX_SCRIPT,
+                RedisSerializer.byteArray(),
+                new GenericToStringSerializer<>(Long.class),
+                List.of(RoomKeys.meta(roomId)),
+                (Object[]) args));
+        return indexed != null && indexed >= 0;
+    }
+
+    //this will remove the index entries of up to pruneChunk messages that are no longer in the history
+    public long pruneSearchIndex(String roomId) {
+        Long removed = call("pruneSearchIndex", () -> redisTemplate.execute(SEARCH_PRUNE_SCRIPT,
+                RedisSerializer.string(),
+                new GenericToStringSerializer<>(Long.class),
+                List.of(RoomKeys.meta(roomId), store.messagesKey(roomId)),
+                RoomKeys.search(roomId), String.valueOf(searchProperties.getPruneChunk())));
+        return removed == null ? 0 : removed;
+    }
+
+    //this will move the participant's read cursor up to messageId, or to the newest message when it is null
+    //returns {read cursor, newest id}, throws when the participant has not joined; null when the room does not exist
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public long[] markRead(String roomId, String participant, Long messageId) {
+        List<?> result = call("markRead", () -> redisTemplate.execute(MARK_READ_SCRIPT,
+                RedisSerializer.byteArray(),
+                (RedisSerializer) RedisSerializer.byteArray(),
+                membershipKeys(roomId),
+                valueBytes(participant),
+                RedisSerializer.string().serialize(messageId == null ? "" : String.valueOf(messageId))));
+        long status = (Long) result.get(0);
+        if (status == NOT_A_MEMBER) throw new NotRoomMemberException("Participant has not joined the room");
+        if (status < 0) return null;
+        return new long[]{status, (Long) result.get(1)};
+    }
+
+    //this will summarise every room the participant is in: one SMEMBERS on the reverse index, then one summary
+    //script per room pipelined in batchSize calls, so the cost grows with the rooms but not the round trips;
+    //rooms deleted or left since are dropped from the index on the way
+    @SuppressWarnings("unchecked")
+    public List<RoomSummary> getRoomSummaries(String participant) {
+        return call("getRoomSummaries", () -> {
+            byte[] indexKey = RedisSerializer.string().serialize(RoomKeys.participantRooms(participant));
+            Set<byte[]> members = redisTemplate.execute((RedisCallback<Set<byte[]>>) connection ->
+                    connection.setCommands().sMembers(indexKey));
+            List<String> rooms = new ArrayList<>();
+            for (byte[] member : members == null ? Set.<byte[]>of() : members) {
+                rooms.add(new String(member, StandardCharsets.UTF_8));
             }
-        }).collect(Collectors.toList());
+            byte[][] args = {valueBytes(participant)};
+            List<Object> results = pipelineScript(ROOM_SUMMARY_SCRIPT, ReturnType.MULTI, rooms,
+                    roomId -> List.of(RoomKeys.meta(roomId), store.messagesKey(roomId), RoomKeys.participants(roomId),
+                            RoomKeys.reads(roomId)),
+                    roomId -> args);
+            List<RoomSummary> summaries = new ArrayList<>(rooms.size());
+            List<byte[]> stale = new ArrayList<>();
+            for (int i = 0; i < rooms.size(); i++) {
+                List<Object> summary = (List<Object>) results.get(i);
+                if (summary.size() == 1) {
+                    stale.add(RedisSerializer.string().serialize(rooms.get(i)));
+                    continue;
+                }
+                summaries.add(roomSummary(rooms.get(i), summary));
+            }
+            if (!stale.isEmpty()) {
+                redisTemplate.execute((RedisCallback<Long>) connection ->
+                        connection.setCommands().sRem(indexKey, stale.toArray(byte[][]::new)));
+            }
+            //most recently active first, rooms without messages last
+            summaries.sort(Comparator.comparingLong(RoomSummary::lastActivityNanos).reversed());
+            return summaries;
+        });
+    }
+
+    //the newest message comes from redis, or from the archive for a room whose history is archived entirely
+    private RoomSummary roomSummary(String roomId, List<Object> summary) {
+        long newestId = (Long) summary.get(0);
+        long createdAt = (Long) summary.get(1);
+        long lastRead = (Long) summary.get(3);
+        long archived = (Long) summary.get(4);
+        RawMessage last = null;
+        if (summary.size() > 5 && summary.get(5) instanceof byte[] entry) {
+            last = codecs.toJson(newestId, entry);
+        } else if (archived >= 0 && archive.isEnabled()) {
+            List<RawMessage> archivedLast = archive.before(roomId, createdAt, Long.MAX_VALUE, 1);
+            if (!archivedLast.isEmpty()) last = archivedLast.get(0);
+        }
+        return new RoomSummary(roomId, createdAt, (Long) summary.get(2), lastRead, Math.max(0, newestId - lastRead),
+                last == null ? null : new String(last.json(), StandardCharsets.UTF_8),
+                last == null ? -1 : MessageEncoding.timestampNanos(last.json()));
+    }
+
+    //one entry of the room list summary, lastMessage is the stored json passed on as is
+    public record RoomSummary(String roomId, long createdAt, long participants, long lastReadId, long unread,
+                              @JsonRawValue String lastMessage, @JsonIgnore long lastActivityNanos) {
     }
 
-    //this will check if the chat room with same name exists or not
+    //this will check if the chat room with same name exists or not, mostly answered by the local cache
     public boolean roomExists(String roomId) {
-        return Boolean.TRUE.equals(redisTemplate.hasKey("chatroom:meta:" + roomId));
+        return roomMeta(roomId).isPresent();
+    }
+
+    public Optional<RoomMeta> roomMeta(String roomId) {
+        return roomCache.get(roomId, this::loadRoomMeta);
     }
 
-    //deleting the key for specific room
+    private Optional<RoomMeta> loadRoomMeta(String roomId) {
+        Map<Object, Object> fields = call("loadRoomMeta", () -> redisTemplate.opsForHash().entries(RoomKeys.meta(roomId)));
+        if (fields.isEmpty()) return Optional.empty();
+        return Optional.of(new RoomMeta(longField(fields, "createdAt"), longField(fields, "maxMessages"),
+                longField(fields, "maxAgeMs"), longField(fields, "archived")));
+    }
+
+    private static Long longField(Map<Object, Object> fields, String name) {
+        return fields.get(name) instanceof Number number ? number.longValue() : null;
+    }
+
+    //this will drop the room from this node's cache right away and from every other node's over chatapp:control
+    private void announceChange(String roomId) {
+        forgetLocally(roomId);
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(
+                RedisSerializer.string().serialize(RoomMetadataCache.CONTROL_CHANNEL),
+                RedisSerializer.string().serialize(roomId)));
+    }
+
+    private void forgetLocally(String roomId) {
+        roomCache.invalidate(roomId);
+        recentMessages.invalidate(roomId);
+    }
+
+    //deleting the key for specific room, a list left over from before a stream migration goes too;
+    //UNLINK only drops the keys from the keyspace, so the room is gone for every later command at once
+    //while redis frees a history of millions of entries on its lazyfree thread instead of blocking all other rooms
     public void deleteRoom(String roomId) {
-        redisTemplate.delete("chatroom:meta:" + roomId);
-        redisTemplate.delete("chatroom:participants:" + roomId);
-        redisTemplate.delete("chatroom:messages:" + roomId);
+        //the search index and the archive are kept under the room's createdAt, which is gone with the meta hash
+        Optional<RoomMeta> meta = search.isEnabled() || archive.isEnabled() ? roomMeta(roomId) : Optional.empty();
+        Long createdAt = meta.map(RoomMeta::createdAt).orElse(null);
+        call("deleteRoom", () -> {
+            //all keys of a room share one slot, so a single UNLINK also works on a cluster
+            redisTemplate.unlink(List.of(RoomKeys.meta(roomId), RoomKeys.participants(roomId),
+                    RoomKeys.messages(roomId), RoomKeys.stream(roomId), RoomKeys.reads(roomId), RoomKeys.outbox(roomId)));
+            announceChange(roomId);
+        });
+        //its keys are only known from the docs hash, so they are removed in the background
+        if (search.isEnabled()) search.drop(roomId, createdAt == null ? "0" : String.valueOf(createdAt));
+        if (meta.isPresent() && meta.get().archived() != null) archive.drop(roomId, MessageArchive.generation(meta.get()));
+    }
+
+    //this will drop the history entries up to upToId once the archiver has them safely on disk and record upToId
+    //as archived; the first archival of a room is announced so every node starts consulting the archive
+    //returns {entries removed, bytes reclaimed}
+    public long[] trimArchived(String roomId, long upToId) {
+        List<?> result = call("trimArchived", () -> redisTemplate.execute(store.archiveTrimScript(),
+                RedisSerializer.string(),
+                null,
+                List.of(RoomKeys.meta(roomId), store.messagesKey(roomId)),
+                String.valueOf(upToId)));
+        if ((Long) result.get(2) == 1) announceChange(roomId);
+        return new long[]{(Long) result.get(0), (Long) result.get(1)};
+    }
+
+    //id of the newest message ever sent to the room, 0 before the first one
+    public long newestId(String roomId) {
+        Long seq = call("newestId", () -> currentSeq(roomId));
+        return seq == null ? 0 : seq;
+    }
+
+    //this will take the room's archive lock for owner unless another node holds it
+    public boolean lockArchive(String roomId, String owner, Duration timeout) {
+        Boolean locked = call("lockArchive", () ->
+                redisTemplate.opsForValue().setIfAbsent(RoomKeys.archiveLock(roomId), owner, timeout));
+        return Boolean.TRUE.equals(locked);
+    }
+
+    public void unlockArchive(String roomId, String owner) {
+        call("unlockArchive", () ->
+                redisTemplate.execute(RELEASE_LOCK_SCRIPT, List.of(RoomKeys.archiveLock(roomId)), owner));
+    }
+
+    //this will drop history entries older than the room's max age, at most trimChunk entries per call
+    //returns {entries removed, bytes reclaimed}
+    public long[] trimExpired(String roomId, long nowMillis) {
+        List<?> result = call("trimExpired", () -> redisTemplate.execute(store.trimExpiredScript(),
+                RedisSerializer.string(),
+                null,
+                List.of(RoomKeys.meta(roomId), store.messagesKey(roomId)),
+                String.valueOf(nowMillis),
+                String.valueOf(retention.getMaxAge().toMillis()),
+                String.valueOf(retention.getTrimChunk())));
+        return new long[]{(Long) result.get(0), (Long) result.get(1)};
+    }
+
+    //this will fetch one SCAN page, "0" as next cursor means the iteration is complete
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ScanPage scanKeys(String cursor, String pattern, int count) {
+        if (isCluster(redisTemplate.getConnectionFactory())) {
+            return call("scanKeys", () -> redisTemplate.execute((RedisCallback<ScanPage>) connection ->
+                    scanClusterKeys((RedisClusterConnection) connection, cursor, pattern, count)));
+        }
+        List<?> result = call("scanKeys", () -> redisTemplate.execute(SCAN_SCRIPT,
+                RedisSerializer.string(),
+                (RedisSerializer) RedisSerializer.string(),
+                List.of(),
+                cursor, pattern, String.valueOf(count)));
+        List<String> keys = new ArrayList<>();
+        for (Object key : (List<?>) result.get(1)) {
+            keys.add((String) key);
+        }
+        return new ScanPage((String) result.get(0), keys);
+    }
+
+    //SCAN only walks the node it is sent to, so on a cluster the masters are scanned one after another in node id
+    //order and the cursor is {nodeId}:{node cursor}; when that node is no longer a master after a failover
+    //the scan moves on to the next one, so keys may be missed for one pass but the iteration never gets stuck
+    @SuppressWarnings("unchecked")
+    private ScanPage scanClusterKeys(RedisClusterConnection connection, String cursor, String pattern, int count) {
+        List<String> masters = new ArrayList<>();
+        for (RedisClusterNode node : connection.clusterGetNodes()) {
+            if (node.isMaster()) masters.add(node.getId());
+        }
+        masters.sort(Comparator.naturalOrder());
+        if (masters.isEmpty()) return new ScanPage("0", List.of());
+        String nodeId = masters.get(0);
+        String nodeCursor = "0";
+        int separator = cursor.indexOf(':');
+        if (separator > 0) {
+            nodeId = cursor.substring(0, separator);
+            nodeCursor = cursor.substring(separator + 1);
+        }
+        if (!masters.contains(nodeId)) {
+            String next = nextMaster(masters, nodeId);
+            if (next == null) return new ScanPage("0", List.of());
+            nodeId = next;
+            nodeCursor = "0";
+        }
+        RedisAdvancedClusterAsyncCommands<byte[], byte[]> commands =
+                (RedisAdvancedClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+        KeyScanCursor<byte[]> page = commands.getConnection(nodeId)
+                .scan(ScanCursor.of(nodeCursor), ScanArgs.Builder.matches(pattern).limit(count))
+                .toCompletableFuture().join();
+        List<String> keys = new ArrayList<>(page.getKeys().size());
+        for (byte[] key : page.getKeys()) {
+            keys.add(new String(key, StandardCharsets.UTF_8));
+        }
+        if (!page.isFinished()) return new ScanPage(nodeId + ":" + page.getCursor(), keys);
+        String next = nextMaster(masters, nodeId);
+        return new ScanPage(next == null ? "0" : next + ":0", keys);
+    }
+
+    private static String nextMaster(List<String> masters, String nodeId) {
+        for (String master : masters) {
+            if (master.compareTo(nodeId) > 0) return master;
+        }
+        return null;
+    }
+
+    public record ScanPage(String cursor, List<String> keys) {
+    }
+
+    //true when the application talks to a redis cluster rather than a single node or sentinel setup
+    public static boolean isCluster(RedisConnectionFactory connectionFactory) {
+        return connectionFactory instanceof LettuceConnectionFactory lettuce && lettuce.isClusterAware();
+    }
+
+    private Timer timer(String operation) {
+        return timers.computeIfAbsent(operation, name -> operationTimer(registry, name));
+    }
+
+    //every redis call is timed per operation and goes through the circuit breaker
+    private <T> T call(String operation, Supplier<T> redisCall) {
+        return breaker.call(timer(operation), redisCall);
+    }
+
+    private void call(String operation, Runnable redisCall) {
+        breaker.run(timer(operation), redisCall);
+    }
+
+    private static long payloadBytes(List<RawMessage> messages) {
+        long bytes = 0;
+        for (RawMessage message : messages) {
+            bytes += message.json().length;
+        }
+        return bytes;
+    }
+
+    //one timer per repository call, tagged by operation, so a slow redis shows up per command
+    public static Timer operationTimer(MeterRegistry registry, String operation) {
+        return Timer.builder("chat.redis.operation")
+                .description("Time spent in one repository call")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static DistributionSummary historyPayloadSummary(MeterRegistry registry, String source) {
+        return DistributionSummary.builder("chat.history.payload")
+                .description("Message json bytes returned by one history read")
+                .baseUnit("bytes")
+                .tag("source", source)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public static Counter reclaimedCounter(MeterRegistry registry, String reason) {
+        return Counter.builder("chat.retention.reclaimed")
+                .description("History payload bytes removed by retention limits")
+                .baseUnit("bytes")
+                .tag("reason", reason)
+                .register(registry);
     }
 }
@@ -0,0 +1,52 @@
+package com.freightfox.chatapp.Repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.freightfox.chatapp.DTO.ChatMessage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+//stores the message json itself: redis puts the id in front and stores and publishes those bytes,
+//history reads and event streams hand them on as they are
+public class JsonMessageCodec implements MessageCodec {
+
+    @Override
+    public byte[] encode(ChatMessage message) {
+        try {
+            return MessageEncoding.MAPPER.writeValueAsBytes(message);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //entries written before the byte path are json strings holding the message json
+    @Override
+    public boolean canRead(byte[] entry) {
+        return entry.length > 0 && (entry[0] == '{' || entry[0] == '"');
+    }
+
+    //entries written before ids were stored inline get the id they were read under put in front
+    @Override
+    public RawMessage toJson(long id, byte[] entry) {
+        long inlineId = MessageEncoding.idOf(entry);
+        if (inlineId > 0) return new RawMessage(inlineId, entry);
+        byte[] json = entry;
+        if (entry[0] == '"') {
+            try {
+                json = MessageEncoding.MAPPER.readValue(entry, String.class).getBytes(StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return id > 0 ? new RawMessage(id, withId(id, json)) : new RawMessage(0, json);
+    }
+
+    private static byte[] withId(long id, byte[] json) {
+        byte[] prefix = ("{\"id\":" + id + ",").getBytes(StandardCharsets.UTF_8);
+        byte[] result = new byte[prefix.length + json.length - 1];
+        System.arraycopy(prefix, 0, result, 0, prefix.length);
+        System.arraycopy(json, 1, result, prefix.length, json.length - 1);
+        return result;
+    }
+}
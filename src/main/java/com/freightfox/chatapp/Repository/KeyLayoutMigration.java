@@ -0,0 +1,128 @@
+package com.freightfox.chatapp.Repository;
+
+import com.freightfox.chatapp.config.RetentionProperties;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisHashCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+//one-off rename of the chatroom:meta:{roomId} style keys to the hash tagged chatroom:{roomId}:meta layout,
+//a RENAME keeps every entry and message id as it is; it needs a single redis node because the old keys of a room
+//hash to different slots, so a cluster is populated by migrating before resharding or by starting out empty.
+//meta hashes written before the template used string hash keys and json hash values hold jdk serialized fields,
+//which neither the scripts nor loadRoomMeta can read, so their fields are written again in the current encoding
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "chatapp.storage", name = "migrate-key-layout", havingValue = "true", matchIfMissing = true)
+public class KeyLayoutMigration {
+    private static final String LEGACY_META_PREFIX = "chatroom:meta:";
+    //matches the legacy and the hash tagged meta keys, so both are handled in one pass over the keyspace
+    private static final String ANY_META_PATTERN = "chatroom:*meta*";
+    //set once every hash tagged meta key was re-encoded, rooms renamed later are re-encoded as they are renamed
+    private static final String REENCODED_MARKER = "chatapp:migrations:meta-encoding";
+    //first bytes of every java serialization stream
+    private static final byte STREAM_MAGIC_0 = (byte) 0xAC;
+    private static final byte STREAM_MAGIC_1 = (byte) 0xED;
+    private static final RedisScript<Long> MIGRATE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/migrate_key_layout.lua"), Long.class);
+
+    private final ChatRoomRepository repo;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RetentionProperties retention;
+    private final JdkSerializationRedisSerializer jdk = new JdkSerializationRedisSerializer();
+
+    public KeyLayoutMigration(ChatRoomRepository repo, RedisTemplate<String, Object> redisTemplate,
+                              RetentionProperties retention) {
+        this.repo = repo;
+        this.redisTemplate = redisTemplate;
+        this.retention = retention;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        if (ChatRoomRepository.isCluster(redisTemplate.getConnectionFactory())) {
+            log.info("Skipping the key layout migration, a cluster can only hold the hash tagged layout");
+            return;
+        }
+        boolean reencodeTagged = !Boolean.TRUE.equals(redisTemplate.hasKey(REENCODED_MARKER));
+        String cursor = "0";
+        int rooms = 0;
+        int reencoded = 0;
+        do {
+            ChatRoomRepository.ScanPage page = repo.scanKeys(cursor,
+                    reencodeTagged ? ANY_META_PATTERN : LEGACY_META_PREFIX + "*", retention.getScanCount());
+            for (String key : page.keys()) {
+                String roomId = key.startsWith(LEGACY_META_PREFIX)
+                        ? key.substring(LEGACY_META_PREFIX.length())
+                        : RoomKeys.roomIdOfMeta(key);
+                if (roomId == null) continue;
+                if (key.startsWith(LEGACY_META_PREFIX)) {
+                    if (!migrateRoom(roomId)) continue;
+                    rooms++;
+                }
+                if (reencodeMeta(roomId)) reencoded++;
+            }
+            cursor = page.cursor();
+        } while (!"0".equals(cursor));
+        if (rooms > 0) log.info("Moved {} rooms to the hash tagged key layout", rooms);
+        if (reencoded > 0) log.info("Rewrote the jdk serialized meta fields of {} rooms", reencoded);
+        if (reencodeTagged) redisTemplate.opsForValue().set(REENCODED_MARKER, System.currentTimeMillis());
+    }
+
+    //this will rename the keys of one room, false when it was skipped
+    public boolean migrateRoom(String roomId) {
+        if (!RoomKeys.isValidRoomId(roomId)) {
+            log.warn("Room {} keeps its legacy keys, braces in a room id would break its hash tag", roomId);
+            return false;
+        }
+        Long moved = redisTemplate.execute(MIGRATE_SCRIPT,
+                RedisSerializer.string(),
+                new GenericToStringSerializer<>(Long.class),
+                List.of(LEGACY_META_PREFIX + roomId, "chatroom:participants:" + roomId,
+                        "chatroom:messages:" + roomId, "chatroom:stream:" + roomId,
+                        RoomKeys.meta(roomId), RoomKeys.participants(roomId),
+                        RoomKeys.messages(roomId), RoomKeys.stream(roomId)));
+        return moved != null && moved == 1;
+    }
+
+    //this will replace every jdk serialized field of the room's meta hash by its string/json form, true when one was
+    //found; a field already present in the new form was written since and wins over the legacy one
+    public boolean reencodeMeta(String roomId) {
+        RedisSerializer<String> keySerializer = RedisSerializer.string();
+        @SuppressWarnings("unchecked")
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+        byte[] key = keySerializer.serialize(RoomKeys.meta(roomId));
+        return Boolean.TRUE.equals(redisTemplate.execute((RedisCallback<Boolean>) connection -> {
+            RedisHashCommands hashes = connection.hashCommands();
+            Map<byte[], byte[]> fields = hashes.hGetAll(key);
+            if (fields == null) return false;
+            boolean found = false;
+            for (Map.Entry<byte[], byte[]> field : fields.entrySet()) {
+                if (!isJdkSerialized(field.getKey())) continue;
+                Object name = jdk.deserialize(field.getKey());
+                byte[] value = isJdkSerialized(field.getValue())
+                        ? valueSerializer.serialize(jdk.deserialize(field.getValue()))
+                        : field.getValue();
+                hashes.hSetNX(key, keySerializer.serialize(String.valueOf(name)), value);
+                hashes.hDel(key, field.getKey());
+                found = true;
+            }
+            return found;
+        }));
+    }
+
+    private static boolean isJdkSerialized(byte[] bytes) {
+        return bytes != null && bytes.length > 2 && bytes[0] == STREAM_MAGIC_0 && bytes[1] == STREAM_MAGIC_1;
+    }
+}
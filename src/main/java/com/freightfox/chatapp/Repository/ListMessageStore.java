@@ -0,0 +1,49 @@
+package com.freightfox.chatapp.Repository;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+
+//history as a redis list, ids derived from list positions
+public class ListMessageStore implements MessageStore {
+    private static final RedisScript<Long> SEND_SCRIPT =
+            LuaScripts.of("scripts/send_message.lua", Long.class, LuaScripts.INDEX, LuaScripts.SEND, LuaScripts.LIST_HEAD);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> READ_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/read_history.lua"), List.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TRIM_EXPIRED_SCRIPT =
+            LuaScripts.of("scripts/trim_expired.lua", List.class, LuaScripts.TIMESTAMP, LuaScripts.LIST_HEAD);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ARCHIVE_TRIM_SCRIPT =
+            LuaScripts.of("scripts/archive_trim.lua", List.class, LuaScripts.LIST_HEAD, LuaScripts.ARCHIVED);
+
+    @Override
+    public String messagesKey(String roomId) {
+        return RoomKeys.messages(roomId);
+    }
+
+    @Override
+    public RedisScript<Long> sendScript() {
+        return SEND_SCRIPT;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public RedisScript<List> readScript() {
+        return READ_SCRIPT;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public RedisScript<List> trimExpiredScript() {
+        return TRIM_EXPIRED_SCRIPT;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public RedisScript<List> archiveTrimScript() {
+        return ARCHIVE_TRIM_SCRIPT;
+    }
+}
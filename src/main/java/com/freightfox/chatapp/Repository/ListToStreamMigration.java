@@ -0,0 +1,79 @@
+package com.freightfox.chatapp.Repository;
+
+import com.freightfox.chatapp.config.RetentionProperties;
+import com.freightfox.chatapp.config.StorageProperties;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+//one-off move of the chatroom:{*}:messages lists into streams, message ids are kept so client cursors stay valid,
+//it runs before this node serves requests and has to finish before any node sends with the stream engine
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "chatapp.storage", name = "migrate-lists", havingValue = "true")
+public class ListToStreamMigration {
+    private static final RedisScript<Long> MIGRATE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/migrate_list_to_stream.lua"), Long.class);
+
+    private final ChatRoomRepository repo;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RetentionProperties retention;
+    private final StorageProperties storage;
+    private final ObjectProvider<KeyLayoutMigration> keyLayout;
+    private final StreamMessageStore streams = new StreamMessageStore();
+
+    public ListToStreamMigration(ChatRoomRepository repo, RedisTemplate<String, Object> redisTemplate,
+                                 RetentionProperties retention, StorageProperties storage,
+                                 ObjectProvider<KeyLayoutMigration> keyLayout) {
+        this.repo = repo;
+        this.redisTemplate = redisTemplate;
+        this.retention = retention;
+        this.storage = storage;
+        this.keyLayout = keyLayout;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        //the lists are looked up under the hash tagged names, so legacy keys have to be renamed first
+        keyLayout.ifAvailable(migration -> { });
+        if (storage.getEngine() != StorageProperties.Engine.STREAM) {
+            log.warn("chatapp.storage.migrate-lists is ignored unless chatapp.storage.engine is stream");
+            return;
+        }
+        String cursor = "0";
+        int rooms = 0;
+        do {
+            ChatRoomRepository.ScanPage page = repo.scanKeys(cursor, RoomKeys.MESSAGES_PATTERN, retention.getScanCount());
+            for (String key : page.keys()) {
+                String roomId = RoomKeys.roomIdOfMessages(key);
+                if (roomId != null && migrateRoom(roomId)) rooms++;
+            }
+            cursor = page.cursor();
+        } while (!"0".equals(cursor));
+        log.info("Moved the history of {} rooms from lists to streams", rooms);
+    }
+
+    //this will move one room in chunks so no single script call holds redis for long
+    //returns false for a list whose room no longer exists, it is left untouched
+    public boolean migrateRoom(String roomId) {
+        List<String> keys = List.of(RoomKeys.meta(roomId), RoomKeys.messages(roomId), streams.messagesKey(roomId));
+        Long left;
+        do {
+            left = redisTemplate.execute(MIGRATE_SCRIPT,
+                    RedisSerializer.string(),
+                    new GenericToStringSerializer<>(Long.class),
+                    keys,
+                    String.valueOf(storage.getMigrateChunk()));
+        } while (left != null && left > 0);
+        return left != null && left == 0;
+    }
+}
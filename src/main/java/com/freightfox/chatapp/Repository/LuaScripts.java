@@ -0,0 +1,41 @@
+package com.freightfox.chatapp.Repository;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+//scripts that share helpers with others are put together from the parts under scripts/lib and their own body,
+//so the list and stream engines run the same code for ids, outbox dedup, indexing, message age and archiving;
+//the parts only define local functions and go first, redis sees one script and caches it by its sha as usual
+final class LuaScripts {
+    static final String INDEX = "scripts/lib/index.lua";
+    static final String SEND = "scripts/lib/send.lua";
+    static final String TIMESTAMP = "scripts/lib/timestamp.lua";
+    static final String LIST_HEAD = "scripts/lib/list_head.lua";
+    static final String ARCHIVED = "scripts/lib/archived.lua";
+
+    private LuaScripts() {
+    }
+
+    static <T> RedisScript<T> of(String script, Class<T> resultType, String... parts) {
+        StringBuilder source = new StringBuilder();
+        for (String part : parts) {
+            source.append(read(part)).append('\n');
+        }
+        source.append(read(script));
+        return RedisScript.of(source.toString(), resultType);
+    }
+
+    private static String read(String path) {
+        try (InputStream in = new ClassPathResource(path).getInputStream()) {
+            return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + path, e);
+        }
+    }
+}
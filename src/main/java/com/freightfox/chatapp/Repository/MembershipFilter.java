@@ -0,0 +1,151 @@
+package com.freightfox.chatapp.Repository;
+
+import com.freightfox.chatapp.config.MembershipProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//per node pre-filter for membership enforcement: one bloom filter of the participants per room, built with SSCAN
+//in the background on first use and kept current by the join and leave events on chatapp:membership.
+//"certainly not a member" is answered here without redis, anything else is confirmed by SISMEMBER in the send script,
+//so enforcement adds no round trip; a room without a ready filter is always left to the script
+@Slf4j
+@Component
+public class MembershipFilter {
+    public static final String EVENTS_CHANNEL = "chatapp:membership";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final MembershipProperties properties;
+    private final Map<String, RoomFilter> filters;
+    private final Set<String> loading = ConcurrentHashMap.newKeySet();
+    private final ExecutorService loader =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("membership-loader-"));
+    private final Counter rejected;
+    private final Counter passed;
+    private final Counter unknown;
+
+    public MembershipFilter(RedisTemplate<String, Object> redisTemplate, MembershipProperties properties,
+                            MeterRegistry registry) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.filters = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RoomFilter> eldest) {
+                return size() > properties.getMaxRooms();
+            }
+        };
+        this.rejected = registry.counter("chat.membership.prefilter", "result", "rejected");
+        this.passed = registry.counter("chat.membership.prefilter", "result", "maybe");
+        this.unknown = registry.counter("chat.membership.prefilter", "result", "unknown");
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnforce();
+    }
+
+    //false only when the participant is certainly not in the room
+    public boolean mightBeMember(String roomId, String participant) {
+        RoomFilter filter = readyFilter(roomId);
+        if (filter == null) {
+            unknown.increment();
+            return true;
+        }
+        if (filter.bloom.mightContain(participant)) {
+            passed.increment();
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    //this will add a participant who joined on any node, rooms without a filter here are skipped
+    public void joined(String roomId, String participant) {
+        RoomFilter filter;
+        synchronized (filters) {
+            filter = filters.get(roomId);
+        }
+        if (filter != null) filter.bloom.add(participant);
+    }
+
+    //a bloom filter cannot forget, so a leaver keeps passing the pre-filter and is refused by the script;
+    //once leavers make up a quarter of the names in it the filter is dropped and rebuilt without them
+    public void left(String roomId) {
+        synchronized (filters) {
+            RoomFilter filter = filters.get(roomId);
+            if (filter != null && filter.left.incrementAndGet() > filter.bloom.approximateSize() / 4) {
+                filters.remove(roomId);
+            }
+        }
+    }
+
+    private RoomFilter readyFilter(String roomId) {
+        RoomFilter filter;
+        synchronized (filters) {
+            filter = filters.get(roomId);
+        }
+        boolean stale = filter == null || filter.bloom.isFull()
+                || System.nanoTime() - filter.loadedAt > properties.getRebuildAfter().toNanos();
+        if (stale && loading.add(roomId)) {
+            loader.execute(() -> load(roomId));
+        }
+        return filter != null && filter.ready ? filter : null;
+    }
+
+    //the filter is registered before the scan starts, so a join announced meanwhile is either in the set
+    //when SSCAN gets there or added by its event; it answers only once the scan is complete
+    private void load(String roomId) {
+        try {
+            String key = RoomKeys.participants(roomId);
+            Long size = redisTemplate.opsForSet().size(key);
+            int capacity = (int) Math.min(Integer.MAX_VALUE / 2,
+                    Math.max(properties.getExpectedParticipants(), 2 * (size == null ? 0 : size)));
+            RoomFilter filter = new RoomFilter(new ParticipantBloomFilter(capacity, properties.getFalsePositiveRate()));
+            synchronized (filters) {
+                filters.put(roomId, filter);
+            }
+            try (Cursor<Object> members = redisTemplate.opsForSet().scan(key, ScanOptions.scanOptions().count(1000).build())) {
+                while (members.hasNext()) {
+                    filter.bloom.add(String.valueOf(members.next()));
+                }
+            }
+            filter.ready = true;
+        } catch (RuntimeException e) {
+            synchronized (filters) {
+                filters.remove(roomId);
+            }
+            log.warn("Could not load the participants of room {}, its sends are checked in redis only", roomId, e);
+        } finally {
+            loading.remove(roomId);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        loader.shutdownNow();
+    }
+
+    private static class RoomFilter {
+        private final ParticipantBloomFilter bloom;
+        private final long loadedAt = System.nanoTime();
+        private final AtomicInteger left = new AtomicInteger();
+        private volatile boolean ready;
+
+        private RoomFilter(ParticipantBloomFilter bloom) {
+            this.bloom = bloom;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.freightfox.chatapp.Repository;
+
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.ExceptionHandler.ServiceBusyException;
+import com.freightfox.chatapp.config.BatchingProperties;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//coalesces sends from concurrent requests into one pipeline per flush,
+//each room gets a single multi-value append and the caller returns once redis acknowledged its batch.
+//a flush that fails part way answers every room redis answered for; the senders of the others get the error,
+//and since a call in flight when the connection dropped may have run, a retry of one of those can store it twice
+@Slf4j
+@Component
+public class MessageBatcher {
+    private final ChatRoomRepository repo;
+    private final BatchingProperties properties;
+    private final BlockingQueue<PendingMessage> queue;
+    private final DistributionSummary batchSizes;
+    private final Timer flushLatency;
+    private volatile boolean running;
+    private Thread flusher;
+
+    public MessageBatcher(ChatRoomRepository repo, BatchingProperties properties, MeterRegistry registry) {
+        this.repo = repo;
+        this.properties = properties;
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        this.batchSizes = DistributionSummary.builder("chat.batch.size")
+                .description("Messages written per flush")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.flushLatency = Timer.builder("chat.batch.flush")
+                .description("Time spent writing one batch to redis")
+                .publishPercentileHistogram()
+                .register(registry);
+        registry.gaugeCollectionSize("chat.batch.queue", Tags.empty(), queue);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!isEnabled()) return;
+        running = true;
+        flusher = new Thread(this::flushLoop, "message-batcher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher == null) return;
+        running = false;
+        flusher.interrupt();
+        flusher.join(TimeUnit.SECONDS.toMillis(5));
+        PendingMessage pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result().completeExceptionally(new ServiceBusyException("Server is shutting down"));
+        }
+    }
+
+    //this will queue the message and wait until its batch is stored, false means the room does not exist;
+    //a timeout only answers 503 for a message withdrawn before its write, so a client retrying it stores it once
+    public boolean send(String roomId, ChatMessage message) {
+        repo.checkMembership(roomId, message.getParticipant());
+        PendingMessage pending = new PendingMessage(roomId, message, new CompletableFuture<>(), new AtomicBoolean());
+        if (!queue.offer(pending)) {
+            throw new ServiceBusyException("Too many messages in flight, try again later");
+        }
+        try {
+            try {
+                return pending.result().get(properties.getResponseTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (pending.claim()) {
+                    queue.remove(pending);
+                    throw new ServiceBusyException("Timed out waiting for the message to be stored");
+                }
+                //its batch is being written already, the answer is what redis did with it (bounded by the command timeout)
+                return pending.result().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (pending.claim()) queue.remove(pending);
+            throw new ServiceBusyException("Interrupted while sending the message");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void flushLoop() {
+        List<PendingMessage> batch = new ArrayList<>(properties.getMaxBatchSize());
+        while (running) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                if (!running) break;
+            }
+            //a sender that gave up before its message was claimed has withdrawn it
+            batch.removeIf(pending -> !pending.claim());
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+        for (PendingMessage pending : batch) {
+            pending.result().completeExceptionally(new ServiceBusyException("Server is shutting down"));
+        }
+    }
+
+    //blocks for the first message, then lingers until the batch is full or the window closes
+    private void collect(List<PendingMessage> batch) throws InterruptedException {
+        PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) return;
+        batch.add(first);
+        long deadline = System.nanoTime() + properties.getMaxLinger().toNanos();
+        int maxBatchSize = properties.getMaxBatchSize();
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                return;
+            }
+            PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) return;
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PendingMessage> batch) {
+        Map<String, List<ChatMessage>> byRoom = new LinkedHashMap<>();
+        for (PendingMessage pending : batch) {
+            byRoom.computeIfAbsent(pending.roomId(), room -> new ArrayList<>()).add(pending.message());
+        }
+        long start = System.nanoTime();
+        try {
+            Map<String, Boolean> sent;
+            Set<String> failed = Set.of();
+            RuntimeException failure = null;
+            try {
+                sent = repo.sendMessages(byRoom);
+            } catch (ChatRoomRepository.PartialSendException e) {
+                //rooms redis answered for before the pipeline broke are stored, their senders get that answer
+                log.warn("Failed to flush {} messages, {} of {} rooms were stored", batch.size(), e.sent().size(),
+                        byRoom.size(), e.getCause());
+                sent = e.sent();
+                failed = e.failed();
+                failure = (RuntimeException) e.getCause();
+            } catch (RuntimeException e) {
+                log.warn("Failed to flush {} messages", batch.size(), e);
+                sent = Map.of();
+                failed = byRoom.keySet();
+                failure = e;
+            }
+            for (PendingMessage pending : batch) {
+                Boolean stored = sent.get(pending.roomId());
+                if (stored != null) {
+                    pending.result().complete(stored);
+                } else if (failed.contains(pending.roomId())) {
+                    pending.result().completeExceptionally(failure);
+                } else {
+                    resend(pending);
+                }
+            }
+        } finally {
+            flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batchSizes.record(batch.size());
+        }
+    }
+
+    //a room left out of the result had a sender who is not a participant and stored nothing,
+    //its messages go again one by one so only that sender is refused
+    private void resend(PendingMessage pending) {
+        try {
+            pending.result().complete(repo.sendMessage(pending.roomId(), pending.message()));
+        } catch (RuntimeException e) {
+            pending.result().completeExceptionally(e);
+        }
+    }
+
+    //claimed is taken either by the flusher right before the write or by the sender withdrawing the message
+    private record PendingMessage(String roomId, ChatMessage message, CompletableFuture<Boolean> result,
+                                  AtomicBoolean claimed) {
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.freightfox.chatapp.Repository;
+
+import com.freightfox.chatapp.DTO.ChatMessage;
+
+//how a message is laid out in redis; the send scripts put the id in front of what encode returns
+//and everything read back is turned into client json, so formats can be switched without touching old history
+public interface MessageCodec {
+    //the message without its id, which is handed out by the send script
+    byte[] encode(ChatMessage message);
+
+    //whether a stored or published entry is in this codec's format, told apart by the first byte
+    boolean canRead(byte[] entry);
+
+    //this will turn an entry into {"id":N,...} json, id is only used for entries that carry none
+    RawMessage toJson(long id, byte[] entry);
+}
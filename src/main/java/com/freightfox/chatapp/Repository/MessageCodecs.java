@@ -0,0 +1,34 @@
+package com.freightfox.chatapp.Repository;
+
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.config.StorageProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+//new messages are written with the configured codec, entries are read with whichever codec recognises them
+//so history written before a switch keeps working
+@Component
+public class MessageCodecs {
+    private final MessageCodec writer;
+    private final List<MessageCodec> readers;
+
+    public MessageCodecs(StorageProperties properties) {
+        JsonMessageCodec json = new JsonMessageCodec();
+        BinaryMessageCodec binary = new BinaryMessageCodec((int) properties.getCompressAbove().toBytes());
+        this.writer = properties.getCodec() == StorageProperties.Codec.BINARY ? binary : json;
+        this.readers = List.of(json, binary);
+    }
+
+    public byte[] encode(ChatMessage message) {
+        return writer.encode(message);
+    }
+
+    //this will turn a stored entry into client json, id is the position it was read under for entries without one
+    public RawMessage toJson(long id, byte[] entry) {
+        for (MessageCodec codec : readers) {
+            if (codec.canRead(entry)) return codec.toJson(id, entry);
+        }
+        throw new IllegalStateException("Unknown message format in entry " + id);
+    }
+}
@@ -0,0 +1,99 @@
+package com.freightfox.chatapp.Repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+//json helpers shared by the codecs: clients always get {"id":N,...} json, whatever format redis holds
+public final class MessageEncoding {
+    static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new JavaTimeModule());
+    private static final byte[] ID_PREFIX = "{\"id\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TIMESTAMP_FIELD = "\"timestamp\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MESSAGES_OPEN = "{\"messages\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MESSAGES_CLOSE = "]}".getBytes(StandardCharsets.UTF_8);
+
+    private MessageEncoding() {
+    }
+
+    //published and stored json starts with {"id":N, so the id is read off the prefix instead of parsing
+    //returns 0 when the json has no id in front
+    public static long idOf(byte[] json) {
+        if (json.length <= ID_PREFIX.length) return 0;
+        for (int i = 0; i < ID_PREFIX.length; i++) {
+            if (json[i] != ID_PREFIX[i]) return 0;
+        }
+        long id = 0;
+        for (int i = ID_PREFIX.length; i < json.length && json[i] >= '0' && json[i] <= '9'; i++) {
+            id = id * 10 + (json[i] - '0');
+        }
+        return id;
+    }
+
+    //timestamp of client json in epoch nanos, -1 when there is none; timestamp is the last field and a quote inside
+    //the message text is escaped, so the last "timestamp": in the bytes is the field
+    public static long timestampNanos(byte[] json) {
+        int position = lastIndexOf(json, TIMESTAMP_FIELD);
+        if (position < 0) return -1;
+        position += TIMESTAMP_FIELD.length;
+        long seconds = 0;
+        int start = position;
+        while (position < json.length && json[position] >= '0' && json[position] <= '9') {
+            seconds = seconds * 10 + (json[position++] - '0');
+        }
+        if (position == start) return -1;
+        long nanos = 0;
+        if (position < json.length && json[position] == '.') {
+            position++;
+            int digits = 0;
+            while (position < json.length && json[position] >= '0' && json[position] <= '9') {
+                if (digits++ < 9) nanos = nanos * 10 + (json[position] - '0');
+                position++;
+            }
+            for (; digits < 9; digits++) {
+                nanos *= 10;
+            }
+        }
+        return seconds * 1_000_000_000L + nanos;
+    }
+
+    private static int lastIndexOf(byte[] bytes, byte[] pattern) {
+        outer:
+        for (int i = bytes.length - pattern.length; i >= 0; i--) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (bytes[i + j] != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    //this will build the {"messages":[...]} history response by copying every message's json into one array
+    public static byte[] messagesBody(List<RawMessage> messages) {
+        return messagesBody(messages, MESSAGES_CLOSE);
+    }
+
+    //the same for a search page, with the before id of the next page as "cursor" (0 when there is none)
+    public static byte[] searchBody(List<RawMessage> messages, long cursor) {
+        return messagesBody(messages, ("],\"cursor\":" + cursor + "}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] messagesBody(List<RawMessage> messages, byte[] close) {
+        int size = MESSAGES_OPEN.length + close.length + Math.max(0, messages.size() - 1);
+        for (RawMessage message : messages) {
+            size += message.json().length;
+        }
+        byte[] body = new byte[size];
+        System.arraycopy(MESSAGES_OPEN, 0, body, 0, MESSAGES_OPEN.length);
+        int position = MESSAGES_OPEN.length;
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) body[position++] = ',';
+            byte[] json = messages.get(i).json();
+            System.arraycopy(json, 0, body, position, json.length);
+            position += json.length;
+        }
+        System.arraycopy(close, 0, body, position, close.length);
+        return body;
+    }
+}
@@ -0,0 +1,28 @@
+package com.freightfox.chatapp.Repository;
+
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+
+//the redis structure holding room history; both engines take the same script arguments
+//and answer in the same shape, so ChatRoomRepository does not care which one is active
+public interface MessageStore {
+
+    String messagesKey(String roomId);
+
+    //KEYS meta, history, participants; ARGV channel, publish command, default cap, sender count, search prefix,
+    //then the senders, the encoded messages and their search docs; returns -1, -2 or bytes trimmed
+    RedisScript<Long> sendScript();
+
+    //KEYS meta, history; ARGV mode, cursor, page size; returns {first id, entries...}
+    @SuppressWarnings("rawtypes")
+    RedisScript<List> readScript();
+
+    //KEYS meta, history; ARGV now, default max age, chunk; returns {entries removed, bytes reclaimed}
+    @SuppressWarnings("rawtypes")
+    RedisScript<List> trimExpiredScript();
+
+    //KEYS meta, history; ARGV newest archived id; returns {entries removed, bytes reclaimed, first archival}
+    @SuppressWarnings("rawtypes")
+    RedisScript<List> archiveTrimScript();
+}
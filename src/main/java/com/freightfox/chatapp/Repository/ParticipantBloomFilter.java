@@ -0,0 +1,91 @@
+package com.freightfox.chatapp.Repository;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//fixed size bloom filter of participant names: mightContain is never false for a name that was added,
+//and true for one that was not with about the configured probability while at most capacity names are in;
+//bits are set with compare-and-set so the event listener can add while request threads read, without a lock.
+//how many names are in is estimated from the bits set, which counts every distinct name and never a repeated one
+public class ParticipantBloomFilter {
+    private final AtomicLongArray words;
+    private final int bits;
+    private final int hashes;
+    private final int capacity;
+    private final AtomicInteger bitsSet = new AtomicInteger();
+    //bits expected to be set once capacity distinct names are in, m * (1 - e^(-k * n / m))
+    private final int fullBits;
+
+    public ParticipantBloomFilter(int capacity, double falsePositiveRate) {
+        this.capacity = Math.max(1, capacity);
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-this.capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this.bits = (int) Math.min(Integer.MAX_VALUE - 64, Math.max(64, optimalBits));
+        this.words = new AtomicLongArray((bits + 63) >>> 6);
+        this.hashes = Math.max(1, (int) Math.round((double) bits / this.capacity * ln2));
+        this.fullBits = (int) (bits * -Math.expm1(-(double) hashes * this.capacity / bits));
+    }
+
+    public void add(String participant) {
+        long hash = hash(participant);
+        for (int i = 0; i < hashes; i++) {
+            int bit = bit(hash, i);
+            long mask = 1L << bit;
+            int word = bit >>> 6;
+            long current = words.get(word);
+            while ((current & mask) == 0) {
+                if (words.compareAndSet(word, current, current | mask)) {
+                    bitsSet.incrementAndGet();
+                    break;
+                }
+                current = words.get(word);
+            }
+        }
+    }
+
+    public boolean mightContain(String participant) {
+        long hash = hash(participant);
+        for (int i = 0; i < hashes; i++) {
+            int bit = bit(hash, i);
+            if ((words.get(bit >>> 6) & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    //past its capacity the false positive rate climbs, the owner rebuilds the filter larger then
+    public boolean isFull() {
+        return bitsSet.get() > fullBits;
+    }
+
+    //distinct names added, estimated from the bits set: n = -(m / k) * ln(1 - x / m)
+    public int approximateSize() {
+        int set = bitsSet.get();
+        if (set >= bits) return Integer.MAX_VALUE;
+        return (int) Math.round(-(double) bits / hashes * Math.log1p(-(double) set / bits));
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    //double hashing: the i-th index is h1 + i * h2, both halves of one 64 bit hash
+    private int bit(long hash, int i) {
+        int combined = (int) hash + i * (int) (hash >>> 32);
+        return (combined & Integer.MAX_VALUE) % bits;
+    }
+
+    //64 bit FNV-1a over the chars with the murmur3 finalizer, so short names still spread over all bits
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,64 @@
+package com.freightfox.chatapp.Repository;
+
+import com.freightfox.chatapp.config.RetentionProperties;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+//fills the participant to rooms index and the read cursors from every room's participant set, for memberships
+//created before the room list summary existed; joins and leaves on other nodes meanwhile are harmless,
+//both writes are idempotent and a cursor that is already set is kept
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "chatapp.membership", name = "rebuild-index", havingValue = "true")
+public class ParticipantIndexRebuild {
+    //participants per SSCAN page and pipeline
+    private static final int PAGE = 1000;
+
+    private final ChatRoomRepository repo;
+    private final RetentionProperties retention;
+    private final ObjectProvider<KeyLayoutMigration> keyLayout;
+
+    public ParticipantIndexRebuild(ChatRoomRepository repo, RetentionProperties retention,
+                                   ObjectProvider<KeyLayoutMigration> keyLayout) {
+        this.repo = repo;
+        this.retention = retention;
+        this.keyLayout = keyLayout;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        //participant sets are read under the current key layout
+        keyLayout.ifAvailable(migration -> { });
+        String cursor = "0";
+        int rooms = 0;
+        long memberships = 0;
+        do {
+            ChatRoomRepository.ScanPage page = repo.scanKeys(cursor, RoomKeys.META_PATTERN, retention.getScanCount());
+            for (String key : page.keys()) {
+                String roomId = RoomKeys.roomIdOfMeta(key);
+                if (roomId == null) continue;
+                memberships += rebuildRoom(roomId);
+                rooms++;
+            }
+            cursor = page.cursor();
+        } while (!"0".equals(cursor));
+        log.info("Indexed {} memberships of {} rooms for the room list summary", memberships, rooms);
+    }
+
+    //returns the number of participants indexed
+    public long rebuildRoom(String roomId) {
+        String cursor = "0";
+        long indexed = 0;
+        do {
+            ChatRoomRepository.ParticipantPage page = repo.getParticipants(roomId, cursor, PAGE);
+            repo.indexParticipants(roomId, page.participants());
+            repo.initReadCursors(roomId, page.participants());
+            indexed += page.participants().size();
+            cursor = page.cursor();
+        } while (!"0".equals(cursor));
+        return indexed;
+    }
+}
@@ -0,0 +1,5 @@
+package com.freightfox.chatapp.Repository;
+
+//a message as stored in redis: its json with the id in front, passed on to clients without decoding
+public record RawMessage(long id, byte[] json) {
+}
@@ -0,0 +1,219 @@
+package com.freightfox.chatapp.Repository;
+
+import com.freightfox.chatapp.config.RecentCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+//ring of the newest messages per room, seeded from redis on the first read and kept current by
+//the pub/sub listener; ids must arrive without gaps, otherwise the room is dropped and seeded again.
+//a ring only answers reads it holds enough messages for, or any read while it still holds the whole room
+@Component
+public class RecentMessageCache {
+    //rough per message object overhead on top of the json bytes, only used for the byte bound
+    private static final int MESSAGE_OVERHEAD = 48;
+    private static final int VERSION_STRIPES = 256;
+
+    private final RecentCacheProperties properties;
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    //bumped by every invalidation of a room hashing to the stripe, a seed read that raced with one is not installed;
+    //striped so a busy node does not throw away every seed whenever some other room changes
+    private final AtomicLongArray invalidations = new AtomicLongArray(VERSION_STRIPES);
+    private final Counter hits;
+    private final Counter misses;
+
+    public RecentMessageCache(RecentCacheProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        this.hits = registry.counter("chat.recent.cache.requests", "result", "hit");
+        this.misses = registry.counter("chat.recent.cache.requests", "result", "miss");
+        registry.gauge("chat.recent.cache.bytes", Tags.empty(), totalBytes, AtomicLong::get);
+    }
+
+    //true when a read of this size may be answered from a ring
+    public boolean covers(int limit) {
+        return properties.isEnabled() && limit <= properties.getMessagesPerRoom();
+    }
+
+    public int messagesPerRoom() {
+        return properties.getMessagesPerRoom();
+    }
+
+    //this will answer from the room's ring, null means the caller has to read redis and seed it
+    //currentSeq is only asked when the ring has not heard from pub/sub for maxStaleness
+    public List<RawMessage> lastMessages(String roomId, int limit, Function<String, Long> currentSeq) {
+        if (!covers(limit)) return null;
+        Ring ring = rings.get(roomId);
+        long now = System.nanoTime();
+        if (ring == null || now - ring.seededAt > properties.getTtl().toNanos()) {
+            if (ring != null) drop(roomId, ring);
+            misses.increment();
+            return null;
+        }
+        if (!ring.serves(limit)) {
+            misses.increment();
+            return null;
+        }
+        if (now - ring.verifiedAt > properties.getMaxStaleness().toNanos()) {
+            Long seq = currentSeq.apply(roomId);
+            if (seq == null || seq != ring.lastId()) {
+                drop(roomId, ring);
+                misses.increment();
+                return null;
+            }
+            ring.verifiedAt = System.nanoTime();
+        }
+        ring.lastAccess = now;
+        hits.increment();
+        return ring.last(limit);
+    }
+
+    public long version(String roomId) {
+        return invalidations.get(stripe(roomId));
+    }
+
+    //this will install the newest messages read from redis as the room's ring, unless the room changed meanwhile;
+    //wholeRoom says redis holds nothing older, maxMessages is the room's retention limit with 0 for none
+    public void seed(String roomId, List<RawMessage> messages, boolean wholeRoom, long maxMessages, long version) {
+        if (!properties.isEnabled()) return;
+        Ring ring = new Ring(properties.getMessagesPerRoom(), maxMessages, wholeRoom);
+        for (RawMessage message : messages) {
+            ring.append(message);
+        }
+        synchronized (this) {
+            if (invalidations.get(stripe(roomId)) != version) return;
+            Ring previous = rings.put(roomId, ring);
+            if (previous != null) totalBytes.addAndGet(-previous.bytes());
+            totalBytes.addAndGet(ring.bytes());
+        }
+        evictIfNeeded();
+    }
+
+    //this will append a published message to the room's ring if this node caches the room
+    public void append(String roomId, byte[] payload) {
+        Ring ring = rings.get(roomId);
+        if (ring == null) return;
+        long id = MessageEncoding.idOf(payload);
+        if (id == 0) return;
+        long lastId = ring.lastId();
+        if (id <= lastId) return;
+        if (lastId > 0 && id != lastId + 1) {
+            //a message went missing, most likely published before the subscription was active
+            drop(roomId, ring);
+            return;
+        }
+        totalBytes.addAndGet(ring.append(new RawMessage(id, payload)));
+        ring.verifiedAt = System.nanoTime();
+        evictIfNeeded();
+    }
+
+    //a local send makes the next read check redis, the pub/sub copy of the message may still be on its way
+    public void markStale(String roomId) {
+        Ring ring = rings.get(roomId);
+        if (ring != null) ring.verifiedAt = System.nanoTime() - properties.getMaxStaleness().toNanos() - 1;
+    }
+
+    public void invalidate(String roomId) {
+        synchronized (this) {
+            invalidations.incrementAndGet(stripe(roomId));
+            Ring ring = rings.remove(roomId);
+            if (ring != null) totalBytes.addAndGet(-ring.bytes());
+        }
+    }
+
+    private static int stripe(String roomId) {
+        return Math.floorMod(roomId.hashCode(), VERSION_STRIPES);
+    }
+
+    private synchronized void drop(String roomId, Ring ring) {
+        if (rings.remove(roomId, ring)) totalBytes.addAndGet(-ring.bytes());
+    }
+
+    //least recently read rooms go first, the scan only runs while a bound is exceeded
+    private void evictIfNeeded() {
+        long maxBytes = properties.getMaxBytes().toBytes();
+        while (rings.size() > properties.getMaxRooms() || totalBytes.get() > maxBytes) {
+            String coldest = null;
+            Ring coldestRing = null;
+            for (Map.Entry<String, Ring> entry : rings.entrySet()) {
+                if (coldestRing == null || entry.getValue().lastAccess - coldestRing.lastAccess < 0) {
+                    coldest = entry.getKey();
+                    coldestRing = entry.getValue();
+                }
+            }
+            if (coldestRing == null) return;
+            drop(coldest, coldestRing);
+        }
+    }
+
+    private static final class Ring {
+        private final int capacity;
+        //redis trims the room to the same size, so a full ring still is the whole room
+        private final boolean retentionBound;
+        private final ArrayDeque<RawMessage> messages;
+        private final long seededAt = System.nanoTime();
+        private volatile long verifiedAt = seededAt;
+        private volatile long lastAccess = seededAt;
+        private long bytes;
+        private long lastId;
+        private boolean complete;
+
+        private Ring(int messagesPerRoom, long maxMessages, boolean complete) {
+            this.retentionBound = maxMessages > 0 && maxMessages <= messagesPerRoom;
+            this.capacity = retentionBound ? (int) maxMessages : messagesPerRoom;
+            this.messages = new ArrayDeque<>(capacity);
+            this.complete = complete;
+        }
+
+        //returns the change in bytes held
+        private synchronized long append(RawMessage message) {
+            long before = bytes;
+            if (messages.size() == capacity) {
+                bytes -= size(messages.pollFirst());
+                complete &= retentionBound;
+            }
+            messages.addLast(message);
+            bytes += size(message);
+            lastId = message.id();
+            return bytes - before;
+        }
+
+        private synchronized boolean serves(int limit) {
+            return complete || limit <= messages.size();
+        }
+
+        private static long size(RawMessage message) {
+            return MESSAGE_OVERHEAD + message.json().length;
+        }
+
+        private synchronized List<RawMessage> last(int limit) {
+            List<RawMessage> page = new ArrayList<>(Math.min(limit, messages.size()));
+            Iterator<RawMessage> newestFirst = messages.descendingIterator();
+            while (page.size() < limit && newestFirst.hasNext()) {
+                page.add(newestFirst.next());
+            }
+            Collections.reverse(page);
+            return page;
+        }
+
+        private synchronized long lastId() {
+            return lastId;
+        }
+
+        private synchronized long bytes() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.freightfox.chatapp.Repository;
+
+import com.freightfox.chatapp.config.RetentionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//walks the room keyspace one SCAN page per tick and trims history past each room's max age,
+//the message cap is already enforced on append so this mostly matters for rooms that went quiet;
+//with search on it also drops the index entries of messages trimmed by either limit
+@Slf4j
+@Component
+public class RetentionCompactor {
+    //upper bound on trim calls per room and tick so one huge backlog cannot starve the others
+    private static final int MAX_CHUNKS_PER_ROOM = 10;
+
+    private final ChatRoomRepository repo;
+    private final RetentionProperties properties;
+    private final SearchIndex search;
+    private final Counter reclaimedBytes;
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("retention-compactor-"));
+    private String cursor = "0";
+
+    public RetentionCompactor(ChatRoomRepository repo, RetentionProperties properties, SearchIndex search,
+                              MeterRegistry registry) {
+        this.repo = repo;
+        this.properties = properties;
+        this.search = search;
+        this.reclaimedBytes = ChatRoomRepository.reclaimedCounter(registry, "max-age");
+    }
+
+    @PostConstruct
+    public void start() {
+        //runs even with a zero default because rooms can carry their own max age
+        long interval = properties.getCompactInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::compactSafely, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    //this will trim the rooms of the next SCAN page, the cursor carries over to the next tick
+    public void compactNextPage() {
+        ChatRoomRepository.ScanPage page = repo.scanKeys(cursor, RoomKeys.META_PATTERN, properties.getScanCount());
+        long now = System.currentTimeMillis();
+        for (String key : page.keys()) {
+            String roomId = RoomKeys.roomIdOfMeta(key);
+            if (roomId == null) continue;
+            for (int chunk = 0; chunk < MAX_CHUNKS_PER_ROOM; chunk++) {
+                long[] trimmed = repo.trimExpired(roomId, now);
+                reclaimedBytes.increment(trimmed[1]);
+                if (trimmed[0] < properties.getTrimChunk()) break;
+            }
+            if (search.isEnabled()) repo.pruneSearchIndex(roomId);
+        }
+        cursor = page.cursor();
+    }
+
+    private void compactSafely() {
+        try {
+            compactNextPage();
+        } catch (RuntimeException e) {
+            log.warn("Retention pass failed, retrying next tick", e);
+        }
+    }
+}
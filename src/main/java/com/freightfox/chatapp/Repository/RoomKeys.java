@@ -0,0 +1,88 @@
+package com.freightfox.chatapp.Repository;
+
+//every key and channel of a room carries the room id as hash tag, so redis cluster puts them all in one slot
+//and the per room scripts (and SPUBLISH from inside them) stay legal there
+public final class RoomKeys {
+    public static final String PREFIX = "chatroom:{";
+    public static final String META_SUFFIX = "}:meta";
+    public static final String MESSAGES_SUFFIX = "}:messages";
+    //SCAN MATCH patterns for the meta hash and the history list of every room
+    public static final String META_PATTERN = PREFIX + "*" + META_SUFFIX;
+    public static final String MESSAGES_PATTERN = PREFIX + "*" + MESSAGES_SUFFIX;
+
+    private RoomKeys() {
+    }
+
+    public static String meta(String roomId) {
+        return PREFIX + roomId + META_SUFFIX;
+    }
+
+    public static String participants(String roomId) {
+        return PREFIX + roomId + "}:participants";
+    }
+
+    public static String messages(String roomId) {
+        return PREFIX + roomId + MESSAGES_SUFFIX;
+    }
+
+    public static String stream(String roomId) {
+        return PREFIX + roomId + "}:stream";
+    }
+
+    //prefix of the room's search index keys, the scripts add the room's createdAt so a recreated room starts empty
+    public static String search(String roomId) {
+        return PREFIX + roomId + "}:search:";
+    }
+
+    //last message id each participant has read, field per participant as stored in the participant set
+    public static String reads(String roomId) {
+        return PREFIX + roomId + "}:reads";
+    }
+
+    //reverse index of the rooms a participant is in; it is keyed by participant, so on a cluster it lives in
+    //another slot than the rooms and is written next to the room scripts rather than from inside them
+    public static String participantRooms(String participant) {
+        return "chatapp:participant-rooms:" + participant;
+    }
+
+    //highest outbox sequence stored per producing node, so replayed outbox messages are not stored twice
+    public static String outbox(String roomId) {
+        return PREFIX + roomId + "}:outbox";
+    }
+
+    //held by the node archiving the room's history, see HistoryArchiver
+    public static String archiveLock(String roomId) {
+        return PREFIX + roomId + "}:archiving";
+    }
+
+    public static String channel(String roomId) {
+        return PREFIX + roomId + "}";
+    }
+
+    //braces in a room id would move the hash tag, so such ids are refused when a room is created
+    public static boolean isValidRoomId(String roomId) {
+        return roomId.indexOf('{') < 0 && roomId.indexOf('}') < 0;
+    }
+
+    //room id of a meta key, null for any other key
+    public static String roomIdOfMeta(String key) {
+        return unwrap(key, META_SUFFIX);
+    }
+
+    //room id of a history list key, null for any other key
+    public static String roomIdOfMessages(String key) {
+        return unwrap(key, MESSAGES_SUFFIX);
+    }
+
+    //room id of a room channel, null for any other channel
+    public static String roomIdOfChannel(String channel) {
+        return unwrap(channel, "}");
+    }
+
+    private static String unwrap(String name, String suffix) {
+        if (!name.startsWith(PREFIX) || !name.endsWith(suffix) || name.length() < PREFIX.length() + suffix.length()) {
+            return null;
+        }
+        return name.substring(PREFIX.length(), name.length() - suffix.length());
+    }
+}
@@ -0,0 +1,6 @@
+package com.freightfox.chatapp.Repository;
+
+//the fields of chatroom:{roomId}:meta a request may need, null for rooms created before the field existed
+//archived is the newest id moved to the archive, null until the archiver first moved messages of the room
+public record RoomMeta(Long createdAt, Long maxMessages, Long maxAgeMs, Long archived) {
+}
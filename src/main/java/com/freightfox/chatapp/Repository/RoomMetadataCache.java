@@ -0,0 +1,146 @@
+package com.freightfox.chatapp.Repository;
+
+import com.freightfox.chatapp.config.RoomCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+//in-process cache in front of the room meta hash, rooms are created rarely and looked up on every request;
+//missing rooms are cached too so 404 floods stay off redis, changes are announced on chatapp:control.
+//lookups take no lock: a hit only marks its entry as referenced, and eviction is a clock sweep over the entries
+//in insertion order that gives every referenced entry a second round before dropping it
+@Component
+public class RoomMetadataCache {
+    public static final String CONTROL_CHANNEL = "chatapp:control";
+    private static final int VERSION_STRIPES = 256;
+
+    private final RoomCacheProperties properties;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    //cached entries in insertion order, ones invalidated or expired meanwhile are skipped when the sweep reaches them
+    private final ConcurrentLinkedQueue<Entry> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger clockSize = new AtomicInteger();
+    private final ReentrantLock sweep = new ReentrantLock();
+    //bumped by every invalidation of a room hashing to the stripe, a load that raced with one is not cached
+    private final AtomicLongArray invalidations = new AtomicLongArray(VERSION_STRIPES);
+    private final Counter hits;
+    private final Counter misses;
+
+    public RoomMetadataCache(RoomCacheProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        this.hits = registry.counter("chat.room.cache.requests", "result", "hit");
+        this.misses = registry.counter("chat.room.cache.requests", "result", "miss");
+        registry.gauge("chat.room.cache.hit.ratio", Tags.empty(), this, RoomMetadataCache::hitRatio);
+    }
+
+    //this will answer from the cache while the entry is fresh, otherwise load the room and remember the result
+    public Optional<RoomMeta> get(String roomId, Function<String, Optional<RoomMeta>> loader) {
+        if (!properties.isEnabled()) return loader.apply(roomId);
+        Entry entry = fresh(roomId);
+        if (entry != null) {
+            hits.increment();
+            return entry.meta;
+        }
+        misses.increment();
+        int stripe = stripe(roomId);
+        long version = invalidations.get(stripe);
+        Optional<RoomMeta> meta = loader.apply(roomId);
+        long ttl = (meta.isPresent() ? properties.getTtl() : properties.getNegativeTtl()).toNanos();
+        Entry loaded = new Entry(roomId, meta, System.nanoTime() + ttl);
+        //invalidate runs in the same key's compute, so it either happens before this check or after the entry is in
+        Entry cached = entries.compute(roomId, (id, previous) -> invalidations.get(stripe) == version ? loaded : previous);
+        if (cached == loaded) {
+            clock.offer(loaded);
+            clockSize.incrementAndGet();
+            evictIfNeeded();
+        }
+        return meta;
+    }
+
+    //true only when the room is cached as missing, unknown rooms are left for redis to decide
+    public boolean isKnownMissing(String roomId) {
+        if (!properties.isEnabled()) return false;
+        Entry entry = fresh(roomId);
+        if (entry == null || entry.meta.isPresent()) return false;
+        hits.increment();
+        return true;
+    }
+
+    public void invalidate(String roomId) {
+        int stripe = stripe(roomId);
+        entries.compute(roomId, (id, entry) -> {
+            invalidations.incrementAndGet(stripe);
+            return null;
+        });
+    }
+
+    public double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private Entry fresh(String roomId) {
+        Entry entry = entries.get(roomId);
+        if (entry == null) return null;
+        if (entry.expiresAt - System.nanoTime() > 0) {
+            //only written when it changes, so hot rooms do not bounce the cache line between cores
+            if (!entry.referenced) entry.referenced = true;
+            return entry;
+        }
+        entries.remove(roomId, entry);
+        return null;
+    }
+
+    //runs beyond maxSize rooms, or once the clock holds twice that many entries and most of them are stale;
+    //one caller sweeps at a time and the others go on, they find the cache back in bounds shortly after
+    private void evictIfNeeded() {
+        int maxSize = properties.getMaxSize();
+        if (entries.size() <= maxSize && clockSize.get() <= 2 * maxSize) return;
+        if (!sweep.tryLock()) return;
+        try {
+            //two rounds are enough to find an unreferenced entry, the bound also ends a pass that only cleans up
+            for (int budget = 2 * clockSize.get(); budget > 0; budget--) {
+                boolean overSize = entries.size() > maxSize;
+                if (!overSize && clockSize.get() <= maxSize) return;
+                Entry entry = clock.poll();
+                if (entry == null) return;
+                clockSize.decrementAndGet();
+                if (entries.get(entry.roomId) != entry) continue;
+                if (overSize && !entry.referenced) {
+                    entries.remove(entry.roomId, entry);
+                    continue;
+                }
+                if (overSize) entry.referenced = false;
+                clock.offer(entry);
+                clockSize.incrementAndGet();
+            }
+        } finally {
+            sweep.unlock();
+        }
+    }
+
+    private static int stripe(String roomId) {
+        return Math.floorMod(roomId.hashCode(), VERSION_STRIPES);
+    }
+
+    private static final class Entry {
+        private final String roomId;
+        private final Optional<RoomMeta> meta;
+        private final long expiresAt;
+        private volatile boolean referenced;
+
+        private Entry(String roomId, Optional<RoomMeta> meta, long expiresAt) {
+            this.roomId = roomId;
+            this.meta = meta;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.freightfox.chatapp.Repository;
+
+import com.freightfox.chatapp.config.SearchProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//what goes into the per room search index and how a query maps onto it; the index itself is written by the send
+//and search_index scripts: a time index, one sorted set of message ids per word and per participant,
+//and the search doc of every message so its entries can be removed again
+@Slf4j
+@Component
+public class SearchIndex {
+    //keys unlinked per round trip when the index of a deleted room is dropped
+    private static final int DROP_BATCH = 500;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final SearchProperties properties;
+    private final ExecutorService cleaner =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("search-cleaner-"));
+
+    public SearchIndex(RedisTemplate<String, Object> redisTemplate, SearchProperties properties) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    //lower cased runs of letters and digits of at least two characters, each word once, in order of appearance
+    public Set<String> tokens(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) return tokens;
+        StringBuilder token = new StringBuilder();
+        int length = 0;
+        for (int i = 0; i <= text.length(); ) {
+            int original = i < text.length() ? text.codePointAt(i) : ' ';
+            int codePoint = Character.toLowerCase(original);
+            i += Character.charCount(original);
+            if (Character.isLetterOrDigit(codePoint)) {
+                //the rest of an overlong word is dropped
+                if (length++ < properties.getMaxTokenLength()) token.appendCodePoint(codePoint);
+                continue;
+            }
+            if (length >= 2) {
+                tokens.add(token.toString());
+                if (tokens.size() == properties.getMaxTokensPerMessage()) break;
+            }
+            token.setLength(0);
+            length = 0;
+        }
+        return tokens;
+    }
+
+    //the search doc the scripts index a message by: its words separated by spaces, a newline, then the participant
+    public byte[] doc(String participant, String text) {
+        return (String.join(" ", tokens(text)) + "\n" + participant).getBytes(StandardCharsets.UTF_8);
+    }
+
+    //posting sets a query has to intersect, empty when it names neither a word nor a participant
+    public List<String> postings(String query, String participant) {
+        List<String> postings = new ArrayList<>();
+        for (String token : tokens(query)) {
+            postings.add("t:" + token);
+        }
+        if (participant != null && !participant.isBlank()) postings.add("p:" + participant);
+        return postings;
+    }
+
+    //this will remove the index of a deleted room in the background, key by key from its docs hash;
+    //generation is the room's createdAt, a room created again under the same name indexes under its new one
+    public void drop(String roomId, String generation) {
+        String prefix = RoomKeys.search(roomId) + generation + ":";
+        cleaner.execute(() -> {
+            try {
+                dropKeys(prefix);
+            } catch (RuntimeException e) {
+                log.warn("Could not drop the search index {}*, its keys stay until removed by hand", prefix, e);
+            }
+        });
+    }
+
+    private void dropKeys(String prefix) {
+        byte[] docs = RedisSerializer.string().serialize(prefix + "docs");
+        Set<String> keys = new LinkedHashSet<>();
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            try (Cursor<Map.Entry<byte[], byte[]>> entries =
+                         connection.hashCommands().hScan(docs, ScanOptions.scanOptions().count(DROP_BATCH).build())) {
+                while (entries.hasNext()) {
+                    String doc = new String(entries.next().getValue(), StandardCharsets.UTF_8);
+                    int newline = doc.indexOf('\n');
+                    keys.add(prefix + "p:" + doc.substring(newline + 1));
+                    for (String token : doc.substring(0, newline).split(" ")) {
+                        if (!token.isEmpty()) keys.add(prefix + "t:" + token);
+                    }
+                    if (keys.size() >= DROP_BATCH) {
+                        redisTemplate.unlink(keys);
+                        keys.clear();
+                    }
+                }
+            }
+            return null;
+        });
+        keys.add(prefix + "time");
+        keys.add(prefix + "docs");
+        redisTemplate.unlink(keys);
+    }
+
+    @PreDestroy
+    public void stop() {
+        cleaner.shutdown();
+    }
+}
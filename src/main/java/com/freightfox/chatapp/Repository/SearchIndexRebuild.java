@@ -0,0 +1,98 @@
+package com.freightfox.chatapp.Repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.config.HistoryProperties;
+import com.freightfox.chatapp.config.RetentionProperties;
+import com.freightfox.chatapp.config.SearchProperties;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//builds the search index from the stored history of every room, for rooms written before search was enabled;
+//it runs before this node serves requests and can run while other nodes keep sending, since indexing a message
+//twice is harmless and new messages are indexed by the send script anyway
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "chatapp.search", name = "rebuild", havingValue = "true")
+public class SearchIndexRebuild {
+    private final ChatRoomRepository repo;
+    private final ObjectMapper objectMapper;
+    private final SearchProperties search;
+    private final RetentionProperties retention;
+    private final HistoryProperties history;
+    private final ObjectProvider<KeyLayoutMigration> keyLayout;
+    private final ObjectProvider<ListToStreamMigration> listToStream;
+
+    public SearchIndexRebuild(ChatRoomRepository repo, ObjectMapper objectMapper, SearchProperties search,
+                              RetentionProperties retention, HistoryProperties history,
+                              ObjectProvider<KeyLayoutMigration> keyLayout,
+                              ObjectProvider<ListToStreamMigration> listToStream) {
+        this.repo = repo;
+        this.objectMapper = objectMapper;
+        this.search = search;
+        this.retention = retention;
+        this.history = history;
+        this.keyLayout = keyLayout;
+        this.listToStream = listToStream;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        //history is read under the current key layout and engine, so both migrations have to be done first
+        keyLayout.ifAvailable(migration -> { });
+        listToStream.ifAvailable(migration -> { });
+        if (!search.isEnabled()) {
+            log.warn("chatapp.search.rebuild is ignored unless chatapp.search.enabled is true");
+            return;
+        }
+        String cursor = "0";
+        int rooms = 0;
+        long messages = 0;
+        do {
+            ChatRoomRepository.ScanPage page = repo.scanKeys(cursor, RoomKeys.META_PATTERN, retention.getScanCount());
+            for (String key : page.keys()) {
+                String roomId = RoomKeys.roomIdOfMeta(key);
+                if (roomId == null) continue;
+                messages += rebuildRoom(roomId);
+                rooms++;
+            }
+            cursor = page.cursor();
+        } while (!"0".equals(cursor));
+        log.info("Indexed {} messages of {} rooms for search", messages, rooms);
+    }
+
+    //this will index the room's history oldest first, one history page per script call
+    //returns the number of messages indexed
+    public long rebuildRoom(String roomId) {
+        long after = 0;
+        long indexed = 0;
+        while (true) {
+            List<RawMessage> page = repo.getMessagesAfter(roomId, after, history.getMaxPageSize());
+            if (page.isEmpty()) return indexed;
+            Map<Long, ChatMessage> byId = new LinkedHashMap<>();
+            for (RawMessage message : page) {
+                byId.put(message.id(), parse(message));
+            }
+            if (!repo.indexMessages(roomId, byId)) return indexed;
+            indexed += page.size();
+            after = page.get(page.size() - 1).id();
+        }
+    }
+
+    private ChatMessage parse(RawMessage message) {
+        try {
+            return objectMapper.readValue(message.json(), ChatMessage.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Stored message " + message.id() + " is not valid json", e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.freightfox.chatapp.Repository;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+
+//history as a redis stream, entry ids are 0-{message id} so cursors map straight to XRANGE bounds
+public class StreamMessageStore implements MessageStore {
+    private static final RedisScript<Long> SEND_SCRIPT =
+            LuaScripts.of("scripts/stream_send_message.lua", Long.class, LuaScripts.INDEX, LuaScripts.SEND);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> READ_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/stream_read_history.lua"), List.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TRIM_EXPIRED_SCRIPT =
+            LuaScripts.of("scripts/stream_trim_expired.lua", List.class, LuaScripts.TIMESTAMP);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ARCHIVE_TRIM_SCRIPT =
+            LuaScripts.of("scripts/stream_archive_trim.lua", List.class, LuaScripts.ARCHIVED);
+
+    @Override
+    public String messagesKey(String roomId) {
+        return RoomKeys.stream(roomId);
+    }
+
+    @Override
+    public RedisScript<Long> sendScript() {
+        return SEND_SCRIPT;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public RedisScript<List> readScript() {
+        return READ_SCRIPT;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public RedisScript<List> trimExpiredScript() {
+        return TRIM_EXPIRED_SCRIPT;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public RedisScript<List> archiveTrimScript() {
+        return ARCHIVE_TRIM_SCRIPT;
+    }
+}
@@ -0,0 +1,31 @@
+package com.freightfox.chatapp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//moving cold history out of redis into compressed segment files on disk, history reads stitch both together
+@Data
+@ConfigurationProperties("chatapp.archive")
+public class ArchiveProperties {
+    private boolean enabled = false;
+    //every node serving history reads of archived rooms needs the same directory, a shared volume with more than one
+    private String directory = "archive";
+    //messages older than this are archived
+    private Duration after = Duration.ofDays(7);
+    //the newest messages of a room always stay in redis, whatever their age
+    private long keepRecent = 1000;
+    //messages moved per read, append and trim round
+    private int chunk = 1000;
+    //raw message bytes compressed together into one block, the sparse index has one entry per block
+    private int blockSize = 64 * 1024;
+    //a segment file is sealed and a new one started once it is past this size
+    private long segmentSize = 64L * 1024 * 1024;
+    //pause between archiver passes, each pass handles one SCAN page of rooms
+    private Duration interval = Duration.ofSeconds(30);
+    //how long a node holds a room's archive lock, a room of a crashed archiver is picked up again after this
+    private Duration lockTimeout = Duration.ofMinutes(1);
+    //rooms whose segment files stay mapped on this node, the least recently read are unmapped first
+    private int openRooms = 1000;
+}
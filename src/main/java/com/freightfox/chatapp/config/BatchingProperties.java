@@ -0,0 +1,23 @@
+package com.freightfox.chatapp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+//settings for coalescing concurrent sends into pipelined multi-value writes
+@Data
+@ConfigurationProperties("chatapp.batching")
+public class BatchingProperties {
+    //when off every send runs its own script call
+    private boolean enabled = false;
+    //upper bound of messages flushed together, kept well under the lua unpack limit
+    private int maxBatchSize = 64;
+    //how long the first message of a batch waits for company
+    private Duration maxLinger = Duration.of(500, ChronoUnit.MICROS);
+    //sends beyond this many waiting messages are rejected with 503
+    private int queueCapacity = 10_000;
+    //how long a request waits for its batch to reach redis
+    private Duration responseTimeout = Duration.ofSeconds(5);
+}
@@ -0,0 +1,14 @@
+package com.freightfox.chatapp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+//limits for the bulk create and join endpoints
+@Data
+@ConfigurationProperties("chatapp.bulk")
+public class BulkProperties {
+    //items accepted per request, larger requests are rejected with 400
+    private int maxItems = 10000;
+    //script calls sent per pipeline, every pipeline is one round trip
+    private int batchSize = 500;
+}
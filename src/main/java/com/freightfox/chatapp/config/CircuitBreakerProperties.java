@@ -0,0 +1,20 @@
+package com.freightfox.chatapp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//settings for failing redis calls fast while redis is down or hanging instead of waiting out the client timeout
+@Data
+@ConfigurationProperties("chatapp.circuit-breaker")
+public class CircuitBreakerProperties {
+    //when off every call waits for redis, at most spring.data.redis.timeout
+    private boolean enabled = false;
+    //failed or slow calls in a row that open the breaker
+    private int failureThreshold = 5;
+    //a call taking longer than this counts as failed, also while it is still waiting for its reply
+    private Duration slowCall = Duration.ofSeconds(2);
+    //how long an open breaker refuses calls before it lets one trial call through
+    private Duration openFor = Duration.ofSeconds(5);
+}
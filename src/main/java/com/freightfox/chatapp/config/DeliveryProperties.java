@@ -0,0 +1,28 @@
+package com.freightfox.chatapp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//settings for pushing room messages to connected clients over server-sent events
+@Data
+@ConfigurationProperties("chatapp.delivery")
+public class DeliveryProperties {
+    //frames buffered per client before the slow consumer policy applies
+    private int bufferSize = 256;
+    private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DROP_OLDEST;
+    //threads writing buffered frames to client sockets
+    private int writerThreads = 32;
+    //a single write blocked longer than this evicts the client, its writer is replaced while it stays stuck
+    private Duration sendTimeout = Duration.ofSeconds(10);
+    //clients are expected to reconnect after this long
+    private Duration sessionTimeout = Duration.ofMinutes(30);
+
+    public enum SlowConsumerPolicy {
+        //discard the oldest buffered frame to make room for the new one
+        DROP_OLDEST,
+        //close the stream, the client reconnects and reloads history
+        DISCONNECT
+    }
+}
@@ -0,0 +1,12 @@
+package com.freightfox.chatapp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+//limits for history reads
+@Data
+@ConfigurationProperties("chatapp.history")
+public class HistoryProperties {
+    //larger limits are clamped so one request cannot pull a huge range
+    private int maxPageSize = 100;
+}
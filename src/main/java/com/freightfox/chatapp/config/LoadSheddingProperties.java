@@ -0,0 +1,20 @@
+package com.freightfox.chatapp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//settings for refusing all sends while redis or the pub/sub listener falls behind
+@Data
+@ConfigurationProperties("chatapp.load-shedding")
+public class LoadSheddingProperties {
+    //when off sends are only refused by the rate limits and the batching queue
+    private boolean enabled = false;
+    //mean time of the redis calls of one check interval from which sends are refused, 0 ignores latency
+    private Duration redisLatency = Duration.ofMillis(200);
+    //received messages waiting for the listener thread from which sends are refused, 0 ignores the queue
+    private int listenerQueue = 5000;
+    //how often both are looked at, sending resumes at the first check where both are below again
+    private Duration checkInterval = Duration.ofSeconds(1);
+}
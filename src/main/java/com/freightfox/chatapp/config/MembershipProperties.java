@@ -0,0 +1,25 @@
+package com.freightfox.chatapp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//settings for refusing messages from senders who never joined the room
+@Data
+@ConfigurationProperties("chatapp.membership")
+public class MembershipProperties {
+    //off keeps the old behaviour where anyone can send to any room
+    private boolean enforce = false;
+    //smallest number of participants a room filter is sized for, rooms are sized for twice their current size
+    private int expectedParticipants = 1000;
+    //share of non-members the filter lets through to the check in redis
+    private double falsePositiveRate = 0.01;
+    //rooms with a filter on this node, least recently used ones are dropped
+    private int maxRooms = 10000;
+    //filters are rebuilt from redis this often, which also recovers from membership events missed during a reconnect
+    private Duration rebuildAfter = Duration.ofMinutes(10);
+    //fill the participant to rooms index and read cursors from the participant sets on startup,
+    //for memberships created before the room list summary existed
+    private boolean rebuildIndex = false;
+}
@@ -0,0 +1,18 @@
+package com.freightfox.chatapp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//settings for the per room message rate gauges
+@Data
+@ConfigurationProperties("chatapp.metrics")
+public class MetricsProperties {
+    //rooms published as chat.pubsub.room.rate, the busiest first
+    private int topRooms = 10;
+    //rooms the heavy hitter sketch tracks at once, more gives exacter counts for the top rooms
+    private int topRoomsCapacity = 200;
+    //window the rates are counted over, the gauges are replaced at the end of each
+    private Duration rateWindow = Duration.ofSeconds(10);
+}
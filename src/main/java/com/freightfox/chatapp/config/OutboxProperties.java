@@ -0,0 +1,25 @@
+package com.freightfox.chatapp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//write-ahead outbox on local disk: a send is acknowledged once it is in the log and reaches redis in the background
+@Data
+@ConfigurationProperties("chatapp.outbox")
+public class OutboxProperties {
+    private boolean enabled = false;
+    //one directory per node, it must survive restarts since undelivered messages are replayed from it
+    private String directory = "outbox";
+    //size of one log segment file, a segment is deleted once every message in it reached redis
+    private long segmentSize = 64L * 1024 * 1024;
+    //messages waiting for redis from which sends are rejected with 503
+    private long maxDepth = 1_000_000;
+    //how long a send waits for the log to be forced to disk
+    private Duration syncTimeout = Duration.ofSeconds(1);
+    //messages written to redis per pipeline
+    private int drainBatchSize = 500;
+    //pause after a failed drain, unless the circuit breaker tells how long redis stays off limits
+    private Duration retryDelay = Duration.ofSeconds(1);
+}
@@ -0,0 +1,26 @@
+package com.freightfox.chatapp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//settings for how a node listens to room channels
+@Data
+@ConfigurationProperties("chatapp.pubsub")
+public class PubSubProperties {
+    private Mode mode = Mode.ROOM;
+    //how long a room stays subscribed after its last local listener left
+    private Duration unsubscribeDelay = Duration.ofSeconds(5);
+    //messages waiting for the listener thread, beyond this the oldest is dropped, see chat.pubsub.listener.rejected
+    private int listenerQueueCapacity = 10000;
+
+    public enum Mode {
+        //subscribe to chatroom:{roomId} only while this node has listeners for the room
+        ROOM,
+        //subscribe to chatroom:* and receive every room's traffic
+        PATTERN,
+        //like ROOM but with SPUBLISH/SSUBSCRIBE, on redis cluster a message then only travels within its shard
+        SHARDED
+    }
+}
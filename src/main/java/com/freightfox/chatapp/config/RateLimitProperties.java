@@ -0,0 +1,23 @@
+package com.freightfox.chatapp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//settings for the per room and per participant send limits
+@Data
+@ConfigurationProperties("chatapp.rate-limit")
+public class RateLimitProperties {
+    //when off every send is admitted
+    private boolean enabled = false;
+    //messages per second a room accepts across the cluster, and how many it takes at once after a quiet spell
+    private double roomRate = 100;
+    private int roomBurst = 200;
+    //messages per second one participant can send across all rooms, and his burst
+    private double participantRate = 5;
+    private int participantBurst = 20;
+    //how often this node adds its admitted sends to the shared counters and takes in those of the other nodes,
+    //between two syncs each node can let through up to one burst of what the others already used
+    private Duration syncInterval = Duration.ofSeconds(1);
+}
@@ -0,0 +1,23 @@
+package com.freightfox.chatapp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+//per node cache of the newest messages of active rooms, answers small history reads without redis
+@Data
+@ConfigurationProperties("chatapp.recent-cache")
+public class RecentCacheProperties {
+    private boolean enabled = true;
+    //messages kept per room, reads with a larger limit go to redis
+    private int messagesPerRoom = 50;
+    //rooms kept, the least recently read one is evicted beyond this or maxBytes
+    private int maxRooms = 1000;
+    private DataSize maxBytes = DataSize.ofMegabytes(64);
+    //a room that got no pub/sub message for this long checks its last id against redis before answering
+    private Duration maxStaleness = Duration.ofSeconds(1);
+    //rooms are reloaded from redis after this long, so entries dropped by retention do not linger
+    private Duration ttl = Duration.ofMinutes(5);
+}
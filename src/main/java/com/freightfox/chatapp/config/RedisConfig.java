@@ -2,17 +2,30 @@ package com.freightfox.chatapp.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.freightfox.chatapp.RedisMessage.MembershipEventListener;
+import com.freightfox.chatapp.RedisMessage.PubSubMetrics;
 import com.freightfox.chatapp.RedisMessage.RedisMessageSubscriber;
+import com.freightfox.chatapp.RedisMessage.RoomCacheInvalidationListener;
+import com.freightfox.chatapp.Repository.ListMessageStore;
+import com.freightfox.chatapp.Repository.MembershipFilter;
+import com.freightfox.chatapp.Repository.MessageStore;
+import com.freightfox.chatapp.Repository.RoomMetadataCache;
+import com.freightfox.chatapp.Repository.StreamMessageStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.listener.adapter.MessageListenerAdapter;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.util.concurrent.ThreadPoolExecutor;
+
 @Configuration
 public class RedisConfig {
     @Bean
@@ -24,9 +37,19 @@ public class RedisConfig {
         template.setConnectionFactory(connectionFactory);
         template.setKeySerializer(new StringRedisSerializer());
         template.setValueSerializer(new GenericJackson2JsonRedisSerializer(mapper));
+        //meta hash fields are read by lua scripts, so they must not use the jdk default serializer
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setHashValueSerializer(new GenericJackson2JsonRedisSerializer(mapper));
         return template;
     }
 
+    @Bean
+    public MessageStore messageStore(StorageProperties storageProperties) {
+        return storageProperties.getEngine() == StorageProperties.Engine.STREAM
+                ? new StreamMessageStore()
+                : new ListMessageStore();
+    }
+
     @Bean
     public MessageListenerAdapter messageListenerAdapter(RedisMessageSubscriber subscriber) {
         return new MessageListenerAdapter(subscriber);
@@ -34,10 +57,41 @@ public class RedisConfig {
 
     @Bean
     public RedisMessageListenerContainer container(RedisConnectionFactory connectionFactory,
-                                                   MessageListenerAdapter adapter) {
+                                                   RoomCacheInvalidationListener invalidationListener,
+                                                   MembershipEventListener membershipListener,
+                                                   MembershipProperties membershipProperties,
+                                                   ThreadPoolTaskExecutor redisListenerExecutor) {
         RedisMessageListenerContainer container = new RedisMessageListenerContainer();
         container.setConnectionFactory(connectionFactory);
-        container.addMessageListener(adapter, new PatternTopic("chatroom:*"));
+        container.setTaskExecutor(redisListenerExecutor);
+        container.addMessageListener(invalidationListener, new ChannelTopic(RoomMetadataCache.CONTROL_CHANNEL));
+        if (membershipProperties.isEnforce()) {
+            container.addMessageListener(membershipListener, new ChannelTopic(MembershipFilter.EVENTS_CHANNEL));
+        }
+        //chat channels are subscribed by RoomSubscriptionManager, their listener delivers to beans that need this container
         return container;
     }
+
+    //a single thread keeps every room's messages in publish order, the container's default starts a thread per
+    //message and can reorder them; listeners only queue frames for the writers so one thread keeps up.
+    //with the queue full the oldest waiting message is dropped and counted: the callers are lettuce's event loop
+    //threads, which must neither block nor run listeners themselves, and running it there would reorder the room
+    @Bean
+    public ThreadPoolTaskExecutor redisListenerExecutor(PubSubProperties pubSubProperties, PubSubMetrics pubSubMetrics,
+                                                        MeterRegistry registry) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(pubSubProperties.getListenerQueueCapacity());
+        executor.setThreadNamePrefix("redis-listener-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardOldestPolicy() {
+            @Override
+            public void rejectedExecution(Runnable task, ThreadPoolExecutor pool) {
+                if (!pool.isShutdown()) pubSubMetrics.rejected();
+                super.rejectedExecution(task, pool);
+            }
+        });
+        registry.gauge("chat.pubsub.listener.queue", Tags.empty(), executor, ThreadPoolTaskExecutor::getQueueSize);
+        return executor;
+    }
 }
@@ -0,0 +1,21 @@
+package com.freightfox.chatapp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//default history limits written into a room's meta hash when it is created, 0 disables a limit
+@Data
+@ConfigurationProperties("chatapp.retention")
+public class RetentionProperties {
+    //enforced on every append
+    private long maxMessages = 10_000;
+    //enforced by the background compactor
+    private Duration maxAge = Duration.ofDays(30);
+    //pause between compactor passes, each pass handles one SCAN page of rooms
+    private Duration compactInterval = Duration.ofSeconds(10);
+    private int scanCount = 100;
+    //history entries inspected per trim call, keeps each script short
+    private int trimChunk = 500;
+}
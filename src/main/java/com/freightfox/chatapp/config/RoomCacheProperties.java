@@ -0,0 +1,19 @@
+package com.freightfox.chatapp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+//node local cache of room metadata, entries are also dropped cluster wide when a room changes
+@Data
+@ConfigurationProperties("chatapp.room-cache")
+public class RoomCacheProperties {
+    private boolean enabled = true;
+    //rooms kept, beyond this the ones not looked up since the last eviction sweep are evicted
+    private int maxSize = 10_000;
+    //safety net for an invalidation lost while the pub/sub connection was down
+    private Duration ttl = Duration.ofSeconds(60);
+    //missing rooms are remembered for a shorter time, a room created meanwhile is announced anyway
+    private Duration negativeTtl = Duration.ofSeconds(5);
+}
@@ -0,0 +1,24 @@
+package com.freightfox.chatapp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+//settings for the per room search index over message text and participants
+@Data
+@ConfigurationProperties("chatapp.search")
+public class SearchProperties {
+    //when off nothing is indexed and the search endpoint answers 404
+    private boolean enabled = false;
+    //words of a message that are indexed, repeated words count once
+    private int maxTokensPerMessage = 32;
+    //longest word that is indexed, longer ones are cut to this many characters
+    private int maxTokenLength = 32;
+    //upper bound of the limit parameter
+    private int maxPageSize = 100;
+    //candidate messages one search request looks at, a query of only common words returns a cursor sooner
+    private int maxExamined = 10_000;
+    //index entries of trimmed messages removed per room and compactor pass
+    private int pruneChunk = 1000;
+    //index the stored history of every room on startup, for rooms written before the index was enabled
+    private boolean rebuild = false;
+}
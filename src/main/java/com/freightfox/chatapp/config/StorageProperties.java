@@ -0,0 +1,42 @@
+package com.freightfox.chatapp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+//selects the redis structure that holds room history and feeds live delivery
+@Data
+@ConfigurationProperties("chatapp.storage")
+public class StorageProperties {
+    private Engine engine = Engine.LIST;
+    //how long one XREAD waits for new entries before picking up newly tailed rooms
+    private Duration tailBlock = Duration.ofMillis(500);
+    //entries fetched per XREAD
+    private int tailBatch = 100;
+    //copy chatroom:{*}:messages lists into streams on startup, see ListToStreamMigration
+    private boolean migrateLists = false;
+    //list entries moved per script call by the migration
+    private int migrateChunk = 500;
+    //rename chatroom:meta:{roomId} style keys to the hash tagged layout on startup, see KeyLayoutMigration
+    private boolean migrateKeyLayout = true;
+    //format new messages are stored in, entries in any format stay readable
+    private Codec codec = Codec.JSON;
+    //binary message bodies from this size on are deflated, 0 turns compression off
+    private DataSize compressAbove = DataSize.ofBytes(512);
+
+    public enum Engine {
+        //history in chatroom:{roomId}:messages, live delivery over PUBLISH
+        LIST,
+        //history in chatroom:{roomId}:stream, live delivery by tailing the stream with XREAD BLOCK
+        STREAM
+    }
+
+    public enum Codec {
+        //the message json, history reads and live delivery pass the stored bytes on without decoding
+        JSON,
+        //compact binary entries, smaller in redis but turned into json once per read and per node on delivery
+        BINARY
+    }
+}
@@ -0,0 +1,18 @@
+-- KEYS[1] room meta hash, KEYS[2] room message list
+-- ARGV[1] id of the newest message already in the archive
+-- drops the entries up to that id from the head and records it as archived, safe to repeat with the same id
+-- returns {entries removed, bytes reclaimed, 1 when the room had nothing archived before}
+-- dropHead and markArchived come from lib/list_head.lua and lib/archived.lua, loaded in front of this script
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return {0, 0, 0}
+end
+local upTo = tonumber(ARGV[1])
+local trimmed = tonumber(redis.call('HGET', KEYS[1], 'trimmed')) or 0
+local removed = math.min(upTo - trimmed, redis.call('LLEN', KEYS[2]))
+local reclaimed = 0
+if removed > 0 then
+    reclaimed = dropHead(removed)
+else
+    removed = 0
+end
+return {removed, reclaimed, markArchived(upTo)}
@@ -0,0 +1,10 @@
+-- KEYS[1] room meta hash
+-- ARGV[1] control channel, ARGV[2] room id, ARGV[3] createdAt, ARGV[4] max messages, ARGV[5] max age ms
+-- returns 1 when the room was created and announced, 0 when it already existed;
+-- HSETNX on createdAt decides, so of two nodes creating the same room at once exactly one wins
+if redis.call('HSETNX', KEYS[1], 'createdAt', ARGV[3]) == 0 then
+    return 0
+end
+redis.call('HSET', KEYS[1], 'maxMessages', ARGV[4], 'maxAgeMs', ARGV[5])
+redis.call('PUBLISH', ARGV[1], ARGV[2])
+return 1
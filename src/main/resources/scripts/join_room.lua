@@ -0,0 +1,19 @@
+-- KEYS[1] room meta hash, KEYS[2] room participant set, KEYS[3] room read cursors
+-- ARGV[1] membership events channel, ARGV[2] room id, then the participants to add
+-- returns nil when the room does not exist, otherwise per participant 1 when it joined and 0 when it was already in;
+-- every participant that joined is announced as +{room id}\n{participant} so nodes can update their filters,
+-- and starts with everything sent so far read, so its unread count covers what arrives after it joined
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return false
+end
+local seq = redis.call('HGET', KEYS[1], 'seq') or 0
+local joined = {}
+for i = 3, #ARGV do
+    local added = redis.call('SADD', KEYS[2], ARGV[i])
+    if added == 1 then
+        redis.call('PUBLISH', ARGV[1], '+' .. ARGV[2] .. '\n' .. ARGV[i])
+        redis.call('HSETNX', KEYS[3], ARGV[i], seq)
+    end
+    joined[#joined + 1] = added
+end
+return joined
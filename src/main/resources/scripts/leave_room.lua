@@ -0,0 +1,13 @@
+-- KEYS[1] room meta hash, KEYS[2] room participant set, KEYS[3] room read cursors
+-- ARGV[1] membership events channel, ARGV[2] room id, ARGV[3] participant
+-- returns -1 when the room does not exist, otherwise 1 when the participant left and 0 when it was not in;
+-- a leave is announced as -{room id}\n{participant} and drops the participant's read cursor
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return -1
+end
+local removed = redis.call('SREM', KEYS[2], ARGV[3])
+if removed == 1 then
+    redis.call('PUBLISH', ARGV[1], '-' .. ARGV[2] .. '\n' .. ARGV[3])
+    redis.call('HDEL', KEYS[3], ARGV[3])
+end
+return removed
@@ -0,0 +1,10 @@
+-- shared by archive_trim.lua and stream_archive_trim.lua, put in front of them when they are loaded
+-- records upTo as the newest archived id of the room in KEYS[1], never moving it back;
+-- returns 1 when the room had nothing archived before, otherwise 0
+local function markArchived(upTo)
+    local previous = tonumber(redis.call('HGET', KEYS[1], 'archived'))
+    if previous == nil or previous < upTo then
+        redis.call('HSET', KEYS[1], 'archived', upTo)
+    end
+    return previous == nil and 1 or 0
+end
@@ -0,0 +1,14 @@
+-- shared by the send scripts and search_index.lua, put in front of them when they are loaded
+-- search index entry of one message, doc is 'token token ...\nparticipant': the id goes into the time index
+-- scored by the time it was stored, and into one sorted set per token and one for the participant, scored by itself;
+-- the doc is kept so the entries can be found again when the message is trimmed.
+-- these keys are not in KEYS, they carry the room's hash tag through the prefix and so live in the room's slot
+local function index(prefix, id, ms, doc)
+    local newline = string.find(doc, '\n', 1, true)
+    redis.call('ZADD', prefix .. 'time', ms, id)
+    redis.call('HSET', prefix .. 'docs', id, doc)
+    redis.call('ZADD', prefix .. 'p:' .. string.sub(doc, newline + 1), id, id)
+    for token in string.gmatch(string.sub(doc, 1, newline - 1), '%S+') do
+        redis.call('ZADD', prefix .. 't:' .. token, id, id)
+    end
+end
@@ -0,0 +1,12 @@
+-- shared by the list engine's send, trim and archive scripts, put in front of them when they are loaded
+-- removes count entries from the head of the list KEYS[2] and adds them to meta.trimmed in KEYS[1],
+-- which keeps id = trimmed + 1 + list index true; returns the bytes they held
+local function dropHead(count)
+    local removed = redis.call('LPOP', KEYS[2], count)
+    local bytes = 0
+    for _, entry in ipairs(removed) do
+        bytes = bytes + #entry
+    end
+    redis.call('HINCRBY', KEYS[1], 'trimmed', #removed)
+    return bytes
+end
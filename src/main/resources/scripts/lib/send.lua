@@ -0,0 +1,76 @@
+-- shared by send_message.lua and stream_send_message.lua, put in front of them after lib/index.lua;
+-- both take KEYS[1] room meta hash, KEYS[3] room participant set and the same ARGV:
+-- ARGV[1] pub/sub channel, ARGV[2] PUBLISH or SPUBLISH, ARGV[3] default max messages,
+-- ARGV[4] number of senders that must be participants, ARGV[5] search index prefix or '' when not indexing,
+-- ARGV[6] room outbox hash or '' for a direct send, ARGV[7] id of the outbox producer replaying the messages,
+-- then those senders, then each encoded message without its id, then when indexing one search doc per message,
+-- then when replaying from an outbox the outbox sequence of each message
+--
+-- json entries become {"id":N,...}, binary ones (first byte 0xC1) get the id right after that byte
+local function withId(id, entry)
+    if string.byte(entry, 1) == 193 then
+        return string.sub(entry, 1, 1) .. id .. string.sub(entry, 2)
+    end
+    return '{"id":' .. id .. ',' .. string.sub(entry, 2)
+end
+-- -1 when the room does not exist, -2 when one of the senders is not a participant, nil when the send may go on
+local function refusal(senders)
+    if redis.call('EXISTS', KEYS[1]) == 0 then
+        return -1
+    end
+    for i = 8, 7 + senders do
+        if redis.call('SISMEMBER', KEYS[3], ARGV[i]) == 0 then
+            return -2
+        end
+    end
+    return nil
+end
+-- where the messages are in ARGV and which of them to store: all of a direct send, and of a replay from
+-- an outbox those past the highest outbox sequence the room already stored from that producer, so a batch
+-- drained again after a crash or a lost reply is not stored twice; an outbox drains in order, one number is enough
+local function messages(senders)
+    local per = 1
+    if ARGV[5] ~= '' then
+        per = per + 1
+    end
+    if ARGV[6] ~= '' then
+        per = per + 1
+    end
+    local first = 8 + senders
+    local count = (#ARGV - first + 1) / per
+    local last = first + count - 1
+    local keep = {}
+    if ARGV[6] == '' then
+        for k = 1, count do
+            keep[k] = k
+        end
+        return first, last, keep
+    end
+    local seqs = last
+    if ARGV[5] ~= '' then
+        seqs = last + count
+    end
+    local applied = tonumber(redis.call('HGET', ARGV[6], ARGV[7])) or 0
+    for k = 1, count do
+        if tonumber(ARGV[seqs + k]) > applied then
+            keep[#keep + 1] = k
+        end
+    end
+    if #keep > 0 then
+        redis.call('HSET', ARGV[6], ARGV[7], ARGV[seqs + count])
+    end
+    return first, last, keep
+end
+-- indexes the stored messages, which got the ids up to seq, when the send carries search docs;
+-- the index of a room lives under its createdAt, so a deleted and recreated room starts with an empty one
+local function indexStored(seq, last, keep)
+    if ARGV[5] == '' then
+        return
+    end
+    local prefix = ARGV[5] .. (redis.call('HGET', KEYS[1], 'createdAt') or '0') .. ':'
+    local now = redis.call('TIME')
+    local ms = now[1] * 1000 + math.floor(now[2] / 1000)
+    for i = 1, #keep do
+        index(prefix, seq - #keep + i, ms, ARGV[last + keep[i]])
+    end
+end
@@ -0,0 +1,16 @@
+-- shared by trim_expired.lua and stream_trim_expired.lua, put in front of them when they are loaded
+-- epoch millis of an entry, binary entries carry it as digits after the id
+local function timestampMillis(entry)
+    if string.byte(entry, 1) == 193 then
+        return tonumber(string.match(entry, '^\193%d*:(%d+):'))
+    end
+    local message = cjson.decode(entry)
+    if type(message) == 'string' then
+        -- entries written before the byte path are json strings holding the message json
+        message = cjson.decode(message)
+    end
+    if type(message.timestamp) ~= 'number' then
+        return nil
+    end
+    return message.timestamp * 1000
+end
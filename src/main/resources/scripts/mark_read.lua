@@ -0,0 +1,22 @@
+-- KEYS[1] room meta hash, KEYS[2] room participant set, KEYS[3] room read cursors
+-- ARGV[1] participant, ARGV[2] id of the newest message read, '' for everything sent so far
+-- returns {-1} when the room does not exist, {-2} when the participant is not in it,
+-- otherwise {read cursor, newest id}; the cursor only moves forward and never past the newest id
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return {-1}
+end
+if redis.call('SISMEMBER', KEYS[2], ARGV[1]) == 0 then
+    return {-2}
+end
+local seq = tonumber(redis.call('HGET', KEYS[1], 'seq')) or 0
+local read = seq
+if ARGV[2] ~= '' then
+    read = math.min(tonumber(ARGV[2]), seq)
+end
+local current = tonumber(redis.call('HGET', KEYS[3], ARGV[1])) or 0
+if read > current then
+    redis.call('HSET', KEYS[3], ARGV[1], read)
+else
+    read = current
+end
+return {read, seq}
@@ -0,0 +1,12 @@
+-- KEYS[1..4] legacy meta, participants, history list and stream of a room, KEYS[5..8] the hash tagged ones
+-- renames whichever legacy keys exist, returns 1 when the room was moved and 0 when the tagged meta
+-- already exists, the legacy keys are left untouched then
+if redis.call('EXISTS', KEYS[5]) == 1 then
+    return 0
+end
+for i = 1, 4 do
+    if redis.call('EXISTS', KEYS[i]) == 1 then
+        redis.call('RENAME', KEYS[i], KEYS[i + 4])
+    end
+end
+return 1
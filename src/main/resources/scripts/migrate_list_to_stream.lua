@@ -0,0 +1,32 @@
+-- KEYS[1] room meta hash, KEYS[2] legacy history list, KEYS[3] room stream
+-- ARGV[1] entries moved per call
+-- moves entries from the head of the list to the stream under their existing ids,
+-- returns the entries still left in the list or -1 when the room does not exist
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return -1
+end
+local trimmed = tonumber(redis.call('HGET', KEYS[1], 'trimmed')) or 0
+local length = redis.call('LLEN', KEYS[2])
+if not redis.call('HGET', KEYS[1], 'seq') then
+    redis.call('HSET', KEYS[1], 'seq', trimmed + length)
+end
+if length == 0 then
+    return 0
+end
+local newest = 0
+local top = redis.call('XREVRANGE', KEYS[3], '+', '-', 'COUNT', 1)
+if #top > 0 then
+    newest = tonumber(string.sub(top[1][1], 3))
+end
+local entries = redis.call('LRANGE', KEYS[2], 0, tonumber(ARGV[1]) - 1)
+for i, entry in ipairs(entries) do
+    local id = trimmed + i
+    -- XADD refuses ids at or below the newest one, those are already in the stream
+    if id > newest then
+        redis.call('XADD', KEYS[3], '0-' .. id, 'm', entry)
+    end
+end
+-- the list keeps its positional ids consistent in case it is read before the move finishes
+redis.call('LTRIM', KEYS[2], #entries, -1)
+redis.call('HINCRBY', KEYS[1], 'trimmed', #entries)
+return length - #entries
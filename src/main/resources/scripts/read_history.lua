@@ -0,0 +1,32 @@
+-- KEYS[1] room meta hash, KEYS[2] room message list
+-- ARGV[1] mode: last, before or after; ARGV[2] cursor id; ARGV[3] page size
+-- returns {id of the first entry, entries...} in chronological order
+--
+-- ids map straight to list positions (see send_message.lua), so a page is one LRANGE
+-- addressed from whichever end of the list is closer, never a walk over the history
+local trimmed = tonumber(redis.call('HGET', KEYS[1], 'trimmed')) or 0
+local length = redis.call('LLEN', KEYS[2])
+local firstId, lastId = trimmed + 1, trimmed + length
+local limit = tonumber(ARGV[3])
+local from, to
+if ARGV[1] == 'before' then
+    to = math.min(tonumber(ARGV[2]) - 1, lastId)
+    from = to - limit + 1
+elseif ARGV[1] == 'after' then
+    from = math.max(tonumber(ARGV[2]) + 1, firstId)
+    to = from + limit - 1
+else
+    to = lastId
+    from = to - limit + 1
+end
+from, to = math.max(from, firstId), math.min(to, lastId)
+if from > to then
+    return {from}
+end
+local startIndex, endIndex = from - firstId, to - firstId
+if startIndex > length - 1 - endIndex then
+    startIndex, endIndex = startIndex - length, endIndex - length
+end
+local page = redis.call('LRANGE', KEYS[2], startIndex, endIndex)
+table.insert(page, 1, from)
+return page
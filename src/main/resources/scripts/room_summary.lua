@@ -0,0 +1,24 @@
+-- KEYS[1] room meta hash, KEYS[2] room history (list or stream), KEYS[3] room participant set,
+-- KEYS[4] room read cursors
+-- ARGV[1] participant
+-- returns {-1} when the room does not exist, {-2} when the participant is not in it, otherwise
+-- {newest id, createdAt, participant count, read cursor, newest archived id or -1, newest entry or nil};
+-- every part is a single lookup, so a summary costs the same whatever the size of the room
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return {-1}
+end
+if redis.call('SISMEMBER', KEYS[3], ARGV[1]) == 0 then
+    return {-2}
+end
+local meta = redis.call('HMGET', KEYS[1], 'seq', 'createdAt', 'archived')
+local last = false
+if redis.call('TYPE', KEYS[2]).ok == 'stream' then
+    local newest = redis.call('XREVRANGE', KEYS[2], '+', '-', 'COUNT', 1)[1]
+    if newest then
+        last = newest[2][2]
+    end
+else
+    last = redis.call('LINDEX', KEYS[2], -1)
+end
+return {tonumber(meta[1]) or 0, tonumber(meta[2]) or 0, redis.call('SCARD', KEYS[3]),
+        tonumber(redis.call('HGET', KEYS[4], ARGV[1])) or 0, tonumber(meta[3]) or -1, last}
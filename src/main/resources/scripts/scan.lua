@@ -0,0 +1,3 @@
+-- ARGV[1] cursor, ARGV[2] match pattern, ARGV[3] count hint
+-- one SCAN page as {next cursor, keys}, lets callers resume a scan across scheduler ticks
+return redis.call('SCAN', ARGV[1], 'MATCH', ARGV[2], 'COUNT', ARGV[3])
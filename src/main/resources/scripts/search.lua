@@ -0,0 +1,106 @@
+-- KEYS[1] room meta hash, KEYS[2] room history (list or stream)
+-- ARGV[1] search index prefix, ARGV[2] from epoch millis or '-inf', ARGV[3] to epoch millis or '+inf',
+-- ARGV[4] only ids below this one or 0, ARGV[5] most results, ARGV[6] most candidate ids examined,
+-- then the posting sets that must all hold a message: 't:{token}' and 'p:{participant}'
+-- returns {cursor, id, entry, id, entry, ...} newest first; cursor is the before id of the next page or 0 at the end
+--
+-- from/to become an id range with two lookups in the time index, then only the posting set with the fewest ids
+-- in that range is walked (newest first) and each candidate is checked in the others with ZSCORE,
+-- so the work depends on the rarest term and the page size, not on the length of the history
+local prefix = ARGV[1] .. (redis.call('HGET', KEYS[1], 'createdAt') or '0') .. ':'
+local isList = redis.call('TYPE', KEYS[2])['ok'] == 'list'
+local trimmed = tonumber(redis.call('HGET', KEYS[1], 'trimmed')) or 0
+-- index entries below the oldest stored message belong to trimmed messages
+local low, high
+if isList then
+    low = trimmed + 1
+    high = trimmed + redis.call('LLEN', KEYS[2])
+else
+    local oldest = redis.call('XRANGE', KEYS[2], '-', '+', 'COUNT', 1)
+    local newest = redis.call('XREVRANGE', KEYS[2], '+', '-', 'COUNT', 1)
+    if #oldest == 0 then
+        return {0}
+    end
+    low, high = tonumber(string.sub(oldest[1][1], 3)), tonumber(string.sub(newest[1][1], 3))
+end
+if tonumber(ARGV[4]) > 0 then
+    high = math.min(high, tonumber(ARGV[4]) - 1)
+end
+-- ids are handed out in the order messages are stored, so the stored time maps to an id range
+local time = prefix .. 'time'
+if ARGV[2] ~= '-inf' then
+    local first = redis.call('ZRANGEBYSCORE', time, ARGV[2], '+inf', 'LIMIT', 0, 1)
+    if #first == 0 then
+        return {0}
+    end
+    low = math.max(low, tonumber(first[1]))
+end
+if ARGV[3] ~= '+inf' then
+    local last = redis.call('ZREVRANGEBYSCORE', time, ARGV[3], '-inf', 'LIMIT', 0, 1)
+    if #last == 0 then
+        return {0}
+    end
+    high = math.min(high, tonumber(last[1]))
+end
+if low > high then
+    return {0}
+end
+local postings, smallest, smallestCount = {}, nil, nil
+for i = 7, #ARGV do
+    local key = prefix .. ARGV[i]
+    local count = redis.call('ZCOUNT', key, low, high)
+    if count == 0 then
+        return {0}
+    end
+    postings[#postings + 1] = key
+    if smallestCount == nil or count < smallestCount then
+        smallest, smallestCount = key, count
+    end
+end
+local limit, budget = tonumber(ARGV[5]), tonumber(ARGV[6])
+local found, examined, cursor = {}, 0, high
+while #found < limit and examined < budget and cursor >= low do
+    local candidates = redis.call('ZREVRANGEBYSCORE', smallest, cursor, low, 'LIMIT', 0, math.min(100, budget - examined))
+    if #candidates == 0 then
+        cursor = low - 1
+        break
+    end
+    for _, member in ipairs(candidates) do
+        local matches = true
+        for _, key in ipairs(postings) do
+            if key ~= smallest and not redis.call('ZSCORE', key, member) then
+                matches = false
+                break
+            end
+        end
+        if matches then
+            found[#found + 1] = tonumber(member)
+        end
+        examined = examined + 1
+        cursor = tonumber(member) - 1
+        if #found == limit then
+            break
+        end
+    end
+end
+local result = {cursor >= low and cursor + 1 or 0}
+local length = isList and redis.call('LLEN', KEYS[2]) or 0
+for _, id in ipairs(found) do
+    local entry
+    if isList then
+        -- addressed from whichever end of the list is closer, like read_history.lua
+        local position = id - trimmed - 1
+        if position > length / 2 then
+            position = position - length
+        end
+        entry = redis.call('LINDEX', KEYS[2], position)
+    else
+        local record = redis.call('XRANGE', KEYS[2], '0-' .. id, '0-' .. id)
+        entry = #record > 0 and record[1][2][2]
+    end
+    if entry then
+        result[#result + 1] = id
+        result[#result + 1] = entry
+    end
+end
+return result
@@ -0,0 +1,16 @@
+-- KEYS[1] room meta hash
+-- ARGV[1] search index prefix, then id, epoch millis and search doc of every message to index
+-- returns -1 when the room does not exist, otherwise the number of messages indexed
+--
+-- used by the rebuild, which indexes stored messages by their own timestamp; adding a message twice is harmless
+-- index comes from lib/index.lua, loaded in front of this script
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return -1
+end
+local prefix = ARGV[1] .. (redis.call('HGET', KEYS[1], 'createdAt') or '0') .. ':'
+local count = 0
+for i = 2, #ARGV, 3 do
+    index(prefix, ARGV[i], ARGV[i + 1], ARGV[i + 2])
+    count = count + 1
+end
+return count
@@ -0,0 +1,38 @@
+-- KEYS[1] room meta hash, KEYS[2] room history (list or stream)
+-- ARGV[1] search index prefix, ARGV[2] most messages to remove
+-- returns the number of trimmed messages whose index entries were removed
+--
+-- walks the time index from its oldest entry and stops at the first message still in the history
+local prefix = ARGV[1] .. (redis.call('HGET', KEYS[1], 'createdAt') or '0') .. ':'
+local low
+if redis.call('TYPE', KEYS[2])['ok'] == 'list' then
+    low = (tonumber(redis.call('HGET', KEYS[1], 'trimmed')) or 0) + 1
+else
+    local oldest = redis.call('XRANGE', KEYS[2], '-', '+', 'COUNT', 1)
+    low = #oldest > 0 and tonumber(string.sub(oldest[1][1], 3)) or (tonumber(redis.call('HGET', KEYS[1], 'seq')) or 0) + 1
+end
+local time, docs = prefix .. 'time', prefix .. 'docs'
+local limit, removed = tonumber(ARGV[2]), 0
+while removed < limit do
+    local oldest = redis.call('ZRANGE', time, 0, math.min(99, limit - removed - 1))
+    if #oldest == 0 then
+        return removed
+    end
+    for _, member in ipairs(oldest) do
+        if tonumber(member) >= low then
+            return removed
+        end
+        local doc = redis.call('HGET', docs, member)
+        if doc then
+            local newline = string.find(doc, '\n', 1, true)
+            redis.call('ZREM', prefix .. 'p:' .. string.sub(doc, newline + 1), member)
+            for token in string.gmatch(string.sub(doc, 1, newline - 1), '%S+') do
+                redis.call('ZREM', prefix .. 't:' .. token, member)
+            end
+            redis.call('HDEL', docs, member)
+        end
+        redis.call('ZREM', time, member)
+        removed = removed + 1
+    end
+end
+return removed
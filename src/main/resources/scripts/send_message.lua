@@ -0,0 +1,38 @@
+-- KEYS[1] room meta hash, KEYS[2] room message list, KEYS[3] room participant set
+-- ARGV as described in lib/send.lua, which is loaded in front of this script with lib/index.lua and lib/list_head.lua
+-- returns -1 when the room does not exist, -2 when a sender is not a participant,
+-- otherwise the bytes trimmed to honour maxMessages
+--
+-- message ids are positions: id = trimmed + 1 + list index, where meta.trimmed counts entries
+-- ever removed from the head and meta.seq is the last id handed out;
+-- the id is put in front of the message and the same bytes are stored and published
+local senders = tonumber(ARGV[4])
+local refused = refusal(senders)
+if refused then
+    return refused
+end
+local seq = tonumber(redis.call('HGET', KEYS[1], 'seq'))
+if seq == nil then
+    -- rooms written before ids existed: continue numbering after the entries already stored
+    seq = (tonumber(redis.call('HGET', KEYS[1], 'trimmed')) or 0) + redis.call('LLEN', KEYS[2])
+end
+local first, last, keep = messages(senders)
+if #keep == 0 then
+    return 0
+end
+local entries = {}
+for _, k in ipairs(keep) do
+    seq = seq + 1
+    entries[#entries + 1] = withId(seq, ARGV[first + k - 1])
+end
+local length = redis.call('RPUSH', KEYS[2], unpack(entries))
+for _, entry in ipairs(entries) do
+    redis.call(ARGV[2], ARGV[1], entry)
+end
+redis.call('HSET', KEYS[1], 'seq', seq)
+indexStored(seq, last, keep)
+local maxMessages = tonumber(redis.call('HGET', KEYS[1], 'maxMessages')) or tonumber(ARGV[3])
+if maxMessages > 0 and length > maxMessages then
+    return dropHead(length - maxMessages)
+end
+return 0
@@ -0,0 +1,3 @@
+-- KEYS[1] set, ARGV[1] cursor, ARGV[2] count hint
+-- one SSCAN page as {next cursor, members}, lets clients page through a large set across requests
+return redis.call('SSCAN', KEYS[1], ARGV[1], 'COUNT', ARGV[2])
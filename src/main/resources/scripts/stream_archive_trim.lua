@@ -0,0 +1,18 @@
+-- KEYS[1] room meta hash, KEYS[2] room stream
+-- ARGV[1] id of the newest message already in the archive
+-- drops the entries up to that id from the head and records it as archived, safe to repeat with the same id
+-- returns {entries removed, bytes reclaimed, 1 when the room had nothing archived before}
+-- markArchived comes from lib/archived.lua, loaded in front of this script
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return {0, 0, 0}
+end
+local upTo = tonumber(ARGV[1])
+local removed, reclaimed = 0, 0
+for _, record in ipairs(redis.call('XRANGE', KEYS[2], '-', '0-' .. upTo)) do
+    removed = removed + 1
+    reclaimed = reclaimed + #record[2][2]
+end
+if removed > 0 then
+    redis.call('XTRIM', KEYS[2], 'MINID', '0-' .. (upTo + 1))
+end
+return {removed, reclaimed, markArchived(upTo)}
@@ -0,0 +1,27 @@
+-- KEYS[1] room meta hash, KEYS[2] room stream
+-- ARGV[1] mode: last, before or after; ARGV[2] cursor id; ARGV[3] page size
+-- returns {id of the first entry, entries...} in chronological order, like read_history.lua
+local cursor, limit = tonumber(ARGV[2]), tonumber(ARGV[3])
+local records
+if ARGV[1] == 'after' then
+    records = redis.call('XRANGE', KEYS[2], '0-' .. (cursor + 1), '+', 'COUNT', limit)
+else
+    if ARGV[1] == 'before' and cursor <= 1 then
+        return {cursor}
+    end
+    local upper = ARGV[1] == 'before' and ('0-' .. (cursor - 1)) or '+'
+    local newestFirst = redis.call('XREVRANGE', KEYS[2], upper, '-', 'COUNT', limit)
+    records = {}
+    for i = #newestFirst, 1, -1 do
+        records[#records + 1] = newestFirst[i]
+    end
+end
+if #records == 0 then
+    return {cursor}
+end
+local page = {tonumber(string.sub(records[1][1], 3))}
+for _, record in ipairs(records) do
+    -- fields are {'m', entry}
+    page[#page + 1] = record[2][2]
+end
+return page
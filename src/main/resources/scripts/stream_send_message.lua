@@ -0,0 +1,37 @@
+-- KEYS[1] room meta hash, KEYS[2] room stream, KEYS[3] room participant set
+-- ARGV as described in lib/send.lua, which is loaded in front of this script together with lib/index.lua
+-- returns -1 when the room does not exist, -2 when a sender is not a participant,
+-- otherwise 0 since MAXLEN ~ does not report what it freed
+--
+-- entries are added as 0-{message id} holding the json with the id in front;
+-- nothing is published, nodes tail the stream instead
+local senders = tonumber(ARGV[4])
+local refused = refusal(senders)
+if refused then
+    return refused
+end
+local seq = tonumber(redis.call('HGET', KEYS[1], 'seq'))
+if seq == nil then
+    seq = 0
+    local top = redis.call('XREVRANGE', KEYS[2], '+', '-', 'COUNT', 1)
+    if #top > 0 then
+        seq = tonumber(string.sub(top[1][1], 3))
+    end
+end
+local maxMessages = tonumber(redis.call('HGET', KEYS[1], 'maxMessages')) or tonumber(ARGV[3])
+local first, last, keep = messages(senders)
+if #keep == 0 then
+    return 0
+end
+for _, k in ipairs(keep) do
+    seq = seq + 1
+    local entry = withId(seq, ARGV[first + k - 1])
+    if maxMessages > 0 then
+        redis.call('XADD', KEYS[2], 'MAXLEN', '~', maxMessages, '0-' .. seq, 'm', entry)
+    else
+        redis.call('XADD', KEYS[2], '0-' .. seq, 'm', entry)
+    end
+end
+redis.call('HSET', KEYS[1], 'seq', seq)
+indexStored(seq, last, keep)
+return 0
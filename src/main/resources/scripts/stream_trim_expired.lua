@@ -0,0 +1,24 @@
+-- KEYS[1] room meta hash, KEYS[2] room stream
+-- ARGV[1] now in epoch millis, ARGV[2] default max age millis, ARGV[3] max entries inspected
+-- removes entries older than maxAgeMs from the head, returns {entries removed, bytes reclaimed}
+-- timestampMillis comes from lib/timestamp.lua, loaded in front of this script
+local maxAge = tonumber(redis.call('HGET', KEYS[1], 'maxAgeMs')) or tonumber(ARGV[2])
+if maxAge <= 0 then
+    return {0, 0}
+end
+local cutoff = tonumber(ARGV[1]) - maxAge
+local removed, reclaimed, lastExpired = 0, 0, nil
+for _, record in ipairs(redis.call('XRANGE', KEYS[2], '-', '+', 'COUNT', tonumber(ARGV[3]))) do
+    local entry = record[2][2]
+    local millis = timestampMillis(entry)
+    if millis == nil or millis >= cutoff then
+        break
+    end
+    removed = removed + 1
+    reclaimed = reclaimed + #entry
+    lastExpired = tonumber(string.sub(record[1], 3))
+end
+if removed > 0 then
+    redis.call('XTRIM', KEYS[2], 'MINID', '0-' .. (lastExpired + 1))
+end
+return {removed, reclaimed}
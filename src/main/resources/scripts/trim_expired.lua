@@ -0,0 +1,22 @@
+-- KEYS[1] room meta hash, KEYS[2] room message list
+-- ARGV[1] now in epoch millis, ARGV[2] default max age millis, ARGV[3] max entries inspected
+-- removes entries older than maxAgeMs from the head, returns {entries removed, bytes reclaimed}
+-- timestampMillis and dropHead come from lib/timestamp.lua and lib/list_head.lua, loaded in front of this script
+local maxAge = tonumber(redis.call('HGET', KEYS[1], 'maxAgeMs')) or tonumber(ARGV[2])
+if maxAge <= 0 then
+    return {0, 0}
+end
+local cutoff = tonumber(ARGV[1]) - maxAge
+local removed, reclaimed = 0, 0
+for _, entry in ipairs(redis.call('LRANGE', KEYS[2], 0, tonumber(ARGV[3]) - 1)) do
+    local millis = timestampMillis(entry)
+    if millis == nil or millis >= cutoff then
+        break
+    end
+    removed = removed + 1
+    reclaimed = reclaimed + #entry
+end
+if removed > 0 then
+    dropHead(removed)
+end
+return {removed, reclaimed}
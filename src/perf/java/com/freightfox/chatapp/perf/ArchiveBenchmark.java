@@ -0,0 +1,130 @@
+package com.freightfox.chatapp.perf;
+
+import com.freightfox.chatapp.Archive.HistoryArchiver;
+import com.freightfox.chatapp.Archive.MessageArchive;
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import com.freightfox.chatapp.Repository.ListMessageStore;
+import com.freightfox.chatapp.Repository.MessageCodecs;
+import com.freightfox.chatapp.Repository.RawMessage;
+import com.freightfox.chatapp.config.ArchiveProperties;
+import com.freightfox.chatapp.config.RecentCacheProperties;
+import com.freightfox.chatapp.config.RetentionProperties;
+import com.freightfox.chatapp.config.SearchProperties;
+import com.freightfox.chatapp.config.StorageProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+//a room whose history is all older than chatapp.archive.after except the newest keepRecent messages;
+//setup prints redis used_memory before and after archiving and the archive's size on disk,
+//the benchmarks compare a page served by redis with pages served from, or stitched across, the archive
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArchiveBenchmark {
+    private static final String ROOM = "archived";
+    private static final int PAGE = 50;
+    private static final long KEEP_RECENT = 1000;
+
+    @Param({"100000", "1000000"})
+    public int history;
+
+    private LocalRedis redis;
+    private ChatRoomRepository repo;
+    private MessageArchive archive;
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        redis = LocalRedis.start();
+        redis.flushAll();
+        directory = Files.createTempDirectory("chat-archive");
+        ArchiveProperties properties = new ArchiveProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(directory.toString());
+        properties.setKeepRecent(KEEP_RECENT);
+        RetentionProperties retention = new RetentionProperties();
+        retention.setMaxMessages(0);
+        retention.setMaxAge(Duration.ZERO);
+        archive = new MessageArchive(properties);
+        repo = redis.repository(new ListMessageStore(), new MessageCodecs(new StorageProperties()), retention,
+                new RecentCacheProperties(), new SearchProperties(), archive);
+        repo.createRoom(ROOM);
+
+        Instant old = Instant.now().minus(Duration.ofDays(30));
+        List<ChatMessage> batch = new ArrayList<>();
+        for (int i = 0; i < history; i++) {
+            ChatMessage message = new ChatMessage();
+            message.setParticipant("user" + (i % 100));
+            message.setMessage("message " + i + " about shipment " + (i % 977) + ", the truck is on its way");
+            message.setTimestamp(old);
+            batch.add(message);
+            if (batch.size() == 1000) {
+                repo.sendMessages(Map.of(ROOM, batch));
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) repo.sendMessages(Map.of(ROOM, batch));
+
+        long before = redis.usedMemory();
+        HistoryArchiver archiver = new HistoryArchiver(repo, archive, properties, retention, new SimpleMeterRegistry());
+        long moved;
+        do {
+            moved = archiver.archiveRoom(ROOM, System.currentTimeMillis());
+        } while (moved > 0);
+        long after = redis.usedMemory();
+        System.out.printf("%nredis used_memory %d MB -> %d MB for %d messages, archive %d MB on disk%n",
+                before >> 20, after >> 20, history, directoryBytes() >> 20);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        archive.stop();
+        redis.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    //the newest page, still in redis
+    @Benchmark
+    public List<RawMessage> lastPage() {
+        return repo.getLastMessages(ROOM, PAGE);
+    }
+
+    //a page anywhere in the archived part, one block or two inflated
+    @Benchmark
+    public List<RawMessage> archivedPage() {
+        long beforeId = ThreadLocalRandom.current().nextLong(PAGE + 1, history - KEEP_RECENT);
+        return repo.getMessagesBefore(ROOM, beforeId, PAGE);
+    }
+
+    //a page starting at the end of the archive and going on in redis
+    @Benchmark
+    public List<RawMessage> stitchedPage() {
+        return repo.getMessagesAfter(ROOM, history - KEEP_RECENT - PAGE / 2, PAGE);
+    }
+
+    private long directoryBytes() throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.freightfox.chatapp.perf;
+
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import com.freightfox.chatapp.Repository.ListMessageStore;
+import com.freightfox.chatapp.Repository.RawMessage;
+import com.freightfox.chatapp.Repository.StreamMessageStore;
+import com.freightfox.chatapp.config.RecentCacheProperties;
+import com.freightfox.chatapp.config.RetentionProperties;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//cursor page latency at different depths of a 1M message room for both storage engines, should stay flat
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryPagingBenchmark {
+    private static final String ROOM = "deep";
+    private static final int HISTORY = 1_000_000;
+    private static final int PAGE = 50;
+
+    //how many messages behind the newest one the cursor points
+    @Param({"1000", "100000", "1000000"})
+    public int offset;
+
+    @Param({"list", "stream"})
+    public String engine;
+
+    private LocalRedis redis;
+    private ChatRoomRepository repo;
+    private long cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        redis = LocalRedis.start();
+        RetentionProperties retention = new RetentionProperties();
+        retention.setMaxMessages(0);
+        repo = redis.repository("stream".equals(engine) ? new StreamMessageStore() : new ListMessageStore(),
+                retention, new RecentCacheProperties());
+        repo.createRoom(ROOM);
+
+        List<ChatMessage> batch = new ArrayList<>();
+        for (int i = 0; i < HISTORY; i++) {
+            ChatMessage message = new ChatMessage();
+            message.setParticipant("user" + (i % 100));
+            message.setMessage("history message " + i);
+            batch.add(message);
+            if (batch.size() == 1000) {
+                repo.sendMessages(Map.of(ROOM, batch));
+                batch = new ArrayList<>();
+            }
+        }
+        //the oldest message has id 1, so this cursor sits offset messages back from the newest
+        cursor = HISTORY - offset + PAGE + 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        redis.close();
+    }
+
+    @Benchmark
+    public List<RawMessage> pageBefore() {
+        return repo.getMessagesBefore(ROOM, cursor, PAGE);
+    }
+}
@@ -0,0 +1,59 @@
+package com.freightfox.chatapp.perf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//every recorded latency is kept, sorted once at the end, so the high percentiles are exact rather than bucketed
+public final class Latencies {
+    private final String name;
+    private final List<long[]> chunks = new ArrayList<>();
+    private long[] current = new long[1 << 16];
+    private int size;
+    private long[] sorted;
+
+    public Latencies(String name) {
+        this.name = name;
+    }
+
+    public synchronized void add(long nanos) {
+        if (size == current.length) {
+            chunks.add(current);
+            current = new long[current.length];
+            size = 0;
+        }
+        current[size++] = nanos;
+        sorted = null;
+    }
+
+    public synchronized long count() {
+        return (long) chunks.size() * current.length + size;
+    }
+
+    public synchronized double percentileMillis(double quantile) {
+        long[] all = sorted();
+        if (all.length == 0) return 0;
+        int index = (int) Math.min(all.length - 1, Math.ceil(quantile * all.length) - 1);
+        return all[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    public void print(double seconds) {
+        System.out.printf("%-8s %9.0f ops/s  p50 %7.2fms  p99 %7.2fms  p99.9 %7.2fms  max %7.2fms  (%d samples)%n",
+                name, count() / seconds, percentileMillis(0.50), percentileMillis(0.99), percentileMillis(0.999),
+                percentileMillis(1.0), count());
+    }
+
+    private long[] sorted() {
+        if (sorted != null) return sorted;
+        long[] all = new long[(int) count()];
+        int position = 0;
+        for (long[] chunk : chunks) {
+            System.arraycopy(chunk, 0, all, position, chunk.length);
+            position += chunk.length;
+        }
+        System.arraycopy(current, 0, all, position, size);
+        Arrays.sort(all);
+        sorted = all;
+        return all;
+    }
+}
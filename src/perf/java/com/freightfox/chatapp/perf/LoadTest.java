@@ -0,0 +1,84 @@
+package com.freightfox.chatapp.perf;
+
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+//closed-loop load against a running node: every client sends a message and reads the last 10 back, over and over.
+//clients run on virtual threads so 10k of them cost next to nothing here and the server is what gets measured;
+//run it once against a node with spring.threads.virtual.enabled=false and once with true to compare
+//usage: LoadTest [baseUrl] [clients] [seconds] [rooms]
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+        int rooms = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(new VirtualThreadTaskExecutor("load-http-"))
+                .build();
+        String roomsUrl = baseUrl + "/api/chatapp/chatrooms";
+        for (int room = 0; room < rooms; room++) {
+            //409 for rooms left over from an earlier run is fine
+            http.send(post(roomsUrl, "{\"roomName\":\"load-" + room + "\"}"), HttpResponse.BodyHandlers.discarding());
+        }
+
+        Latencies sends = new Latencies("send");
+        Latencies reads = new Latencies("read");
+        AtomicLong errors = new AtomicLong();
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        CountDownLatch done = new CountDownLatch(clients);
+        VirtualThreadTaskExecutor executor = new VirtualThreadTaskExecutor("load-client-");
+        for (int client = 0; client < clients; client++) {
+            String roomUrl = roomsUrl + "/load-" + (client % rooms) + "/messages";
+            String body = "{\"participant\":\"client-" + client + "\",\"message\":\"load test message\"}";
+            executor.execute(() -> {
+                try {
+                    while (System.nanoTime() < deadline) {
+                        timed(http, post(roomUrl, body), sends, errors);
+                        timed(http, HttpRequest.newBuilder(URI.create(roomUrl + "?limit=10")).GET().build(), reads, errors);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+
+        System.out.printf("%d clients, %d rooms, %ds%n", clients, rooms, seconds);
+        sends.print(seconds);
+        reads.print(seconds);
+        System.out.printf("errors: %d%n", errors.get());
+    }
+
+    private static HttpRequest post(String url, String json) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private static void timed(HttpClient http, HttpRequest request, Latencies latencies, AtomicLong errors) {
+        long start = System.nanoTime();
+        try {
+            HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() >= 400) {
+                errors.incrementAndGet();
+                return;
+            }
+            latencies.add(System.nanoTime() - start);
+        } catch (Exception e) {
+            errors.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.freightfox.chatapp.perf;
+
+import com.freightfox.chatapp.Archive.MessageArchive;
+import com.freightfox.chatapp.RateLimit.RedisCircuitBreaker;
+import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import com.freightfox.chatapp.Repository.MembershipFilter;
+import com.freightfox.chatapp.Repository.MessageCodecs;
+import com.freightfox.chatapp.Repository.MessageStore;
+import com.freightfox.chatapp.Repository.RecentMessageCache;
+import com.freightfox.chatapp.Repository.RoomMetadataCache;
+import com.freightfox.chatapp.Repository.SearchIndex;
+import com.freightfox.chatapp.config.ArchiveProperties;
+import com.freightfox.chatapp.config.BulkProperties;
+import com.freightfox.chatapp.config.CircuitBreakerProperties;
+import com.freightfox.chatapp.config.HistoryProperties;
+import com.freightfox.chatapp.config.MembershipProperties;
+import com.freightfox.chatapp.config.PubSubProperties;
+import com.freightfox.chatapp.config.RecentCacheProperties;
+import com.freightfox.chatapp.config.RedisConfig;
+import com.freightfox.chatapp.config.RetentionProperties;
+import com.freightfox.chatapp.config.RoomCacheProperties;
+import com.freightfox.chatapp.config.SearchProperties;
+import com.freightfox.chatapp.config.StorageProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+//local redis stand-in for benchmarks: uses -Dredis.host/-Dredis.port when given,
+//otherwise starts a throwaway redis-server from the PATH on a free port
+public class LocalRedis implements AutoCloseable {
+    private final Process process;
+    private final LettuceConnectionFactory connectionFactory;
+    private final RedisTemplate<String, Object> template;
+
+    private LocalRedis(Process process, String host, int port) {
+        this.process = process;
+        this.connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(host, port));
+        this.connectionFactory.afterPropertiesSet();
+        this.connectionFactory.start();
+        this.template = new RedisConfig().redisTemplate(connectionFactory);
+        this.template.afterPropertiesSet();
+    }
+
+    public static LocalRedis start() throws IOException, InterruptedException {
+        String host = System.getProperty("redis.host");
+        if (host != null) {
+            return new LocalRedis(null, host, Integer.getInteger("redis.port", 6379));
+        }
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Process process = new ProcessBuilder("redis-server", "--port", String.valueOf(port),
+                "--save", "", "--appendonly", "no")
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        awaitPort(port);
+        return new LocalRedis(process, "localhost", port);
+    }
+
+    public LettuceConnectionFactory connectionFactory() {
+        return connectionFactory;
+    }
+
+    public RedisTemplate<String, Object> template() {
+        return template;
+    }
+
+    //repository wired the way the application does it, with default settings for everything not passed
+    public ChatRoomRepository repository(MessageStore store, RetentionProperties retention, RecentCacheProperties recentCache) {
+        return repository(store, new MessageCodecs(new StorageProperties()), retention, recentCache);
+    }
+
+    public ChatRoomRepository repository(MessageStore store, MessageCodecs codecs, RetentionProperties retention,
+                                         RecentCacheProperties recentCache) {
+        return repository(store, codecs, retention, recentCache, new SearchProperties());
+    }
+
+    public ChatRoomRepository repository(MessageStore store, MessageCodecs codecs, RetentionProperties retention,
+                                         RecentCacheProperties recentCache, SearchProperties search) {
+        return repository(store, codecs, retention, recentCache, search, new MessageArchive(new ArchiveProperties()));
+    }
+
+    public ChatRoomRepository repository(MessageStore store, MessageCodecs codecs, RetentionProperties retention,
+                                         RecentCacheProperties recentCache, SearchProperties search,
+                                         MessageArchive archive) {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        return new ChatRoomRepository(template, store, codecs,
+                new RoomMetadataCache(new RoomCacheProperties(), registry),
+                new RecentMessageCache(recentCache, registry),
+                new MembershipFilter(template, new MembershipProperties(), registry),
+                new SearchIndex(template, search), search, archive,
+                retention, new HistoryProperties(), new BulkProperties(), new PubSubProperties(),
+                new RedisCircuitBreaker(new CircuitBreakerProperties(), registry), registry);
+    }
+
+    //bytes redis reports as used_memory
+    public long usedMemory() {
+        Object used = template.execute(connection -> connection.serverCommands().info("memory"), true)
+                .getProperty("used_memory");
+        return Long.parseLong(String.valueOf(used));
+    }
+
+    public void flushAll() {
+        template.execute(connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        }, true);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        connectionFactory.destroy();
+        if (process != null) {
+            process.destroy();
+            process.waitFor(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void awaitPort(int port) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            try (Socket ignored = new Socket("localhost", port)) {
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("redis-server did not start on port " + port);
+    }
+}
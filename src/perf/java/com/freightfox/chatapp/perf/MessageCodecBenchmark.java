@@ -0,0 +1,80 @@
+package com.freightfox.chatapp.perf;
+
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.Repository.MessageCodecs;
+import com.freightfox.chatapp.Repository.RawMessage;
+import com.freightfox.chatapp.config.StorageProperties;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+//json vs binary entries: encode is the per send cost, toJson the per history entry and per node delivery cost;
+//the stored size of one entry, id included, is printed as "bytes/message" at the start of every trial
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageCodecBenchmark {
+    private static final long ID = 123456;
+
+    @Param({"json", "binary", "binary-deflate"})
+    public String codec;
+
+    //a typical chat line and a pasted log excerpt
+    @Param({"60", "2000"})
+    public int messageLength;
+
+    private MessageCodecs codecs;
+    private ChatMessage message;
+    private byte[] entry;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StorageProperties properties = new StorageProperties();
+        properties.setCodec(codec.equals("json") ? StorageProperties.Codec.JSON : StorageProperties.Codec.BINARY);
+        properties.setCompressAbove(codec.equals("binary-deflate") ? DataSize.ofBytes(256) : DataSize.ofBytes(0));
+        codecs = new MessageCodecs(properties);
+
+        message = new ChatMessage();
+        message.setParticipant("participant_4711");
+        StringBuilder text = new StringBuilder(messageLength);
+        String words = "the build on node seven failed again while fetching dependencies from the mirror ";
+        while (text.length() < messageLength) {
+            text.append(words);
+        }
+        message.setMessage(text.substring(0, messageLength));
+        entry = stored(codecs.encode(message));
+        System.out.printf("%n%s, %d character message: %d bytes/message%n", codec, messageLength, entry.length);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codecs.encode(message);
+    }
+
+    @Benchmark
+    public RawMessage toJson() {
+        return codecs.toJson(ID, entry);
+    }
+
+    //what the send script makes of the encoded bytes
+    private static byte[] stored(byte[] encoded) {
+        byte[] id = String.valueOf(ID).getBytes(StandardCharsets.US_ASCII);
+        if ((encoded[0] & 0xFF) == 0xC1) {
+            byte[] result = new byte[encoded.length + id.length];
+            result[0] = encoded[0];
+            System.arraycopy(id, 0, result, 1, id.length);
+            System.arraycopy(encoded, 1, result, 1 + id.length, encoded.length - 1);
+            return result;
+        }
+        byte[] prefix = ("{\"id\":" + ID + ",").getBytes(StandardCharsets.US_ASCII);
+        byte[] result = new byte[prefix.length + encoded.length - 1];
+        System.arraycopy(prefix, 0, result, 0, prefix.length);
+        System.arraycopy(encoded, 1, result, prefix.length, encoded.length - 1);
+        return result;
+    }
+}
@@ -0,0 +1,87 @@
+package com.freightfox.chatapp.perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.Repository.JsonMessageCodec;
+import com.freightfox.chatapp.Repository.MessageEncoding;
+import com.freightfox.chatapp.Repository.RawMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//encoding work per send and per limit=10 history response without redis in the way,
+//the perf profile runs it with -prof gc so gc.alloc.rate.norm shows the bytes allocated per call
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageEncodingBenchmark {
+    private static final int PAGE = 10;
+
+    //same setup as the redis template value serializer and the mvc converter before the byte path
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final JsonMessageCodec codec = new JsonMessageCodec();
+    private ChatMessage message;
+    private List<byte[]> doubleEncodedEntries;
+    private List<byte[]> entries;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        message = new ChatMessage();
+        message.setParticipant("bench_user");
+        message.setMessage("a fairly ordinary chat message of some sixty characters or so");
+
+        doubleEncodedEntries = new ArrayList<>();
+        entries = new ArrayList<>();
+        for (int id = 1; id <= PAGE; id++) {
+            doubleEncodedEntries.add(mapper.writeValueAsBytes(mapper.writeValueAsString(message)));
+            ChatMessage stored = new ChatMessage();
+            stored.setId((long) id);
+            stored.setParticipant(message.getParticipant());
+            stored.setMessage(message.getMessage());
+            stored.setTimestamp(message.getTimestamp());
+            entries.add(mapper.writeValueAsBytes(stored));
+        }
+    }
+
+    //history entry as a json string of the json, then the published copy
+    @Benchmark
+    public Object sendEncodedThreeTimes() throws Exception {
+        byte[] entry = mapper.writeValueAsBytes(mapper.writeValueAsString(message));
+        byte[] payload = mapper.writeValueAsBytes(message);
+        return new byte[][]{entry, payload};
+    }
+
+    @Benchmark
+    public byte[] sendEncodedOnce() {
+        return codec.encode(message);
+    }
+
+    //decode each entry twice, set its id, then let jackson write the whole response again
+    @Benchmark
+    public byte[] historyDecodeAndReencode() throws Exception {
+        List<ChatMessage> messages = new ArrayList<>(PAGE);
+        for (int i = 0; i < PAGE; i++) {
+            String json = mapper.readValue(doubleEncodedEntries.get(i), String.class);
+            ChatMessage decoded = mapper.readValue(json, ChatMessage.class);
+            decoded.setId(i + 1L);
+            messages.add(decoded);
+        }
+        return mapper.writeValueAsBytes(Map.of("messages", messages));
+    }
+
+    @Benchmark
+    public byte[] historySpliced() {
+        List<RawMessage> messages = new ArrayList<>(PAGE);
+        for (int i = 0; i < PAGE; i++) {
+            messages.add(codec.toJson(i + 1L, entries.get(i)));
+        }
+        return MessageEncoding.messagesBody(messages);
+    }
+}
@@ -0,0 +1,98 @@
+package com.freightfox.chatapp.perf;
+
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.Outbox.MessageOutbox;
+import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import com.freightfox.chatapp.Repository.ListMessageStore;
+import com.freightfox.chatapp.config.OutboxProperties;
+import com.freightfox.chatapp.config.RecentCacheProperties;
+import com.freightfox.chatapp.config.RetentionProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+//send latency seen by 16 concurrent requests, straight to redis against through the outbox; with stallMillis > 0
+//redis holds back writes (CLIENT PAUSE WRITE) for that long every 500ms, the way a slow or failing-over redis does,
+//a direct send waits it out while an outbox send only waits for the local force
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class OutboxBenchmark {
+    private static final String ROOM = "outbox";
+
+    @Param({"0", "50"})
+    public int stallMillis;
+
+    private LocalRedis redis;
+    private ChatRoomRepository repo;
+    private MessageOutbox outbox;
+    private Path directory;
+    private ScheduledExecutorService staller;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        redis = LocalRedis.start();
+        redis.flushAll();
+        repo = redis.repository(new ListMessageStore(), new RetentionProperties(), new RecentCacheProperties());
+        repo.createRoom(ROOM);
+        directory = Files.createTempDirectory("chat-outbox");
+        OutboxProperties properties = new OutboxProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(directory.toString());
+        outbox = new MessageOutbox(repo, properties, new SimpleMeterRegistry());
+        outbox.start();
+        staller = Executors.newSingleThreadScheduledExecutor();
+        if (stallMillis > 0) {
+            byte[][] pause = {"PAUSE".getBytes(StandardCharsets.UTF_8),
+                    String.valueOf(stallMillis).getBytes(StandardCharsets.UTF_8), "WRITE".getBytes(StandardCharsets.UTF_8)};
+            staller.scheduleAtFixedRate(() -> redis.template().execute(connection -> connection.execute("CLIENT", pause), true),
+                    500, 500, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        staller.shutdownNow();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (outbox.depth() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        System.out.printf("%noutbox depth at the end %d, %d messages in redis%n", outbox.depth(), repo.newestId(ROOM));
+        outbox.stop();
+        redis.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean direct() {
+        return repo.sendMessage(ROOM, message());
+    }
+
+    @Benchmark
+    public boolean outbox() {
+        return outbox.send(ROOM, message());
+    }
+
+    private static ChatMessage message() {
+        ChatMessage message = new ChatMessage();
+        message.setParticipant("bench_user");
+        message.setMessage("hello from the benchmark");
+        return message;
+    }
+}
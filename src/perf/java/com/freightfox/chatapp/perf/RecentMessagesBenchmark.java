@@ -0,0 +1,65 @@
+package com.freightfox.chatapp.perf;
+
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import com.freightfox.chatapp.Repository.ListMessageStore;
+import com.freightfox.chatapp.Repository.RawMessage;
+import com.freightfox.chatapp.config.RecentCacheProperties;
+import com.freightfox.chatapp.config.RetentionProperties;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//the default limit=10 history read answered by the recent message cache vs read and decoded from redis
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecentMessagesBenchmark {
+    private static final String ROOM = "hot";
+    private static final int LIMIT = 10;
+
+    private LocalRedis redis;
+    private ChatRoomRepository cached;
+    private ChatRoomRepository uncached;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        redis = LocalRedis.start();
+        cached = redis.repository(new ListMessageStore(), new RetentionProperties(), new RecentCacheProperties());
+        RecentCacheProperties disabled = new RecentCacheProperties();
+        disabled.setEnabled(false);
+        uncached = redis.repository(new ListMessageStore(), new RetentionProperties(), disabled);
+        cached.createRoom(ROOM);
+
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            ChatMessage message = new ChatMessage();
+            message.setParticipant("user" + (i % 20));
+            message.setMessage("recent message " + i);
+            messages.add(message);
+        }
+        cached.sendMessages(Map.of(ROOM, messages));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        redis.close();
+    }
+
+    //without a pub/sub feed in the benchmark the ring is re-checked against redis once per max staleness
+    @Benchmark
+    public List<RawMessage> cachedRead() {
+        return cached.getLastMessages(ROOM, LIMIT);
+    }
+
+    @Benchmark
+    public List<RawMessage> uncachedRead() {
+        return uncached.getLastMessages(ROOM, LIMIT);
+    }
+}
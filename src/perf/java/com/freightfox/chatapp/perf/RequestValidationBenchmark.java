@@ -0,0 +1,60 @@
+package com.freightfox.chatapp.perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.freightfox.chatapp.Controller.ChatController;
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.ExceptionHandler.GlobalExceptionHandler;
+import com.freightfox.chatapp.config.JacksonConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+//what a send request costs before it reaches redis: binding the body with the application's mapper,
+//and for a rejected one the controller checks, the exception and the error body written by the handler
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestValidationBenchmark {
+    private final ObjectMapper mapper = new JacksonConfig().objectMapper();
+    //rejected requests never reach the repository, batcher, outbox, sessions or admission checks
+    private final ChatController controller = new ChatController(null, null, null, null, null, null, null);
+    private final GlobalExceptionHandler handler = new GlobalExceptionHandler();
+    private byte[] validBody;
+    private byte[] blankMessageBody;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        validBody = "{\"participant\":\"bench_user\",\"message\":\"hello from the benchmark\"}".getBytes(StandardCharsets.UTF_8);
+        blankMessageBody = "{\"participant\":\"bench_user\",\"message\":\"   \"}".getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public ChatMessage bindValidMessage() throws Exception {
+        return mapper.readValue(validBody, ChatMessage.class);
+    }
+
+    @Benchmark
+    public byte[] rejectBlankMessage() throws Exception {
+        ChatMessage message = mapper.readValue(blankMessageBody, ChatMessage.class);
+        try {
+            controller.sendMessage("bench", message);
+            throw new IllegalStateException("blank message was accepted");
+        } catch (IllegalArgumentException e) {
+            return mapper.writeValueAsBytes(handler.handleIllegalArg(e).getBody());
+        }
+    }
+
+    @Benchmark
+    public byte[] rejectBadLimit() throws Exception {
+        try {
+            controller.getMessages("bench", 0, null, null);
+            throw new IllegalStateException("limit 0 was accepted");
+        } catch (IllegalArgumentException e) {
+            return mapper.writeValueAsBytes(handler.handleIllegalArg(e).getBody());
+        }
+    }
+}
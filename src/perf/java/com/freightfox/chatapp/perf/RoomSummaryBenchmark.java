@@ -0,0 +1,77 @@
+package com.freightfox.chatapp.perf;
+
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import com.freightfox.chatapp.Repository.ListMessageStore;
+import com.freightfox.chatapp.Repository.RawMessage;
+import com.freightfox.chatapp.config.RecentCacheProperties;
+import com.freightfox.chatapp.config.RetentionProperties;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//a home screen for a participant in many rooms: the room list summary against what clients did before it,
+//one roomExists check and one limit=1 read per room; the recent cache is off so both go to redis
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoomSummaryBenchmark {
+    private static final String PARTICIPANT = "home-screen";
+
+    @Param({"10", "100", "500"})
+    public int rooms;
+
+    private LocalRedis redis;
+    private ChatRoomRepository repo;
+    private List<String> roomIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        redis = LocalRedis.start();
+        redis.flushAll();
+        RecentCacheProperties recentCache = new RecentCacheProperties();
+        recentCache.setEnabled(false);
+        repo = redis.repository(new ListMessageStore(), new RetentionProperties(), recentCache);
+        roomIds = new ArrayList<>();
+        for (int i = 0; i < rooms; i++) {
+            roomIds.add("summary-room-" + i);
+        }
+        repo.createRooms(roomIds);
+        repo.joinRooms(PARTICIPANT, roomIds);
+        for (String roomId : roomIds) {
+            List<ChatMessage> messages = new ArrayList<>();
+            for (int m = 0; m < 20; m++) {
+                ChatMessage message = new ChatMessage();
+                message.setParticipant(PARTICIPANT);
+                message.setMessage("message " + m + " in " + roomId);
+                messages.add(message);
+            }
+            repo.sendMessages(Map.of(roomId, messages));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        redis.close();
+    }
+
+    @Benchmark
+    public List<ChatRoomRepository.RoomSummary> summary() {
+        return repo.getRoomSummaries(PARTICIPANT);
+    }
+
+    @Benchmark
+    public List<RawMessage> perRoomReads() {
+        List<RawMessage> last = new ArrayList<>(rooms);
+        for (String roomId : roomIds) {
+            if (repo.roomExists(roomId)) last.addAll(repo.getLastMessages(roomId, 1));
+        }
+        return last;
+    }
+}
@@ -0,0 +1,197 @@
+package com.freightfox.chatapp.perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import com.freightfox.chatapp.Repository.ListMessageStore;
+import com.freightfox.chatapp.Repository.RoomKeys;
+import com.freightfox.chatapp.config.RecentCacheProperties;
+import com.freightfox.chatapp.config.RetentionProperties;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+//scenario load through the repository against a local redis: rooms picked with zipfian popularity,
+//a mix of sends and limit=10 reads, and pub/sub subscribers spread over the rooms the same way.
+//prints throughput and p50/p99/p99.9 per operation plus the publish to subscriber lag;
+//with -Dscenario.max-p99-ms a run whose send or read p99 is above that exits with 1, so a build can gate on it;
+//-Dscenario.delete-room-messages fills one extra room with that many messages and deletes it halfway through
+//the measured window, so the p99 of the other rooms shows whether the deletion stalled redis
+public class ScenarioLoad {
+    private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new JavaTimeModule());
+    private static final String DELETED_ROOM = "scenario-deleted";
+
+    public static void main(String[] args) throws Exception {
+        int rooms = Integer.getInteger("scenario.rooms", 1000);
+        double skew = Double.parseDouble(System.getProperty("scenario.zipf", "1.1"));
+        int threads = Integer.getInteger("scenario.threads", 32);
+        double sendRatio = Double.parseDouble(System.getProperty("scenario.send-ratio", "0.2"));
+        int subscribers = Integer.getInteger("scenario.subscribers", 200);
+        int warmup = Integer.getInteger("scenario.warmup", 5);
+        int seconds = Integer.getInteger("scenario.seconds", 30);
+        double maxP99 = Double.parseDouble(System.getProperty("scenario.max-p99-ms", "0"));
+        int deleteRoomMessages = Integer.getInteger("scenario.delete-room-messages", 0);
+
+        Latencies sends = new Latencies("send");
+        Latencies reads = new Latencies("read");
+        Latencies lag = new Latencies("delivery");
+        AtomicLong errors = new AtomicLong();
+        ZipfRooms popularity = new ZipfRooms(rooms, skew);
+
+        try (LocalRedis redis = LocalRedis.start()) {
+            redis.flushAll();
+            ChatRoomRepository repo = redis.repository(new ListMessageStore(), new RetentionProperties(),
+                    new RecentCacheProperties());
+            for (int room = 0; room < rooms; room++) {
+                repo.createRoom(room(room));
+            }
+            if (deleteRoomMessages > 0) fillRoom(repo, DELETED_ROOM, deleteRoomMessages);
+
+            long measureFrom = System.nanoTime() + Duration.ofSeconds(warmup).toNanos();
+            long deadline = measureFrom + Duration.ofSeconds(seconds).toNanos();
+            RedisMessageListenerContainer container = subscribe(redis, popularity, subscribers, lag, measureFrom);
+
+            List<Thread> workers = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                String participant = "participant-" + t;
+                Thread worker = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        String roomId = room(popularity.next(random));
+                        boolean send = random.nextDouble() < sendRatio;
+                        long start = System.nanoTime();
+                        try {
+                            if (send) {
+                                repo.sendMessage(roomId, message(participant));
+                            } else {
+                                repo.getLastMessages(roomId, 10);
+                            }
+                        } catch (RuntimeException e) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                        if (start >= measureFrom) {
+                            (send ? sends : reads).add(System.nanoTime() - start);
+                        }
+                    }
+                }, "scenario-" + t);
+                worker.start();
+                workers.add(worker);
+            }
+            if (deleteRoomMessages > 0) {
+                Thread.sleep(Math.max(0, measureFrom + (deadline - measureFrom) / 2 - System.nanoTime()) / 1_000_000);
+                long start = System.nanoTime();
+                repo.deleteRoom(DELETED_ROOM);
+                System.out.printf("deleting a room of %d messages took %.2fms%n",
+                        deleteRoomMessages, (System.nanoTime() - start) / 1e6);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            container.stop();
+            container.destroy();
+        }
+
+        System.out.printf("%d rooms (zipf %.2f), %d threads, %.0f%% sends, %d subscribers, %ds measured%n",
+                rooms, skew, threads, sendRatio * 100, subscribers, seconds);
+        sends.print(seconds);
+        reads.print(seconds);
+        lag.print(seconds);
+        System.out.printf("errors: %d%n", errors.get());
+
+        if (maxP99 > 0 && (sends.percentileMillis(0.99) > maxP99 || reads.percentileMillis(0.99) > maxP99)) {
+            System.out.printf("FAILED: p99 above %.2fms%n", maxP99);
+            System.exit(1);
+        }
+    }
+
+    //pipelined batches with the room's message cap lifted, so the whole history stays in one list
+    private static void fillRoom(ChatRoomRepository repo, String roomId, int messages) {
+        repo.createRoom(roomId);
+        repo.updateRetention(roomId, 0L, 0L);
+        List<ChatMessage> batch = new ArrayList<>(1000);
+        for (int i = 0; i < 1000; i++) {
+            batch.add(message("filler"));
+        }
+        for (int sent = 0; sent < messages; sent += batch.size()) {
+            repo.sendMessages(Map.of(roomId, batch.subList(0, Math.min(batch.size(), messages - sent))));
+        }
+    }
+
+    //each subscriber listens to one room channel, popular rooms get more of them
+    private static RedisMessageListenerContainer subscribe(LocalRedis redis, ZipfRooms popularity, int subscribers,
+                                                           Latencies lag, long measureFrom) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redis.connectionFactory());
+        container.afterPropertiesSet();
+        container.start();
+        MessageListener listener = (message, pattern) -> {
+            long received = System.nanoTime();
+            if (received < measureFrom) return;
+            try {
+                Instant sent = MAPPER.readValue(message.getBody(), ChatMessage.class).getTimestamp();
+                lag.add(Duration.between(sent, Instant.now()).toNanos());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < subscribers; i++) {
+            container.addMessageListener(listener, new ChannelTopic(RoomKeys.channel(room(popularity.next(random)))));
+        }
+        return container;
+    }
+
+    private static ChatMessage message(String participant) {
+        ChatMessage message = new ChatMessage();
+        message.setParticipant(participant);
+        message.setMessage("a fairly ordinary chat message of some sixty characters or so");
+        return message;
+    }
+
+    private static String room(int index) {
+        return "scenario-" + index;
+    }
+
+    //room i is picked with probability proportional to 1 / (i + 1)^skew
+    static final class ZipfRooms {
+        private final double[] cumulative;
+
+        ZipfRooms(int rooms, double skew) {
+            cumulative = new double[rooms];
+            double sum = 0;
+            for (int i = 0; i < rooms; i++) {
+                sum += 1 / Math.pow(i + 1, skew);
+                cumulative[i] = sum;
+            }
+            for (int i = 0; i < rooms; i++) {
+                cumulative[i] /= sum;
+            }
+        }
+
+        int next(ThreadLocalRandom random) {
+            double u = random.nextDouble();
+            int low = 0;
+            int high = cumulative.length - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (cumulative[mid] < u) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.freightfox.chatapp.perf;
+
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import com.freightfox.chatapp.Repository.ListMessageStore;
+import com.freightfox.chatapp.Repository.MessageCodecs;
+import com.freightfox.chatapp.config.RecentCacheProperties;
+import com.freightfox.chatapp.config.RetentionProperties;
+import com.freightfox.chatapp.config.SearchProperties;
+import com.freightfox.chatapp.config.StorageProperties;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//search latency for rooms of growing history, indexed as the messages are sent; it should stay about flat
+//from 10k to 1M messages because a query walks its rarest term within the id range, never the history
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    private static final String ROOM = "searchable";
+    private static final int VOCABULARY = 5000;
+    private static final int WORDS_PER_MESSAGE = 8;
+    private static final int PAGE = 20;
+
+    @Param({"10000", "100000", "1000000"})
+    public int history;
+
+    private LocalRedis redis;
+    private ChatRoomRepository repo;
+    private long windowFrom;
+    private long windowTo;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        redis = LocalRedis.start();
+        RetentionProperties retention = new RetentionProperties();
+        retention.setMaxMessages(0);
+        SearchProperties search = new SearchProperties();
+        search.setEnabled(true);
+        repo = redis.repository(new ListMessageStore(), new MessageCodecs(new StorageProperties()), retention,
+                new RecentCacheProperties(), search);
+        repo.createRoom(ROOM);
+
+        //word i is picked with a probability of about 1/i, so "w1" is in most messages and the tail is rare;
+        //"needle" is in every 10000th message
+        Random random = new Random(42);
+        double[] cumulative = new double[VOCABULARY];
+        double sum = 0;
+        for (int i = 0; i < VOCABULARY; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        List<ChatMessage> batch = new ArrayList<>();
+        for (int i = 0; i < history; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < WORDS_PER_MESSAGE; w++) {
+                double pick = random.nextDouble() * sum;
+                int word = 0;
+                while (cumulative[word] < pick) word++;
+                text.append('w').append(word + 1).append(' ');
+            }
+            if (i % 10_000 == 0) text.append("needle");
+            ChatMessage message = new ChatMessage();
+            message.setParticipant("user" + (i % 100));
+            message.setMessage(text.toString());
+            batch.add(message);
+            if (batch.size() == 1000) {
+                repo.sendMessages(Map.of(ROOM, batch));
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) repo.sendMessages(Map.of(ROOM, batch));
+        //everything is stored within the setup, so the last second covers at least the newest messages
+        windowTo = System.currentTimeMillis();
+        windowFrom = windowTo - 1000;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        redis.close();
+    }
+
+    //one rare word, the walk is as long as its posting set
+    @Benchmark
+    public ChatRoomRepository.SearchPage rareWord() {
+        return repo.searchMessages(ROOM, "needle", null, null, null, 0, PAGE);
+    }
+
+    //a common and a medium word, candidates come from the medium one and are checked against the common one
+    @Benchmark
+    public ChatRoomRepository.SearchPage twoWords() {
+        return repo.searchMessages(ROOM, "w1 w50", null, null, null, 0, PAGE);
+    }
+
+    //a word from one participant
+    @Benchmark
+    public ChatRoomRepository.SearchPage wordFromParticipant() {
+        return repo.searchMessages(ROOM, "w10", "user7", null, null, 0, PAGE);
+    }
+
+    //a common word within the last second, the time window becomes an id range first
+    @Benchmark
+    public ChatRoomRepository.SearchPage wordInTimeWindow() {
+        return repo.searchMessages(ROOM, "w2", null, windowFrom, windowTo, 0, PAGE);
+    }
+}
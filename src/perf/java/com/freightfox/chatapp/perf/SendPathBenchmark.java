@@ -0,0 +1,58 @@
+package com.freightfox.chatapp.perf;
+
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import com.freightfox.chatapp.Repository.ListMessageStore;
+import com.freightfox.chatapp.Repository.MessageCodecs;
+import com.freightfox.chatapp.config.RecentCacheProperties;
+import com.freightfox.chatapp.config.RetentionProperties;
+import com.freightfox.chatapp.config.StorageProperties;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+//compares the old three round trip send (exists, rpush, publish) with the scripted single round trip
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SendPathBenchmark {
+    private static final String ROOM = "bench";
+    //the old path stores entries without ids, it gets a room of its own so the ids of ROOM stay intact
+    private static final String OLD_PATH_ROOM = "bench-old";
+
+    private LocalRedis redis;
+    private ChatRoomRepository repo;
+    private ThreeRoundTripSend oldPath;
+    private ChatMessage message;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        redis = LocalRedis.start();
+        repo = redis.repository(new ListMessageStore(), new RetentionProperties(), new RecentCacheProperties());
+        oldPath = new ThreeRoundTripSend(redis.template(), repo, new MessageCodecs(new StorageProperties()));
+        repo.createRoom(ROOM);
+        repo.createRoom(OLD_PATH_ROOM);
+
+        message = new ChatMessage();
+        message.setParticipant("bench_user");
+        message.setMessage("hello from the benchmark");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        redis.close();
+    }
+
+    @Benchmark
+    public boolean threeRoundTrips() {
+        return oldPath.send(OLD_PATH_ROOM, message);
+    }
+
+    @Benchmark
+    public boolean singleRoundTrip() {
+        return repo.sendMessage(ROOM, message);
+    }
+}
@@ -0,0 +1,39 @@
+package com.freightfox.chatapp.perf;
+
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import com.freightfox.chatapp.Repository.MessageCodecs;
+import com.freightfox.chatapp.Repository.RoomKeys;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+//the send path from before the send script, only kept as the baseline SendPathBenchmark measures against:
+//exists, rpush and publish as three round trips. the entries it stores carry no id and do not move meta.seq,
+//so it must only write to a room of its own on a throwaway redis
+class ThreeRoundTripSend {
+    private final RedisTemplate<String, Object> template;
+    private final ChatRoomRepository repo;
+    private final MessageCodecs codecs;
+
+    ThreeRoundTripSend(RedisTemplate<String, Object> template, ChatRoomRepository repo, MessageCodecs codecs) {
+        this.template = template;
+        this.repo = repo;
+        this.codecs = codecs;
+    }
+
+    boolean send(String roomId, ChatMessage message) {
+        if (!repo.roomExists(roomId)) {
+            return false;
+        }
+        byte[] entry = codecs.encode(message);
+        template.execute((RedisCallback<Long>) connection -> connection.listCommands().rPush(key(RoomKeys.messages(roomId)), entry));
+        template.execute((RedisCallback<Long>) connection -> connection.publish(key(RoomKeys.channel(roomId)), entry));
+        return true;
+    }
+
+    private static byte[] key(String key) {
+        return RedisSerializer.string().serialize(key);
+    }
+}
@@ -1,10 +1,22 @@
 package com.freightfox.chatapp;
 
+import com.freightfox.chatapp.DTO.BulkCreateRoomsRequest;
+import com.freightfox.chatapp.DTO.BulkJoinRequest;
 import com.freightfox.chatapp.DTO.ChatMessage;
 import com.freightfox.chatapp.DTO.CreateRoomRequest;
 import com.freightfox.chatapp.DTO.JoinRoomRequest;
-import com.freightfox.chatapp.RedisMessage.RedisMessagePublisher;
+import com.freightfox.chatapp.DTO.MarkReadRequest;
+import com.freightfox.chatapp.ExceptionHandler.NotRoomMemberException;
+import com.freightfox.chatapp.ExceptionHandler.RateLimitedException;
+import com.freightfox.chatapp.Outbox.MessageOutbox;
+import com.freightfox.chatapp.RateLimit.LoadShedder;
+import com.freightfox.chatapp.RateLimit.SendRateLimiter;
+import com.freightfox.chatapp.Delivery.RoomSessionRegistry;
+import com.freightfox.chatapp.Repository.BulkResult;
 import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import com.freightfox.chatapp.Repository.MessageBatcher;
+import com.freightfox.chatapp.Repository.RawMessage;
+import com.freightfox.chatapp.Repository.SearchIndex;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,13 +25,25 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
-
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest
@@ -34,7 +58,27 @@ public class ChatControllerTest {
 
     @SuppressWarnings("removal")
     @MockBean
-    private RedisMessagePublisher redisMessagePublisher;
+    private MessageBatcher messageBatcher;
+
+    @SuppressWarnings("removal")
+    @MockBean
+    private MessageOutbox messageOutbox;
+
+    @SuppressWarnings("removal")
+    @MockBean
+    private RoomSessionRegistry roomSessionRegistry;
+
+    @SuppressWarnings("removal")
+    @MockBean
+    private SendRateLimiter sendRateLimiter;
+
+    @SuppressWarnings("removal")
+    @MockBean
+    private LoadShedder loadShedder;
+
+    @SuppressWarnings("removal")
+    @MockBean
+    private SearchIndex searchIndex;
 
     @Autowired
     private com.fasterxml.jackson.databind.ObjectMapper objectMapper;
@@ -74,6 +118,55 @@ public class ChatControllerTest {
                 .andExpect(jsonPath("$.error").value("Room already exists"));
     }
 
+    //this will test marking a room read up to a message, the answer carries what is still unread
+    @Test
+    void markRead_success() throws Exception {
+        MarkReadRequest req = new MarkReadRequest();
+        req.setParticipant("guest_user");
+        req.setMessageId(40L);
+
+        when(chatRoomRepository.markRead("general", "guest_user", 40L)).thenReturn(new long[]{40, 42});
+
+        mockMvc.perform(post("/api/chatapp/chatrooms/general/read")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(req)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.lastReadId").value(40))
+                .andExpect(jsonPath("$.unread").value(2));
+    }
+
+    //this will test that someone who never joined cannot keep a read cursor
+    @Test
+    void markRead_notMember() throws Exception {
+        MarkReadRequest req = new MarkReadRequest();
+        req.setParticipant("stranger");
+
+        when(chatRoomRepository.markRead("general", "stranger", null))
+                .thenThrow(new NotRoomMemberException("Participant has not joined the room"));
+
+        mockMvc.perform(post("/api/chatapp/chatrooms/general/read")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(req)))
+                .andExpect(status().isForbidden());
+    }
+
+    //this will test the room list summary, the newest message is passed on as stored
+    @Test
+    void roomSummary_success() throws Exception {
+        when(chatRoomRepository.getRoomSummaries("guest_user")).thenReturn(List.of(
+                new ChatRoomRepository.RoomSummary("general", 1700000000000L, 3, 40, 2,
+                        "{\"id\":42,\"participant\":\"alice\",\"message\":\"Hi\"}", 0),
+                new ChatRoomRepository.RoomSummary("quiet", 1700000000000L, 1, 0, 0, null, -1)));
+
+        mockMvc.perform(get("/api/chatapp/participants/guest_user/rooms/summary"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rooms[0].roomId").value("general"))
+                .andExpect(jsonPath("$.rooms[0].unread").value(2))
+                .andExpect(jsonPath("$.rooms[0].lastMessage.message").value("Hi"))
+                .andExpect(jsonPath("$.rooms[0].lastActivityNanos").doesNotExist())
+                .andExpect(jsonPath("$.rooms[1].lastMessage").isEmpty());
+    }
+
     //this will test the successfully joining the room
     @Test
     void joinRoom_success() throws Exception {
@@ -102,6 +195,57 @@ public class ChatControllerTest {
                 .andExpect(jsonPath("$.error").value("Room does not exist"));
     }
 
+    //this will test that bulk creation reports every room, invalid names included
+    @Test
+    void createRooms_resultPerRoom() throws Exception {
+        BulkCreateRoomsRequest req = new BulkCreateRoomsRequest();
+        req.setRoomNames(List.of("general", "random", "bad{name}"));
+
+        when(chatRoomRepository.createRooms(List.of("general", "random")))
+                .thenReturn(Map.of("general", BulkResult.EXISTS, "random", BulkResult.CREATED));
+
+        mockMvc.perform(post("/api/chatapp/chatrooms/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(req)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results.general").value("exists"))
+                .andExpect(jsonPath("$.results.random").value("created"))
+                .andExpect(jsonPath("$.results['bad{name}']").value("invalid"));
+    }
+
+    //this will test bulk join into a room which is not present
+    @Test
+    void joinRoomBulk_roomNotFound() throws Exception {
+        BulkJoinRequest req = new BulkJoinRequest();
+        req.setParticipants(List.of("alice", "bob"));
+
+        when(chatRoomRepository.addParticipants("invalid", List.of("alice", "bob")))
+                .thenReturn(Map.of("alice", BulkResult.ROOM_NOT_FOUND, "bob", BulkResult.ROOM_NOT_FOUND));
+
+        mockMvc.perform(post("/api/chatapp/chatrooms/invalid/join/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(req)))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.error").value("Room does not exist"));
+    }
+
+    //this will test that a room deleted part way through a bulk join still reports the participants who joined
+    @Test
+    void joinRoomBulk_roomDeletedPartWay() throws Exception {
+        BulkJoinRequest req = new BulkJoinRequest();
+        req.setParticipants(List.of("alice", "bob"));
+
+        when(chatRoomRepository.addParticipants("general", List.of("alice", "bob")))
+                .thenReturn(Map.of("alice", BulkResult.JOINED, "bob", BulkResult.ROOM_NOT_FOUND));
+
+        mockMvc.perform(post("/api/chatapp/chatrooms/general/join/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(req)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results.alice").value("joined"))
+                .andExpect(jsonPath("$.results.bob").value("room_not_found"));
+    }
+
     //this will test the successful message sent by user
     @Test
     void sendMessage_success() throws Exception {
@@ -110,17 +254,96 @@ public class ChatControllerTest {
         msg.setMessage("Hello");
         msg.setTimestamp(Instant.now());
 
+        when(chatRoomRepository.sendMessage(eq("general"), any(ChatMessage.class))).thenReturn(true);
+
+        mockMvc.perform(post("/api/chatapp/chatrooms/general/messages")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(msg)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.message").value("Message sent successfully."));
+    }
+
+    //this will test that the timestamp of a sent message is set by the server, not taken from the client
+    @Test
+    void sendMessage_clientTimestampIgnored() throws Exception {
+        ChatMessage msg = new ChatMessage();
+        msg.setParticipant("guest_user");
+        msg.setMessage("Hello");
+        msg.setTimestamp(Instant.now().plus(Duration.ofDays(3650)));
+
+        when(chatRoomRepository.sendMessage(eq("general"), any(ChatMessage.class))).thenReturn(true);
+        Instant before = Instant.now();
+
+        mockMvc.perform(post("/api/chatapp/chatrooms/general/messages")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(msg)))
+                .andExpect(status().isOk());
+
+        verify(chatRoomRepository).sendMessage(eq("general"), argThat(sent ->
+                !sent.getTimestamp().isBefore(before) && !sent.getTimestamp().isAfter(Instant.now())));
+    }
+
+    //this will test that sends go through the batcher when batching is enabled
+    @Test
+    void sendMessage_batched() throws Exception {
+        ChatMessage msg = new ChatMessage();
+        msg.setParticipant("guest_user");
+        msg.setMessage("Hello");
+
+        when(messageBatcher.isEnabled()).thenReturn(true);
+        when(messageBatcher.send(eq("general"), any(ChatMessage.class))).thenReturn(true);
+
         mockMvc.perform(post("/api/chatapp/chatrooms/general/messages")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(msg)))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.message").value("Message sent successfully."));
+        verify(chatRoomRepository, never()).sendMessage(any(), any());
+    }
+
+    //this will test that with the outbox on a send is accepted with 202 without a redis call or redis latency shedding
+    @Test
+    void sendMessage_outboxAccepted() throws Exception {
+        ChatMessage msg = new ChatMessage();
+        msg.setParticipant("guest_user");
+        msg.setMessage("Hello");
+
+        when(messageOutbox.isEnabled()).thenReturn(true);
+        when(messageOutbox.send(eq("general"), any(ChatMessage.class))).thenReturn(true);
+
+        mockMvc.perform(post("/api/chatapp/chatrooms/general/messages")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(msg)))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.status").value("accepted"));
+        verify(chatRoomRepository, never()).sendMessage(any(), any());
+        verify(messageBatcher, never()).send(any(), any());
+        //redis latency does not shed a send that goes to the outbox
+        verify(loadShedder).admit(true);
+    }
+
+    //this will test that a sender over the limit gets 429 with the seconds to wait
+    @Test
+    void sendMessage_rateLimited() throws Exception {
+        doThrow(new RateLimitedException("Too many messages from this participant, try again later", Duration.ofMillis(1500)))
+                .when(sendRateLimiter).acquire("general", "guest_user");
+
+        ChatMessage msg = new ChatMessage();
+        msg.setParticipant("guest_user");
+        msg.setMessage("Hello");
+
+        mockMvc.perform(post("/api/chatapp/chatrooms/general/messages")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(msg)))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "2"));
+        verify(chatRoomRepository, never()).sendMessage(any(), any());
     }
 
     //this will test when the message sent to a nonexistent room
     @Test
     void sendMessage_roomNotFound() throws Exception {
-        when(chatRoomRepository.roomExists("invalid")).thenReturn(false);
+        when(chatRoomRepository.sendMessage(eq("invalid"), any(ChatMessage.class))).thenReturn(false);
 
         ChatMessage msg = new ChatMessage();
         msg.setParticipant("guest_user");
@@ -136,10 +359,7 @@ public class ChatControllerTest {
     //this will test when the retrieving the old message successfully
     @Test
     void getMessages_success() throws Exception {
-        ChatMessage msg = new ChatMessage();
-        msg.setParticipant("guest_user");
-        msg.setMessage("Hi");
-        msg.setTimestamp(Instant.now());
+        RawMessage msg = raw(1, "{\"id\":1,\"participant\":\"guest_user\",\"message\":\"Hi\",\"timestamp\":1700000000.0}");
 
         when(chatRoomRepository.getLastMessages("general", 1)).thenReturn(List.of(msg));
 
@@ -148,6 +368,38 @@ public class ChatControllerTest {
                 .andExpect(jsonPath("$.messages[0].message").value("Hi"));
     }
 
+    //this will test paging backwards from a message id
+    @Test
+    void getMessages_beforeCursor() throws Exception {
+        RawMessage msg = raw(41, "{\"id\":41,\"participant\":\"guest_user\",\"message\":\"Older\"}");
+
+        when(chatRoomRepository.getMessagesBefore("general", 42L, 20)).thenReturn(List.of(msg));
+
+        mockMvc.perform(get("/api/chatapp/chatrooms/general/messages?before=42&limit=20"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages[0].id").value(41))
+                .andExpect(jsonPath("$.messages[0].message").value("Older"));
+    }
+
+    //this will test paging forwards from a message id
+    @Test
+    void getMessages_afterCursor() throws Exception {
+        RawMessage msg = raw(43, "{\"id\":43,\"participant\":\"guest_user\",\"message\":\"Newer\"}");
+
+        when(chatRoomRepository.getMessagesAfter("general", 42L, 10)).thenReturn(List.of(msg));
+
+        mockMvc.perform(get("/api/chatapp/chatrooms/general/messages?after=42"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages[0].id").value(43));
+    }
+
+    //this will test that both cursors at once are rejected
+    @Test
+    void getMessages_beforeAndAfter() throws Exception {
+        mockMvc.perform(get("/api/chatapp/chatrooms/general/messages?before=10&after=5"))
+                .andExpect(status().isBadRequest());
+    }
+
     //this will test if retrieving message rom a nonexistent room
     @Test
     void getMessages_roomNotFound() throws Exception {
@@ -158,6 +410,60 @@ public class ChatControllerTest {
                 .andExpect(jsonPath("$.error").value("Room does not exist"));
     }
 
+    //this will test that a search returns the matching messages and the cursor of the next page
+    @Test
+    void searchMessages_success() throws Exception {
+        RawMessage msg = raw(7, "{\"id\":7,\"participant\":\"guest_user\",\"message\":\"hello there\"}");
+
+        when(searchIndex.isEnabled()).thenReturn(true);
+        when(chatRoomRepository.searchMessages("general", "hello", null, null, null, 0L, 20))
+                .thenReturn(new ChatRoomRepository.SearchPage(List.of(msg), 7));
+
+        mockMvc.perform(get("/api/chatapp/chatrooms/general/messages/search?q=hello"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages[0].message").value("hello there"))
+                .andExpect(jsonPath("$.cursor").value(7));
+    }
+
+    //this will test that search answers 404 while the index is turned off
+    @Test
+    void searchMessages_disabled() throws Exception {
+        when(searchIndex.isEnabled()).thenReturn(false);
+
+        mockMvc.perform(get("/api/chatapp/chatrooms/general/messages/search?q=hello"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.error").value("Search is not enabled"));
+
+        verify(chatRoomRepository, never()).searchMessages(any(), any(), any(), any(), any(), eq(0L), eq(20));
+    }
+
+    //this will test that a client can open an event stream for an existing room
+    @Test
+    void streamMessages_success() throws Exception {
+        when(roomSessionRegistry.open("general", null)).thenReturn(new SseEmitter());
+
+        mockMvc.perform(get("/api/chatapp/chatrooms/general/stream"))
+                .andExpect(request().asyncStarted());
+    }
+
+    //this will test that a reconnecting client resumes after the last event it saw
+    @Test
+    void streamMessages_resumeFromLastEventId() throws Exception {
+        when(roomSessionRegistry.open("general", 42L)).thenReturn(new SseEmitter());
+
+        mockMvc.perform(get("/api/chatapp/chatrooms/general/stream").header("Last-Event-ID", "42"))
+                .andExpect(request().asyncStarted());
+    }
+
+    //this will test opening an event stream for a nonexistent room
+    @Test
+    void streamMessages_roomNotFound() throws Exception {
+        when(chatRoomRepository.roomExists("invalid")).thenReturn(false);
+
+        mockMvc.perform(get("/api/chatapp/chatrooms/invalid/stream"))
+                .andExpect(status().isNotFound());
+    }
+
     //this will test the empty user trying to join a room
     @Test
     void joinRoom_missingParticipant() throws Exception {
@@ -216,6 +522,38 @@ public class ChatControllerTest {
     }
 
 
+    //this will test overriding the retention limits of a room
+    @Test
+    void updateRetention_success() throws Exception {
+        String payload = """
+        {
+          "maxMessages": 500,
+          "maxAgeSeconds": 3600
+        }
+        """;
+
+        mockMvc.perform(put("/api/chatapp/chatrooms/general/retention")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(payload))
+                .andExpect(status().isOk());
+        verify(chatRoomRepository).updateRetention("general", 500L, 3_600_000L);
+    }
+
+    //this will test that negative retention limits are rejected
+    @Test
+    void updateRetention_negativeLimit() throws Exception {
+        String payload = """
+        {
+          "maxMessages": -1
+        }
+        """;
+
+        mockMvc.perform(put("/api/chatapp/chatrooms/general/retention")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(payload))
+                .andExpect(status().isBadRequest());
+    }
+
     //this will test when room deletion is successful
     @Test
     void deleteRoom_success() throws Exception {
@@ -235,4 +573,8 @@ public class ChatControllerTest {
                 .andExpect(status().isNotFound())
                 .andExpect(jsonPath("$.error").value("Room does not exist"));
     }
+
+    private static RawMessage raw(long id, String json) {
+        return new RawMessage(id, json.getBytes(StandardCharsets.UTF_8));
+    }
 }
@@ -0,0 +1,82 @@
+package com.freightfox.chatapp;
+
+import com.freightfox.chatapp.RateLimit.CircuitBreaker;
+import com.freightfox.chatapp.RateLimit.RedisCircuitBreaker;
+import com.freightfox.chatapp.config.CircuitBreakerProperties;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CircuitBreakerTest {
+
+    //this will test that failures in a row open the breaker and a successful trial call closes it again
+    @Test
+    void opensAfterThreshold_trialCloses() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000);
+        assertFalse(breaker.onFailure(0));
+        assertFalse(breaker.onFailure(0));
+        assertEquals(0, breaker.tryAcquire(0));
+        assertTrue(breaker.onFailure(0));
+
+        assertEquals(990, breaker.tryAcquire(10));
+        assertEquals(0, breaker.tryAcquire(1000));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        //only one trial call at a time
+        assertTrue(breaker.tryAcquire(1000) > 0);
+        assertTrue(breaker.onSuccess());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0, breaker.tryAcquire(1001));
+    }
+
+    //this will test that a failed trial call opens the breaker for another full period
+    @Test
+    void failedTrial_reopens() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000);
+        assertTrue(breaker.onFailure(0));
+        assertEquals(0, breaker.tryAcquire(1000));
+        assertTrue(breaker.onFailure(2000));
+
+        assertEquals(500, breaker.tryAcquire(2500));
+    }
+
+    //this will test that a success in between starts the count of failures over
+    @Test
+    void success_resetsFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000);
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        assertFalse(breaker.onSuccess());
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    //this will test that a trial call making another redis call from inside closes the breaker instead of
+    //having the inner call refused and leaving the breaker half open for good
+    @Test
+    void nestedCallDuringTrial_closes() throws Exception {
+        CircuitBreakerProperties properties = new CircuitBreakerProperties();
+        properties.setEnabled(true);
+        properties.setFailureThreshold(1);
+        properties.setOpenFor(Duration.ofMillis(20));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker(properties, registry);
+        Timer timer = registry.timer("test");
+
+        assertThrows(DataAccessResourceFailureException.class, () -> breaker.run(timer, () -> {
+            throw new DataAccessResourceFailureException("down");
+        }));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        Thread.sleep(40);
+
+        assertEquals("meta", breaker.call(timer, () -> breaker.call(timer, () -> "meta")));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals("next", breaker.call(timer, () -> "next"));
+    }
+}
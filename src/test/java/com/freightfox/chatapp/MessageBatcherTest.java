@@ -0,0 +1,165 @@
+package com.freightfox.chatapp;
+
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.ExceptionHandler.ServiceBusyException;
+import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import com.freightfox.chatapp.Repository.MessageBatcher;
+import com.freightfox.chatapp.config.BatchingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MessageBatcherTest {
+
+    private final ChatRoomRepository repo = mock(ChatRoomRepository.class);
+    private final List<Map<String, List<ChatMessage>>> flushes = Collections.synchronizedList(new ArrayList<>());
+    private MessageBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        BatchingProperties properties = new BatchingProperties();
+        properties.setEnabled(true);
+        properties.setMaxBatchSize(50);
+        properties.setMaxLinger(Duration.ofMillis(50));
+
+        when(repo.sendMessages(any())).thenAnswer(invocation -> {
+            Map<String, List<ChatMessage>> batch = invocation.getArgument(0);
+            flushes.add(batch);
+            Map<String, Boolean> sent = new LinkedHashMap<>();
+            batch.keySet().forEach(room -> sent.put(room, !room.equals("missing")));
+            return sent;
+        });
+
+        batcher = new MessageBatcher(repo, properties, new SimpleMeterRegistry());
+        batcher.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        batcher.stop();
+    }
+
+    //this will test that concurrent sends are coalesced and grouped per room
+    @Test
+    void concurrentSends_areCoalescedPerRoom() throws Exception {
+        ExecutorService senders = Executors.newFixedThreadPool(20);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String room = i % 2 == 0 ? "general" : "random";
+            ChatMessage msg = message("hello " + i);
+            results.add(senders.submit(() -> batcher.send(room, msg)));
+        }
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+        senders.shutdown();
+
+        assertTrue(flushes.size() < 20, "expected fewer flushes than messages but got " + flushes.size());
+        int total = flushes.stream().flatMap(batch -> batch.values().stream()).mapToInt(List::size).sum();
+        assertEquals(20, total);
+    }
+
+    //this will test that a missing room is reported back only to its own senders
+    @Test
+    void missingRoom_returnsFalse() {
+        assertFalse(batcher.send("missing", message("hi")));
+        assertTrue(batcher.send("general", message("hi")));
+    }
+
+    //this will test that a send timing out before its write is withdrawn, and one timing out during it gets redis' answer
+    @Test
+    void timedOutSend_isWithdrawnUnlessBeingWritten() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Map<String, List<ChatMessage>>> slowFlushes = Collections.synchronizedList(new ArrayList<>());
+        ChatRoomRepository slowRepo = mock(ChatRoomRepository.class);
+        when(slowRepo.sendMessages(any())).thenAnswer(invocation -> {
+            Map<String, List<ChatMessage>> batch = invocation.getArgument(0);
+            slowFlushes.add(batch);
+            release.await();
+            Map<String, Boolean> sent = new LinkedHashMap<>();
+            batch.keySet().forEach(room -> sent.put(room, true));
+            return sent;
+        });
+        BatchingProperties properties = new BatchingProperties();
+        properties.setEnabled(true);
+        properties.setMaxLinger(Duration.ZERO);
+        properties.setResponseTimeout(Duration.ofMillis(100));
+        MessageBatcher slow = new MessageBatcher(slowRepo, properties, new SimpleMeterRegistry());
+        slow.start();
+        ExecutorService senders = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> writing = senders.submit(() -> slow.send("general", message("first")));
+            while (slowFlushes.isEmpty()) Thread.sleep(1);
+
+            assertThrows(ServiceBusyException.class, () -> slow.send("general", message("second")));
+            release.countDown();
+
+            assertTrue(writing.get());
+            Thread.sleep(50);
+            assertEquals(1, slowFlushes.size());
+            assertEquals("first", slowFlushes.get(0).get("general").get(0).getMessage());
+        } finally {
+            release.countDown();
+            senders.shutdown();
+            slow.stop();
+        }
+    }
+
+    //this will test that a flush failing part way answers the rooms redis stored and fails only the others
+    @Test
+    void partlyFailedFlush_answersStoredRooms() throws Exception {
+        ChatRoomRepository failingRepo = mock(ChatRoomRepository.class);
+        DataAccessResourceFailureException lost = new DataAccessResourceFailureException("connection lost");
+        when(failingRepo.sendMessages(any())).thenAnswer(invocation -> {
+            Map<String, List<ChatMessage>> batch = invocation.getArgument(0);
+            Map<String, Boolean> sent = new LinkedHashMap<>();
+            if (batch.containsKey("general")) sent.put("general", true);
+            throw new ChatRoomRepository.PartialSendException(sent,
+                    batch.containsKey("random") ? Set.of("random") : Set.of(), lost);
+        });
+        BatchingProperties properties = new BatchingProperties();
+        properties.setEnabled(true);
+        properties.setMaxLinger(Duration.ofMillis(200));
+        MessageBatcher failing = new MessageBatcher(failingRepo, properties, new SimpleMeterRegistry());
+        failing.start();
+        ExecutorService senders = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> stored = senders.submit(() -> failing.send("general", message("stored")));
+            Future<Boolean> lostSend = senders.submit(() -> failing.send("random", message("lost")));
+
+            assertTrue(stored.get());
+            ExecutionException error = assertThrows(ExecutionException.class, lostSend::get);
+            assertSame(lost, error.getCause());
+        } finally {
+            senders.shutdown();
+            failing.stop();
+        }
+    }
+
+    private static ChatMessage message(String text) {
+        ChatMessage msg = new ChatMessage();
+        msg.setParticipant("guest_user");
+        msg.setMessage(text);
+        return msg;
+    }
+}
@@ -0,0 +1,86 @@
+package com.freightfox.chatapp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.Repository.MessageCodecs;
+import com.freightfox.chatapp.Repository.RawMessage;
+import com.freightfox.chatapp.config.StorageProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageCodecsTest {
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    //this will test that a binary entry with the id put in by the send script reads back as client json
+    @Test
+    void binaryEntry_readsBackAsJson() throws Exception {
+        MessageCodecs codecs = codecs(StorageProperties.Codec.BINARY, 0);
+        ChatMessage message = message("héllo there");
+
+        RawMessage read = codecs.toJson(0, withId(42, codecs.encode(message)));
+
+        assertEquals(42, read.id());
+        ChatMessage decoded = mapper.readValue(read.json(), ChatMessage.class);
+        assertEquals(42L, decoded.getId());
+        assertEquals("alice", decoded.getParticipant());
+        assertEquals("héllo there", decoded.getMessage());
+        assertEquals(Instant.ofEpochMilli(1_700_000_000_123L), decoded.getTimestamp());
+    }
+
+    //this will test that long bodies are deflated and still read back
+    @Test
+    void largeBinaryEntry_isCompressed() throws Exception {
+        MessageCodecs codecs = codecs(StorageProperties.Codec.BINARY, 256);
+        ChatMessage message = message("the same line over and over ".repeat(100));
+
+        byte[] entry = codecs.encode(message);
+
+        assertTrue(entry.length < 500);
+        ChatMessage decoded = mapper.readValue(codecs.toJson(7, withId(7, entry)).json(), ChatMessage.class);
+        assertEquals(message.getMessage(), decoded.getMessage());
+    }
+
+    //this will test that a node writing binary still reads json and the old double encoded entries
+    @Test
+    void binaryWriter_readsLegacyJson() throws Exception {
+        MessageCodecs codecs = codecs(StorageProperties.Codec.BINARY, 0);
+        byte[] legacy = mapper.writeValueAsBytes("{\"participant\":\"bob\",\"message\":\"hi\"}");
+        byte[] json = "{\"id\":9,\"participant\":\"bob\",\"message\":\"hi\"}".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals("{\"id\":3,\"participant\":\"bob\",\"message\":\"hi\"}",
+                new String(codecs.toJson(3, legacy).json(), StandardCharsets.UTF_8));
+        assertSame(json, codecs.toJson(9, json).json());
+    }
+
+    private static MessageCodecs codecs(StorageProperties.Codec codec, long compressAbove) {
+        StorageProperties properties = new StorageProperties();
+        properties.setCodec(codec);
+        properties.setCompressAbove(DataSize.ofBytes(compressAbove));
+        return new MessageCodecs(properties);
+    }
+
+    private static ChatMessage message(String text) {
+        ChatMessage message = new ChatMessage();
+        message.setParticipant("alice");
+        message.setMessage(text);
+        message.setTimestamp(Instant.ofEpochMilli(1_700_000_000_123L));
+        return message;
+    }
+
+    //what send_message.lua does with a binary entry
+    private static byte[] withId(long id, byte[] entry) {
+        byte[] digits = String.valueOf(id).getBytes(StandardCharsets.US_ASCII);
+        byte[] result = new byte[entry.length + digits.length];
+        result[0] = entry[0];
+        System.arraycopy(digits, 0, result, 1, digits.length);
+        System.arraycopy(entry, 1, result, 1 + digits.length, entry.length - 1);
+        return result;
+    }
+}
@@ -0,0 +1,32 @@
+package com.freightfox.chatapp;
+
+import com.freightfox.chatapp.Repository.ListMessageStore;
+import com.freightfox.chatapp.Repository.MessageStore;
+import com.freightfox.chatapp.Repository.StreamMessageStore;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageStoreScriptsTest {
+
+    //this will test that both engines load their send, trim and archive scripts with the shared helpers in front
+    @Test
+    void sharedHelpers_arePutInFrontOfBothEngines() {
+        for (MessageStore store : new MessageStore[]{new ListMessageStore(), new StreamMessageStore()}) {
+            String send = store.sendScript().getScriptAsString();
+            assertTrue(send.indexOf("local function withId") < send.indexOf("refusal(senders)"), send);
+            assertTrue(send.contains("local function index("));
+            assertTrue(store.trimExpiredScript().getScriptAsString().contains("local function timestampMillis"));
+            assertTrue(store.archiveTrimScript().getScriptAsString().contains("local function markArchived"));
+        }
+    }
+
+    //this will test that the list engine's scripts share one way of dropping entries from the head
+    @Test
+    void listScripts_shareDropHead() {
+        ListMessageStore store = new ListMessageStore();
+        assertTrue(store.sendScript().getScriptAsString().contains("local function dropHead"));
+        assertTrue(store.trimExpiredScript().getScriptAsString().contains("local function dropHead"));
+        assertTrue(store.archiveTrimScript().getScriptAsString().contains("local function dropHead"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.freightfox.chatapp;
+
+import com.freightfox.chatapp.DTO.ChatMessage;
+import com.freightfox.chatapp.Outbox.OutboxEntry;
+import com.freightfox.chatapp.Outbox.OutboxLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutboxLogTest {
+
+    //16 byte header, then room, participant and text with their lengths and the timestamp, see OutboxLog
+    private static final int RECORD_BYTES = 16 + 12 + "general".length() + "alice".length() + "message 1".length() + 12;
+
+    @TempDir
+    Path directory;
+
+    //this will test that records are only read once forced, and stay readable until committed
+    @Test
+    void read_onlySyncedUntilCommitted() throws Exception {
+        try (OutboxLog log = OutboxLog.open(directory, 4096)) {
+            for (int i = 1; i <= 5; i++) {
+                log.append("general", message(i));
+            }
+            assertTrue(log.read(10, 0).isEmpty());
+
+            assertEquals(5, log.sync(0));
+            assertTrue(log.awaitSynced(5, 0));
+            List<OutboxEntry> entries = log.read(3, 0);
+            assertEquals(List.of(1L, 2L, 3L), entries.stream().map(OutboxEntry::seq).toList());
+            assertEquals("message 1", entries.get(0).message().getMessage());
+            assertEquals(entries, log.read(3, 0));
+
+            log.commit(3);
+            assertEquals(4, log.read(10, 0).get(0).seq());
+            assertEquals(2, log.depth());
+        }
+    }
+
+    //this will test that drained segments are deleted and sequences continue after a restart with nothing left
+    @Test
+    void commit_deletesSegmentsAndSequencesContinue() throws Exception {
+        try (OutboxLog log = OutboxLog.open(directory, 4096)) {
+            for (int i = 1; i <= 200; i++) {
+                log.append("general", message(i % 10));
+            }
+            log.sync(0);
+            assertTrue(segmentFiles() > 1);
+            log.commit(200);
+            assertEquals(1, segmentFiles());
+        }
+        try (OutboxLog log = OutboxLog.open(directory, 4096)) {
+            assertEquals(0, log.depth());
+            assertEquals(201, log.append("general", message(1)));
+        }
+    }
+
+    //this will test that a record torn by a crash is dropped and its sequence handed out again
+    @Test
+    void open_dropsTornRecord() throws Exception {
+        String producer;
+        try (OutboxLog log = OutboxLog.open(directory, 4096)) {
+            producer = log.producer();
+            for (int i = 1; i <= 3; i++) {
+                log.append("general", message(i));
+            }
+            log.sync(0);
+        }
+        try (FileChannel segment = FileChannel.open(onlySegment(), StandardOpenOption.WRITE)) {
+            segment.write(ByteBuffer.wrap(new byte[]{'x'}), 2L * RECORD_BYTES + 40);
+        }
+
+        try (OutboxLog log = OutboxLog.open(directory, 4096)) {
+            assertEquals(producer, log.producer());
+            assertEquals(2, log.depth());
+            assertEquals(3, log.append("general", message(4)));
+            log.sync(0);
+            List<OutboxEntry> entries = log.read(10, 0);
+            assertEquals(3, entries.size());
+            assertEquals("message 4", entries.get(2).message().getMessage());
+        }
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".log")).count();
+        }
+    }
+
+    private Path onlySegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+    }
+
+    private static ChatMessage message(int i) {
+        ChatMessage message = new ChatMessage();
+        message.setParticipant("alice");
+        message.setMessage("message " + i);
+        return message;
+    }
+}
@@ -0,0 +1,66 @@
+package com.freightfox.chatapp;
+
+import com.freightfox.chatapp.Repository.ParticipantBloomFilter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParticipantBloomFilterTest {
+
+    //this will test that every added participant is reported as a possible member
+    @Test
+    void addedParticipants_areNeverRejected() {
+        ParticipantBloomFilter filter = new ParticipantBloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            filter.add("user-" + i);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain("user-" + i));
+        }
+        assertEquals(1000, filter.approximateSize(), 50);
+    }
+
+    //this will test that strangers pass the filter at about the configured rate once it holds its capacity
+    @Test
+    void strangers_passAtConfiguredRate() {
+        ParticipantBloomFilter filter = new ParticipantBloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            filter.add("user-" + i);
+        }
+
+        int passed = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("stranger-" + i)) passed++;
+        }
+        assertTrue(passed < 3000, "expected about 1% false positives but got " + passed + " of 100000");
+    }
+
+    //this will test that adding the same participant again does not use up the capacity
+    @Test
+    void repeatedAdds_doNotFillTheFilter() {
+        ParticipantBloomFilter filter = new ParticipantBloomFilter(10, 0.01);
+        for (int i = 0; i < 100; i++) {
+            filter.add("guest_user");
+        }
+
+        assertFalse(filter.isFull());
+    }
+
+    //this will test that the fill is estimated from the bits set, so the filter reports full once past its capacity
+    @Test
+    void distinctAdds_fillTheFilter() {
+        ParticipantBloomFilter filter = new ParticipantBloomFilter(1000, 0.01);
+        for (int i = 0; i < 900; i++) {
+            filter.add("user-" + i);
+        }
+        assertFalse(filter.isFull());
+        assertEquals(900, filter.approximateSize(), 45);
+
+        for (int i = 900; i < 1100; i++) {
+            filter.add("user-" + i);
+        }
+        assertTrue(filter.isFull());
+        assertEquals(1100, filter.approximateSize(), 55);
+    }
+}
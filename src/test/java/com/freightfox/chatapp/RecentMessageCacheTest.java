@@ -0,0 +1,136 @@
+package com.freightfox.chatapp;
+
+import com.freightfox.chatapp.Repository.RawMessage;
+import com.freightfox.chatapp.Repository.RecentMessageCache;
+import com.freightfox.chatapp.config.RecentCacheProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecentMessageCacheTest {
+
+    private final Function<String, Long> noRedis = roomId -> fail("redis must not be asked");
+
+    //this will test that a seeded room answers small reads and follows published messages
+    @Test
+    void seededRoom_isServedAndAppended() {
+        RecentMessageCache cache = newCache(10);
+        cache.seed("general", messages(1, 5), false, 0, cache.version("general"));
+
+        cache.append("general", payload(6));
+
+        List<RawMessage> page = cache.lastMessages("general", 3, noRedis);
+        assertEquals(List.of(4L, 5L, 6L), page.stream().map(RawMessage::id).toList());
+        assertNull(cache.lastMessages("general", 20, noRedis));
+    }
+
+    //this will test that a gap in the published ids drops the room instead of serving a hole
+    @Test
+    void missedMessage_dropsTheRoom() {
+        RecentMessageCache cache = newCache(10);
+        cache.seed("general", messages(1, 5), false, 0, cache.version("general"));
+
+        cache.append("general", payload(7));
+
+        assertNull(cache.lastMessages("general", 3, noRedis));
+    }
+
+    //this will test that after a local send the next read checks the newest id in redis first
+    @Test
+    void localSend_isVerifiedAgainstRedis() {
+        RecentMessageCache cache = newCache(10);
+        cache.seed("general", messages(1, 5), false, 0, cache.version("general"));
+
+        cache.markStale("general");
+
+        assertNull(cache.lastMessages("general", 3, roomId -> 6L));
+        cache.seed("general", messages(1, 6), false, 0, cache.version("general"));
+        cache.markStale("general");
+        assertEquals(3, cache.lastMessages("general", 3, roomId -> 6L).size());
+    }
+
+    //this will test that a seed read racing with a room deletion is thrown away
+    @Test
+    void seedAfterInvalidation_isIgnored() {
+        RecentMessageCache cache = newCache(10);
+        long version = cache.version("general");
+
+        cache.invalidate("general");
+        cache.seed("general", messages(1, 5), false, 0, version);
+
+        assertNull(cache.lastMessages("general", 3, noRedis));
+    }
+
+    //this will test that a ring holding the whole room answers reads larger than the room
+    @Test
+    void wholeRoom_servesLargerReads() {
+        RecentMessageCache cache = newCache(10);
+        cache.seed("general", messages(1, 5), true, 0, cache.version("general"));
+
+        assertEquals(5, cache.lastMessages("general", 20, noRedis).size());
+    }
+
+    //this will test that a ring never holds more than the room's retention limit
+    @Test
+    void retentionLimit_capsTheRing() {
+        RecentMessageCache cache = newCache(10);
+        cache.seed("general", messages(1, 3), true, 3, cache.version("general"));
+
+        cache.append("general", payload(4));
+
+        List<RawMessage> page = cache.lastMessages("general", 20, noRedis);
+        assertEquals(List.of(2L, 3L, 4L), page.stream().map(RawMessage::id).toList());
+    }
+
+    //this will test that changing one room does not throw away a seed read of another
+    @Test
+    void invalidationOfOtherRoom_keepsSeed() {
+        RecentMessageCache cache = newCache(10);
+        long version = cache.version("general");
+
+        cache.invalidate("random");
+        cache.seed("general", messages(1, 5), false, 0, version);
+
+        assertNotNull(cache.lastMessages("general", 3, noRedis));
+    }
+
+    //this will test that the least recently read room is evicted beyond the room bound
+    @Test
+    void tooManyRooms_evictsColdest() throws Exception {
+        RecentMessageCache cache = newCache(2);
+        cache.seed("a", messages(1, 3), false, 0, cache.version("a"));
+        Thread.sleep(1);
+        cache.seed("b", messages(1, 3), false, 0, cache.version("b"));
+        Thread.sleep(1);
+        cache.lastMessages("a", 1, noRedis);
+        cache.seed("c", messages(1, 3), false, 0, cache.version("c"));
+
+        assertNotNull(cache.lastMessages("a", 1, noRedis));
+        assertNull(cache.lastMessages("b", 1, noRedis));
+    }
+
+    private RecentMessageCache newCache(int maxRooms) {
+        RecentCacheProperties properties = new RecentCacheProperties();
+        properties.setMaxRooms(maxRooms);
+        return new RecentMessageCache(properties, new SimpleMeterRegistry());
+    }
+
+    private static List<RawMessage> messages(long firstId, long lastId) {
+        List<RawMessage> messages = new ArrayList<>();
+        for (long id = firstId; id <= lastId; id++) {
+            messages.add(new RawMessage(id, payload(id)));
+        }
+        return messages;
+    }
+
+    private static byte[] payload(long id) {
+        return ("{\"id\":" + id + ",\"participant\":\"alice\",\"message\":\"m" + id + "\",\"timestamp\":1700000000.000000000}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,154 @@
+package com.freightfox.chatapp;
+
+import com.freightfox.chatapp.Archive.MessageArchive;
+import com.freightfox.chatapp.Archive.RoomArchive;
+import com.freightfox.chatapp.Repository.RawMessage;
+import com.freightfox.chatapp.config.ArchiveProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoomArchiveTest {
+
+    @TempDir
+    Path directory;
+
+    private MessageArchive archive;
+
+    @BeforeEach
+    void setUp() {
+        ArchiveProperties properties = new ArchiveProperties();
+        properties.setDirectory(directory.toString());
+        archive = new MessageArchive(properties);
+    }
+
+    //this will test paging both ways across many small blocks and several segments
+    @Test
+    void pages_spanBlocksAndSegments() throws IOException {
+        RoomArchive room = archive.room("general", 1);
+        room.append(messages(1, 500), 256, 4096);
+        room.append(messages(501, 1000), 256, 4096);
+
+        assertEquals(1000, room.lastId());
+        assertTrue(segmentFiles() > 1);
+        assertEquals(ids(451, 500), ids(room.before(501, 50)));
+        assertEquals(ids(1, 10), ids(room.before(11, 50)));
+        assertEquals(ids(501, 550), ids(room.after(500, 50)));
+        assertEquals(ids(991, 1000), ids(room.after(990, 50)));
+        assertTrue(room.after(1000, 50).isEmpty());
+        assertEquals("{\"id\":777,\"timestamp\":1700000000.5}",
+                new String(room.before(778, 1).get(0).json(), StandardCharsets.UTF_8));
+    }
+
+    //this will test that a torn write past the last index entry is invisible and cut before the next append
+    @Test
+    void recover_dropsTornTail() throws IOException {
+        RoomArchive room = archive.room("general", 1);
+        room.append(messages(1, 100), 1024, 1 << 20);
+        Path segment;
+        try (Stream<Path> files = Files.walk(directory)) {
+            segment = files.filter(file -> file.toString().endsWith(".seg")).findFirst().orElseThrow();
+        }
+        Files.write(segment, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        assertEquals(100, room.lastId());
+        room.recover();
+        room.append(messages(101, 150), 1024, 1 << 20);
+        assertEquals(ids(91, 110), ids(room.after(90, 20)));
+    }
+
+    //this will test that a recreated room, a new generation, starts with an empty archive
+    @Test
+    void generations_areSeparate() throws IOException {
+        archive.room("general", 1).append(messages(1, 10), 1024, 1 << 20);
+
+        assertEquals(0, archive.lastId("general", 2));
+        assertEquals(10, archive.lastId("general", 1));
+    }
+
+    //this will test that evicting a room from the open archives while it is written and read does not close it
+    //under the archiver or the readers
+    @Test
+    void evictionWhileInUse_keepsTheArchiveOpen() throws Exception {
+        ArchiveProperties properties = new ArchiveProperties();
+        properties.setDirectory(directory.toString());
+        properties.setOpenRooms(1);
+        MessageArchive small = new MessageArchive(properties);
+        AtomicBoolean done = new AtomicBoolean();
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        Thread evictor = new Thread(() -> {
+            for (int i = 0; !done.get(); i++) {
+                small.lastId("other" + (i % 2), 1);
+            }
+        });
+        Thread reader = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    List<RawMessage> page = small.before("general", 1, Long.MAX_VALUE, 10);
+                    if (!page.isEmpty() && page.get(page.size() - 1).id() % 10 != 0) {
+                        throw new AssertionError("torn page " + ids(page));
+                    }
+                }
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        evictor.start();
+        reader.start();
+        try {
+            for (long from = 1; from <= 2000; from += 10) {
+                try (RoomArchive room = small.room("general", 1)) {
+                    room.append(messages(from, from + 9), 1 << 20, 4096);
+                }
+            }
+        } finally {
+            done.set(true);
+            evictor.join();
+            reader.join();
+        }
+
+        assertEquals(List.of(), failures);
+        assertEquals(2000, small.lastId("general", 1));
+        assertEquals(ids(1991, 2000), ids(small.before("general", 1, Long.MAX_VALUE, 10)));
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(file -> file.toString().endsWith(".seg")).count();
+        }
+    }
+
+    private static List<RawMessage> messages(long from, long to) {
+        List<RawMessage> messages = new ArrayList<>();
+        for (long id = from; id <= to; id++) {
+            String json = "{\"id\":" + id + ",\"timestamp\":1700000000.5}";
+            messages.add(new RawMessage(id, json.getBytes(StandardCharsets.UTF_8)));
+        }
+        return messages;
+    }
+
+    private static List<Long> ids(long from, long to) {
+        List<Long> ids = new ArrayList<>();
+        for (long id = from; id <= to; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static List<Long> ids(List<RawMessage> messages) {
+        return messages.stream().map(RawMessage::id).toList();
+    }
+}
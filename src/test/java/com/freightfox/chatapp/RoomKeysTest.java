@@ -0,0 +1,34 @@
+package com.freightfox.chatapp;
+
+import com.freightfox.chatapp.Repository.RoomKeys;
+import io.lettuce.core.cluster.SlotHash;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoomKeysTest {
+
+    //this will test that every key and the channel of a room land in the same cluster slot
+    @Test
+    void roomKeys_shareOneSlot() {
+        for (String roomId : List.of("general", "room-42", "a:b")) {
+            int slot = SlotHash.getSlot(RoomKeys.meta(roomId));
+            for (String key : List.of(RoomKeys.participants(roomId), RoomKeys.messages(roomId),
+                    RoomKeys.stream(roomId), RoomKeys.channel(roomId))) {
+                assertEquals(slot, SlotHash.getSlot(key), key);
+            }
+        }
+    }
+
+    //this will test that room ids are read back from keys and channels, and other names are ignored
+    @Test
+    void roomIds_roundTrip() {
+        assertEquals("general", RoomKeys.roomIdOfMeta(RoomKeys.meta("general")));
+        assertEquals("general", RoomKeys.roomIdOfChannel(RoomKeys.channel("general")));
+        assertNull(RoomKeys.roomIdOfMeta("chatroom:meta:general"));
+        assertNull(RoomKeys.roomIdOfChannel("chatapp:control"));
+        assertFalse(RoomKeys.isValidRoomId("a{b}"));
+    }
+}
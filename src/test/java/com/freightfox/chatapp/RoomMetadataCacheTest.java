@@ -0,0 +1,105 @@
+package com.freightfox.chatapp;
+
+import com.freightfox.chatapp.Repository.RoomMeta;
+import com.freightfox.chatapp.Repository.RoomMetadataCache;
+import com.freightfox.chatapp.config.RoomCacheProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoomMetadataCacheTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<String, Optional<RoomMeta>> loader = roomId -> {
+        loads.incrementAndGet();
+        return roomId.equals("general") ? Optional.of(new RoomMeta(1L, 100L, 0L, null)) : Optional.empty();
+    };
+
+    //this will test that repeated lookups are answered locally and show up in the hit ratio
+    @Test
+    void repeatedLookups_hitTheCache() {
+        RoomMetadataCache cache = newCache(Duration.ofMinutes(1));
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(cache.get("general", loader).isPresent());
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(0.75, meters.get("chat.room.cache.hit.ratio").gauge().value());
+    }
+
+    //this will test that missing rooms are cached for the shorter negative ttl only
+    @Test
+    void missingRoom_isCachedBriefly() throws Exception {
+        RoomMetadataCache cache = newCache(Duration.ofMillis(50));
+
+        assertFalse(cache.get("invalid", loader).isPresent());
+        assertTrue(cache.isKnownMissing("invalid"));
+        assertFalse(cache.isKnownMissing("unknown"));
+        Thread.sleep(100);
+
+        assertFalse(cache.isKnownMissing("invalid"));
+        cache.get("invalid", loader);
+        assertEquals(2, loads.get());
+    }
+
+    //this will test that an invalidation forces the next lookup back to redis
+    @Test
+    void invalidation_dropsTheEntry() {
+        RoomMetadataCache cache = newCache(Duration.ofMinutes(1));
+        cache.get("invalid", loader);
+
+        cache.invalidate("invalid");
+
+        assertFalse(cache.isKnownMissing("invalid"));
+        cache.get("invalid", loader);
+        assertEquals(2, loads.get());
+    }
+
+    //this will test that a load racing with a change of its own room is not cached, one racing with another room's is
+    @Test
+    void racingInvalidation_onlyDiscardsItsOwnRoom() {
+        RoomMetadataCache cache = newCache(Duration.ofMinutes(1));
+
+        cache.get("general", roomId -> {
+            cache.invalidate("general");
+            return loader.apply(roomId);
+        });
+        cache.get("invalid", roomId -> {
+            cache.invalidate("random");
+            return loader.apply(roomId);
+        });
+
+        assertFalse(cache.isKnownMissing("general"));
+        cache.get("general", loader);
+        assertEquals(3, loads.get());
+        assertTrue(cache.isKnownMissing("invalid"));
+    }
+
+    //this will test that the least recently used room is evicted once the cache is full
+    @Test
+    void fullCache_evictsLeastRecentlyUsed() {
+        RoomMetadataCache cache = newCache(Duration.ofMinutes(1));
+        cache.get("a", loader);
+        cache.get("b", loader);
+        cache.get("a", loader);
+        cache.get("c", loader);
+
+        assertTrue(cache.isKnownMissing("a"));
+        assertFalse(cache.isKnownMissing("b"));
+    }
+
+    private RoomMetadataCache newCache(Duration negativeTtl) {
+        RoomCacheProperties properties = new RoomCacheProperties();
+        properties.setMaxSize(2);
+        properties.setNegativeTtl(negativeTtl);
+        return new RoomMetadataCache(properties, meters);
+    }
+}
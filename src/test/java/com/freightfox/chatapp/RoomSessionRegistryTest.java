@@ -0,0 +1,228 @@
+package com.freightfox.chatapp;
+
+import com.freightfox.chatapp.Delivery.RoomSessionRegistry;
+import com.freightfox.chatapp.RedisMessage.RoomSubscriptionManager;
+import com.freightfox.chatapp.Repository.ChatRoomRepository;
+import com.freightfox.chatapp.Repository.RawMessage;
+import com.freightfox.chatapp.config.DeliveryProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RoomSessionRegistryTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final ChatRoomRepository repo = mock(ChatRoomRepository.class);
+    private RoomSessionRegistry registry;
+
+    @AfterEach
+    void tearDown() {
+        registry.shutdown();
+    }
+
+    //this will test that a stalled client does not hold up delivery to the rest of the room
+    @Test
+    void stalledClient_doesNotBlockOthers() throws Exception {
+        registry = newRegistry(DeliveryProperties.SlowConsumerPolicy.DROP_OLDEST);
+        CountDownLatch release = new CountDownLatch(1);
+        registry.open("general", new StalledEmitter(release), null);
+        RecordingEmitter healthy = new RecordingEmitter("data:{\"message\":\"m9\"}\n\n");
+        registry.open("general", healthy, null);
+
+        for (int i = 0; i < 10; i++) {
+            registry.deliver("general", ("{\"message\":\"m" + i + "\"}").getBytes(StandardCharsets.UTF_8));
+        }
+
+        //drop oldest always keeps the newest frame, so the healthy client must see the last message
+        assertTrue(healthy.received.await(5, TimeUnit.SECONDS));
+        assertTrue(meters.counter("chat.delivery.dropped").count() > 0);
+        assertTrue(registry.hasSessions("general"));
+        release.countDown();
+    }
+
+    //this will test that the disconnect policy removes a client whose buffer overflows
+    @Test
+    void overflowingClient_isDisconnected() {
+        registry = newRegistry(DeliveryProperties.SlowConsumerPolicy.DISCONNECT);
+        CountDownLatch release = new CountDownLatch(1);
+        registry.open("general", new StalledEmitter(release), null);
+
+        for (int i = 0; i < 10; i++) {
+            registry.deliver("general", "{}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertFalse(registry.hasSessions("general"));
+        assertEquals(1, meters.counter("chat.delivery.disconnected").count());
+        release.countDown();
+    }
+
+    //this will test that a client blocking the only writer past the send timeout is evicted and the room goes on
+    @Test
+    void blockedWrite_evictsClient() throws Exception {
+        DeliveryProperties properties = new DeliveryProperties();
+        properties.setWriterThreads(1);
+        properties.setSendTimeout(Duration.ofMillis(100));
+        registry = new RoomSessionRegistry(properties, mock(RoomSubscriptionManager.class), repo, meters);
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingEmitter blocked = new BlockingEmitter(release);
+        registry.open("general", blocked, null);
+        registry.deliver("general", "{\"message\":\"m0\"}".getBytes(StandardCharsets.UTF_8));
+        assertTrue(blocked.writing.await(5, TimeUnit.SECONDS));
+        RecordingEmitter healthy = new RecordingEmitter("data:{\"message\":\"m1\"}\n\n");
+        registry.open("general", healthy, null);
+
+        registry.deliver("general", "{\"message\":\"m1\"}".getBytes(StandardCharsets.UTF_8));
+
+        //the blocked write ignores the interrupt, so the frame can only arrive through a stand-in writer
+        assertTrue(healthy.received.await(5, TimeUnit.SECONDS));
+        //the stand-in writer can deliver before the sweeper got to count the eviction
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meters.counter("chat.delivery.evicted").count() < 1 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertEquals(1, meters.counter("chat.delivery.evicted").count());
+        release.countDown();
+    }
+
+    //this will test that an emitter failing with an unexpected exception ends its stream instead of leaving the
+    //session marked as being drained
+    @Test
+    void failingEmitter_isClosed() throws Exception {
+        registry = newRegistry(DeliveryProperties.SlowConsumerPolicy.DROP_OLDEST);
+        registry.open("broken", new FailingEmitter(), null);
+
+        registry.deliver("broken", "{\"message\":\"m0\"}".getBytes(StandardCharsets.UTF_8));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (registry.hasSessions("broken") && System.nanoTime() < deadline) Thread.sleep(10);
+        assertFalse(registry.hasSessions("broken"));
+    }
+
+    //this will test that a resumed stream replays the missed history before live events, without repeats
+    @Test
+    void resumedClient_getsMissedMessagesOnce() throws Exception {
+        registry = newRegistry(DeliveryProperties.SlowConsumerPolicy.DROP_OLDEST);
+        CountDownLatch replaying = new CountDownLatch(1);
+        when(repo.getMessagesAfter(eq("general"), anyLong(), anyInt())).thenAnswer(invocation -> {
+            long after = invocation.getArgument(1);
+            if (after >= 4) return List.of();
+            //live events published while the history is read must wait behind it
+            replaying.await(5, TimeUnit.SECONDS);
+            return List.of(message(3), message(4));
+        });
+        RecordingEmitter client = new RecordingEmitter("id:5\ndata:{\"id\":5,\"message\":\"m5\"}\n\n");
+        registry.open("general", client, 2L);
+
+        registry.deliver("general", "{\"id\":4,\"message\":\"m4\"}".getBytes(StandardCharsets.UTF_8));
+        registry.deliver("general", "{\"id\":5,\"message\":\"m5\"}".getBytes(StandardCharsets.UTF_8));
+        replaying.countDown();
+
+        assertTrue(client.received.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("3", "4", "5"), client.ids());
+    }
+
+    private static RawMessage message(long id) {
+        return new RawMessage(id, ("{\"id\":" + id + ",\"message\":\"m" + id + "\"}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private RoomSessionRegistry newRegistry(DeliveryProperties.SlowConsumerPolicy policy) {
+        DeliveryProperties properties = new DeliveryProperties();
+        properties.setBufferSize(2);
+        properties.setWriterThreads(2);
+        properties.setSlowConsumerPolicy(policy);
+        return new RoomSessionRegistry(properties, mock(RoomSubscriptionManager.class), repo, meters);
+    }
+
+    //emitter whose socket never drains until released
+    private static class StalledEmitter extends SseEmitter {
+        private final CountDownLatch release;
+
+        StalledEmitter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public synchronized void send(Set<DataWithMediaType> items) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    //emitter whose every write fails with something other than an io error
+    private static class FailingEmitter extends SseEmitter {
+        @Override
+        public synchronized void send(Set<DataWithMediaType> items) {
+            throw new UnsupportedOperationException("emitter is broken");
+        }
+    }
+
+    //emitter whose write blocks until released, even when the writer is interrupted
+    private static class BlockingEmitter extends SseEmitter {
+        private final CountDownLatch release;
+        private final CountDownLatch writing = new CountDownLatch(1);
+
+        BlockingEmitter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public synchronized void send(Set<DataWithMediaType> items) {
+            writing.countDown();
+            boolean interrupted = false;
+            while (release.getCount() > 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class RecordingEmitter extends SseEmitter {
+        private final String expectedFrame;
+        private final CountDownLatch received = new CountDownLatch(1);
+        private final List<String> frames = new ArrayList<>();
+
+        RecordingEmitter(String expectedFrame) {
+            this.expectedFrame = expectedFrame;
+        }
+
+        @Override
+        public synchronized void send(Set<DataWithMediaType> items) {
+            for (DataWithMediaType item : items) {
+                String frame = new String((byte[]) item.getData(), StandardCharsets.UTF_8);
+                frames.add(frame);
+                if (expectedFrame.equals(frame)) {
+                    received.countDown();
+                }
+            }
+        }
+
+        synchronized List<String> ids() {
+            List<String> ids = new ArrayList<>();
+            for (String frame : frames) {
+                if (frame.startsWith("id:")) ids.add(frame.substring(3, frame.indexOf('\n')));
+            }
+            return ids;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.freightfox.chatapp;
+
+import com.freightfox.chatapp.RedisMessage.RoomSubscriptionManager;
+import com.freightfox.chatapp.RedisMessage.ShardedSubscriber;
+import com.freightfox.chatapp.RedisMessage.StreamTailer;
+import com.freightfox.chatapp.config.PubSubProperties;
+import com.freightfox.chatapp.config.StorageProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.data.redis.listener.adapter.MessageListenerAdapter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class RoomSubscriptionManagerTest {
+
+    private final List<RoomSubscriptionManager> managers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        managers.forEach(RoomSubscriptionManager::shutdown);
+    }
+
+    //this will measure messages received per node when each node serves a slice of the rooms
+    @Test
+    void multiRoomLoad_nodesOnlyReceiveTheirRooms() {
+        int nodes = 4;
+        int rooms = 40;
+        List<Set<String>> subscribed = new ArrayList<>();
+        for (int node = 0; node < nodes; node++) {
+            Set<String> channels = ConcurrentHashMap.newKeySet();
+            RoomSubscriptionManager manager = newManager(channels, Duration.ofMinutes(1));
+            for (int room = node; room < rooms; room += nodes) {
+                manager.acquire("room-" + room);
+                manager.acquire("room-" + room);
+            }
+            subscribed.add(channels);
+        }
+
+        //a broker stand-in: every published message goes to the nodes subscribed to its channel
+        int messages = 10_000;
+        int[] received = new int[nodes];
+        Random random = new Random(42);
+        for (int i = 0; i < messages; i++) {
+            String channel = "chatroom:{room-" + random.nextInt(rooms) + "}";
+            for (int node = 0; node < nodes; node++) {
+                if (subscribed.get(node).contains(channel)) received[node]++;
+            }
+        }
+
+        int total = 0;
+        for (int node = 0; node < nodes; node++) {
+            assertEquals(rooms / nodes, subscribed.get(node).size());
+            //with chatroom:* every node would have received all 10k messages
+            assertTrue(received[node] < messages / 2, "node " + node + " received " + received[node]);
+            total += received[node];
+        }
+        assertEquals(messages, total);
+    }
+
+    //this will test that a listener coming back within the delay keeps the subscription
+    @Test
+    void releaseThenAcquire_withinDelay_keepsSubscription() throws Exception {
+        Set<String> channels = ConcurrentHashMap.newKeySet();
+        RoomSubscriptionManager manager = newManager(channels, Duration.ofMillis(200));
+
+        manager.acquire("general");
+        manager.release("general");
+        manager.acquire("general");
+        Thread.sleep(400);
+
+        assertEquals(Set.of("chatroom:{general}"), channels);
+        assertEquals(Set.of("general"), manager.subscribedRooms());
+    }
+
+    //this will test that the last release unsubscribes after the delay
+    @Test
+    void lastRelease_unsubscribesAfterDelay() throws Exception {
+        Set<String> channels = ConcurrentHashMap.newKeySet();
+        RoomSubscriptionManager manager = newManager(channels, Duration.ofMillis(50));
+
+        manager.acquire("general");
+        manager.acquire("general");
+        manager.release("general");
+        Thread.sleep(200);
+        assertEquals(Set.of("chatroom:{general}"), channels);
+
+        manager.release("general");
+        Thread.sleep(200);
+        assertTrue(channels.isEmpty());
+        assertTrue(manager.subscribedRooms().isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    private RoomSubscriptionManager newManager(Set<String> channels, Duration unsubscribeDelay) {
+        RedisMessageListenerContainer container = mock(RedisMessageListenerContainer.class);
+        doAnswer(invocation -> channels.add(((Topic) invocation.getArgument(1)).getTopic()))
+                .when(container).addMessageListener(any(), any(ChannelTopic.class));
+        doAnswer(invocation -> channels.remove(((Topic) invocation.getArgument(1)).getTopic()))
+                .when(container).removeMessageListener(any(), any(ChannelTopic.class));
+        ObjectProvider<MessageListenerAdapter> listener = mock(ObjectProvider.class);
+        when(listener.getObject()).thenReturn(mock(MessageListenerAdapter.class));
+
+        PubSubProperties properties = new PubSubProperties();
+        properties.setUnsubscribeDelay(unsubscribeDelay);
+        RoomSubscriptionManager manager = new RoomSubscriptionManager(container, listener, properties,
+                mock(StreamTailer.class), mock(ShardedSubscriber.class), new StorageProperties());
+        managers.add(manager);
+        return manager;
+    }
+}
@@ -0,0 +1,43 @@
+package com.freightfox.chatapp;
+
+import com.freightfox.chatapp.Repository.SearchIndex;
+import com.freightfox.chatapp.config.SearchProperties;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchIndexTest {
+
+    private final SearchProperties properties = new SearchProperties();
+    private final SearchIndex index = new SearchIndex(null, properties);
+
+    //this will test that words are lower cased, split on anything but letters and digits, and kept once each
+    @Test
+    void tokens_areNormalisedAndDistinct() {
+        Set<String> tokens = index.tokens("Hello, hello WORLD! a Größe 42x");
+
+        assertEquals(List.of("hello", "world", "größe", "42x"), List.copyOf(tokens));
+    }
+
+    //this will test that overlong words are cut and only maxTokensPerMessage words are kept
+    @Test
+    void tokens_areBounded() {
+        properties.setMaxTokenLength(4);
+        properties.setMaxTokensPerMessage(2);
+
+        assertEquals(List.of("abcd", "efgh"), List.copyOf(index.tokens("abcdefg efghij klmnop")));
+    }
+
+    //this will test the doc the scripts read: words, a newline, then the participant as is
+    @Test
+    void doc_endsWithParticipant() {
+        byte[] doc = index.doc("Guest User", "Hi there, there!");
+
+        assertEquals("hi there\nGuest User", new String(doc, StandardCharsets.UTF_8));
+        assertEquals(List.of("t:there", "t:hi", "p:Guest User"), index.postings("there hi", "Guest User"));
+    }
+}
@@ -0,0 +1,41 @@
+package com.freightfox.chatapp;
+
+import com.freightfox.chatapp.RateLimit.TokenBucket;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    //this will test that a full bucket admits its burst, then refuses with the time until the next token
+    @Test
+    void burst_thenRefusedUntilRefill() {
+        TokenBucket bucket = new TokenBucket(10, 5, 0);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, bucket.tryAcquire(0));
+        }
+
+        assertEquals(SECOND / 10, bucket.tryAcquire(0));
+        assertEquals(0, bucket.tryAcquire(SECOND / 10));
+        assertEquals(6, bucket.drainAdmitted());
+        assertEquals(0, bucket.drainAdmitted());
+    }
+
+    //this will test that tokens used on other nodes are taken out of the bucket, at most down to empty
+    @Test
+    void charge_emptiesAtMostTheBucket() {
+        TokenBucket bucket = new TokenBucket(10, 5, 0);
+        bucket.charge(3, 0);
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(0, bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0) > 0);
+
+        bucket.charge(1000, SECOND);
+        //a full refill is the longest any charge can keep the bucket empty
+        assertEquals(0, bucket.tryAcquire(SECOND + SECOND / 2 + SECOND / 10));
+    }
+}
@@ -0,0 +1,41 @@
+package com.freightfox.chatapp;
+
+import com.freightfox.chatapp.RedisMessage.TopRoomsSketch;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TopRoomsSketchTest {
+
+    //this will test that busy rooms stay on top while many one-off rooms churn through the counters
+    @Test
+    void heavyHitters_surviveLongTail() {
+        TopRoomsSketch sketch = new TopRoomsSketch(10);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add("busy");
+            if (i % 2 == 0) sketch.add("second");
+            sketch.add("tail-" + i);
+        }
+
+        List<Map.Entry<String, Long>> top = sketch.top(2);
+
+        assertEquals(List.of("busy", "second"), top.stream().map(Map.Entry::getKey).toList());
+        assertTrue(top.get(0).getValue() >= 1000);
+    }
+
+    //this will test that the sketch never tracks more rooms than its capacity
+    @Test
+    void distinctRooms_areBoundedByCapacity() {
+        TopRoomsSketch sketch = new TopRoomsSketch(5);
+        for (int i = 0; i < 100; i++) {
+            sketch.add("room-" + i);
+        }
+
+        assertEquals(5, sketch.top(100).size());
+        sketch.clear();
+        assertTrue(sketch.top(100).isEmpty());
+    }
+}